@@ -9,9 +9,14 @@ import java.net.URL;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import javax.net.ssl.HttpsURLConnection;
@@ -35,11 +40,14 @@ public class Bitso {
     private final String ETHER = "ether";
     private final String BITCOIN = "bitcoin";
     public static long THROTTLE_MS = 1000;
+    /** Last nonce signed, shared by every instance since nonces are checked per API key. */
+    private static final AtomicLong LAST_NONCE = new AtomicLong();
 
     private final String key;
     private final String secret;
     private boolean log;
     private String baseUrl;
+    private int lookupChunkSize = 20;
 
     private BlockingHttpClient client = new BlockingHttpClient(false, THROTTLE_MS);
 
@@ -81,6 +89,30 @@ public class Bitso {
         this.log = log;
     }
 
+    /** Maximum number of order ids sent in a single lookup request by {@link #lookupOrdersBulk}. */
+    public void setLookupChunkSize(int lookupChunkSize) {
+        this.lookupChunkSize = Math.max(1, lookupChunkSize);
+    }
+
+    public int getLookupChunkSize() {
+        return lookupChunkSize;
+    }
+
+    /**
+     * A nonce greater than every one signed before in this process, so concurrent requests of
+     * the same API key never repeat one.
+     */
+    static long nextNonce() {
+        while (true) {
+            long last = LAST_NONCE.get();
+            // Same scale as the nonces this client has always sent
+            long nonce = Math.max(last + 1, System.currentTimeMillis() + System.currentTimeMillis());
+            if (LAST_NONCE.compareAndSet(last, nonce)) {
+                return nonce;
+            }
+        }
+    }
+
     private void logError(String error) {
         if (log) {
             System.err.println(error);
@@ -204,6 +236,18 @@ public class Bitso {
 
     public BitsoOperation[] getLedger(String specificOperation, String... queryParameters)
             throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        JSONArray payloadJSON = getLedgerPayload(specificOperation, queryParameters);
+        int totalElements = payloadJSON.length();
+        BitsoOperation[] operations = new BitsoOperation[totalElements];
+        for (int i = 0; i < totalElements; i++) {
+            operations[i] = new BitsoOperation(payloadJSON.getJSONObject(i));
+        }
+        return operations;
+    }
+
+    /** Same request as {@link #getLedger}, but returns the undecoded ledger entries. */
+    public JSONArray getLedgerPayload(String specificOperation, String... queryParameters)
+            throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
         String request = "/api/v3/ledger";
 
         if (specificOperation != null && specificOperation.length() > 0) {
@@ -214,13 +258,7 @@ public class Bitso {
         request += ((parsedQueryParametes != null) ? "?" + parsedQueryParametes : "");
 
         String getResponse = sendBitsoGet(request);
-        JSONArray payloadJSON = (JSONArray) getJSONPayload(getResponse);
-        int totalElements = payloadJSON.length();
-        BitsoOperation[] operations = new BitsoOperation[totalElements];
-        for (int i = 0; i < totalElements; i++) {
-            operations[i] = new BitsoOperation(payloadJSON.getJSONObject(i));
-        }
-        return operations;
+        return (JSONArray) getJSONPayload(getResponse);
     }
 
     /**
@@ -356,6 +394,20 @@ public class Bitso {
 
     public BitsoOrder[] getOpenOrders(String book, String... queryParameters)
             throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        JSONArray payloadJSON = getOpenOrdersPayload(book, queryParameters);
+        int totalElements = payloadJSON.length();
+        BitsoOrder[] orders = new BitsoOrder[totalElements];
+        for (int i = 0; i < totalElements; i++) {
+            orders[i] = new BitsoOrder(payloadJSON.getJSONObject(i));
+        }
+        return orders;
+    }
+
+    /** Same request as {@link #getOpenOrders}, but returns the undecoded payload so callers
+     * can decide which orders are worth decoding.
+     */
+    public JSONArray getOpenOrdersPayload(String book, String... queryParameters)
+            throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
         String request = "/api/v3/open_orders";
 
         request += "?" + "book=" + book;
@@ -364,27 +416,24 @@ public class Bitso {
         request += ((parsedQueryParametes != null) ? "&" + parsedQueryParametes : "");
 
         String getResponse = sendBitsoGet(request);
-        JSONArray payloadJSON = (JSONArray) getJSONPayload(getResponse);
-        int totalElements = payloadJSON.length();
-        BitsoOrder[] orders = new BitsoOrder[totalElements];
-        for (int i = 0; i < totalElements; i++) {
-            orders[i] = new BitsoOrder(payloadJSON.getJSONObject(i));
-        }
-        return orders;
+        return (JSONArray) getJSONPayload(getResponse);
     }
 
     public BitsoOrder[] lookupOrders(String... ordersId)
             throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
-        String request = "/api/v3/orders";
-
         if (ordersId == null || ordersId.length == 0) {
             return null;
         }
 
-        String ordersIdsParameters = processQueryParameters("-", ordersId);
-        request += "/" + ordersIdsParameters;
+        return decodeOrders(sendBitsoGet(lookupOrdersPath(ordersId)));
+    }
 
-        String getResponse = sendBitsoGet(request);
+    private String lookupOrdersPath(String... ordersId) {
+        return "/api/v3/orders/" + processQueryParameters("-", ordersId);
+    }
+
+    private BitsoOrder[] decodeOrders(String getResponse)
+            throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
         JSONArray payloadJSON = (JSONArray) getJSONPayload(getResponse);
         int totalElements = payloadJSON.length();
         BitsoOrder[] orders = new BitsoOrder[totalElements];
@@ -394,6 +443,50 @@ public class Bitso {
         return orders;
     }
 
+    /** Looks up any number of orders. The ids are split in chunks of at most
+     * {@link #setLookupChunkSize lookup chunk size}. Chunks are signed and sent one after
+     * another on the calling thread, so their nonces reach the server in order; requests are
+     * throttled like every other call of this client.
+     * @param ordersId The ids of the orders to look up. Duplicated and empty ids are ignored.
+     * @return The orders found, keyed by order id. Unknown ids are absent from the map.
+     */
+    public Map<String, BitsoOrder> lookupOrdersBulk(String... ordersId)
+            throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        Map<String, BitsoOrder> result = new HashMap<String, BitsoOrder>();
+
+        if (ordersId == null || ordersId.length == 0) {
+            return result;
+        }
+
+        LinkedHashSet<String> uniqueIds = new LinkedHashSet<String>();
+        for (String orderId : ordersId) {
+            if (orderId != null && orderId.trim().length() > 0) {
+                uniqueIds.add(orderId.trim());
+            }
+        }
+
+        String[] ids = uniqueIds.toArray(new String[uniqueIds.size()]);
+        int chunkSize = lookupChunkSize;
+        List<String[]> chunks = new ArrayList<String[]>();
+        for (int from = 0; from < ids.length; from += chunkSize) {
+            chunks.add(Arrays.copyOfRange(ids, from, Math.min(from + chunkSize, ids.length)));
+        }
+
+        for (String[] chunk : chunks) {
+            mergeOrders(result, lookupOrders(chunk));
+        }
+        return result;
+    }
+
+    private void mergeOrders(Map<String, BitsoOrder> result, BitsoOrder[] orders) {
+        if (orders == null) {
+            return;
+        }
+        for (BitsoOrder order : orders) {
+            result.put(order.getOid(), order);
+        }
+    }
+
     /** Place a market order to sell the specified amount.
      * @param book The trading pair for this order.
      * @param amount The amount to sell, in major currency.
@@ -787,7 +880,7 @@ public class Bitso {
             throw new BitsoAPIException("Bitso API key is empty");
         }
 
-        long nonce = System.currentTimeMillis() + System.currentTimeMillis();
+        long nonce = nextNonce();
         String message = nonce + httpMethod + requestPath;
 
         try {
@@ -888,7 +981,7 @@ public class Bitso {
     }
 
     private String sendBitsoDelete(String requestPath) throws BitsoAPIException {
-        long nonce = System.currentTimeMillis() + System.currentTimeMillis();
+        long nonce = nextNonce();
         Entry<String, String> authHeader = buildBitsoAuthHeader(secret, key, nonce, "DELETE", requestPath,
                 null);
         HashMap<String, String> headers = new HashMap<String, String>();
@@ -902,7 +995,7 @@ public class Bitso {
     }
 
     public String sendBitsoPost(String requestPath, JSONObject jsonPayload) throws BitsoAPIException {
-        long nonce = System.currentTimeMillis() + System.currentTimeMillis();
+        long nonce = nextNonce();
         String jsonString = "";
         if (jsonPayload != null) {
             jsonString = jsonPayload.toString();
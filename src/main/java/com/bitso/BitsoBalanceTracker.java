@@ -0,0 +1,189 @@
+package com.bitso;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.bitso.BitsoBalance.Balance;
+import com.bitso.BitsoOperation.BalanceUpdate;
+import com.bitso.exceptions.BitsoAPIException;
+import com.bitso.exceptions.BitsoPayloadException;
+import com.bitso.exceptions.BitsoServerException;
+
+/**
+ * Keeps a local view of the account balances driven by ledger deltas.
+ *
+ * The view is seeded from a single {@link Bitso#getAccountBalance()} call. After that, every
+ * {@link #poll()} only requests the ledger entries newer than the last one applied and adds their
+ * balance updates to the tracked totals. Right after each snapshot the newest ledger entry is read,
+ * and entries up to it are taken as already part of the snapshot and skipped, so the skipping
+ * follows the ledger's own order instead of comparing the client's clock with the server's. Entries
+ * that land between the two requests are counted as part of the snapshot. Funds locked or released
+ * by open orders do not show up in the ledger, so every {@code reconcileEvery} polls the view is
+ * replaced by a full balance snapshot.
+ *
+ * The outgoing side of a trade is taken from the funds the snapshot reported as locked before it
+ * touches the available balance, since those funds already left it when the order was placed.
+ *
+ * Reads never take a lock, so balance checks can be done from any thread at any rate. Seeding,
+ * polling and reconciling are serialized.
+ */
+public class BitsoBalanceTracker {
+    private static final int PAGE_SIZE = 100;
+
+    private final Bitso mBitso;
+    private final int mReconcileEvery;
+    private final ConcurrentHashMap<String, BigDecimal> mAvailable;
+    private final ConcurrentHashMap<String, BigDecimal> mTotal;
+    private final ConcurrentHashMap<String, BigDecimal> mLocked;
+    private final Object mLock = new Object();
+    private volatile String mMarker;
+    // Newest ledger entry when the latest snapshot was taken, null once polling went past it
+    private String mSnapshotEntry;
+    private int mPolls;
+
+    /**
+     * @param bitso The client used to request balances and ledger entries.
+     * @param reconcileEvery Number of polls between full reconciliations, zero or less to never reconcile.
+     */
+    public BitsoBalanceTracker(Bitso bitso, int reconcileEvery) {
+        mBitso = bitso;
+        mReconcileEvery = reconcileEvery;
+        mAvailable = new ConcurrentHashMap<String, BigDecimal>();
+        mTotal = new ConcurrentHashMap<String, BigDecimal>();
+        mLocked = new ConcurrentHashMap<String, BigDecimal>();
+    }
+
+    /** Seeds the tracker with the current balances and the ledger entry they include. */
+    public void seed() throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        synchronized (mLock) {
+            mMarker = null;
+            reconcile();
+            mMarker = mSnapshotEntry;
+            mSnapshotEntry = null;
+            mPolls = 0;
+        }
+    }
+
+    /** Applies the ledger entries added since the previous poll, reconciling when it's due.
+     * @return The number of ledger entries applied.
+     */
+    public int poll() throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        synchronized (mLock) {
+            int applied = 0;
+            while (true) {
+                BitsoOperation[] operations = (mMarker == null)
+                        ? mBitso.getLedger(null, "sort=asc", "limit=" + PAGE_SIZE)
+                        : mBitso.getLedger(null, "marker=" + mMarker, "sort=asc", "limit=" + PAGE_SIZE);
+                for (BitsoOperation operation : operations) {
+                    if (applyIfNewer(operation)) {
+                        applied++;
+                    }
+                    mMarker = operation.getEntryId();
+                }
+                if (operations.length < PAGE_SIZE) {
+                    break;
+                }
+            }
+
+            mPolls++;
+            if (mReconcileEvery > 0 && mPolls % mReconcileEvery == 0) {
+                reconcile();
+            }
+            return applied;
+        }
+    }
+
+    /** Replaces the tracked balances with a full snapshot from the server, keeping the ledger marker.
+     * Entries after the marker up to the newest one when the snapshot was taken are skipped by the
+     * next poll.
+     */
+    public void reconcile() throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        synchronized (mLock) {
+            BitsoBalance balance = mBitso.getAccountBalance();
+            for (Map.Entry<String, Balance> entry : balance.getBalances().entrySet()) {
+                Balance current = entry.getValue();
+                mAvailable.put(entry.getKey(), current.getAvailable());
+                mTotal.put(entry.getKey(), current.getTotal());
+                mLocked.put(entry.getKey(),
+                        (current.getLocked() != null) ? current.getLocked() : BigDecimal.ZERO);
+            }
+            // Newest entries first
+            BitsoOperation[] newest = mBitso.getLedger(null, "limit=1");
+            String snapshotEntry = (newest != null && newest.length > 0) ? newest[0].getEntryId() : null;
+            mSnapshotEntry = (snapshotEntry != null && !snapshotEntry.equals(mMarker)) ? snapshotEntry : null;
+        }
+    }
+
+    /** Adds the balance updates of a ledger entry to the tracked balances. */
+    public void apply(BitsoOperation operation) {
+        BalanceUpdate[] updates = operation.getAfterOperationBalances();
+        if (updates == null) {
+            return;
+        }
+        boolean trade = "trade".equals(operation.getOperationDescription());
+        synchronized (mLock) {
+            for (BalanceUpdate update : updates) {
+                String currency = update.getCurrency();
+                BigDecimal amount = update.getAmount();
+                if (currency == null || amount == null) {
+                    continue;
+                }
+                add(mTotal, currency, amount);
+                if (trade && amount.signum() < 0) {
+                    // Paid out of the funds locked by the order, if the snapshot saw them locked
+                    BigDecimal locked = mLocked.get(currency);
+                    BigDecimal fromLocked = (locked != null) ? locked.min(amount.negate()) : BigDecimal.ZERO;
+                    if (fromLocked.signum() > 0) {
+                        mLocked.put(currency, locked.subtract(fromLocked));
+                        amount = amount.add(fromLocked);
+                    }
+                }
+                add(mAvailable, currency, amount);
+            }
+        }
+    }
+
+    public BigDecimal getAvailable(String currency) {
+        BigDecimal available = mAvailable.get(currency);
+        return (available != null) ? available : BigDecimal.ZERO;
+    }
+
+    public BigDecimal getTotal(String currency) {
+        BigDecimal total = mTotal.get(currency);
+        return (total != null) ? total : BigDecimal.ZERO;
+    }
+
+    /** Whether the available balance of a currency covers the given amount. */
+    public boolean hasAvailable(String currency, BigDecimal amount) {
+        return getAvailable(currency).compareTo(amount) >= 0;
+    }
+
+    public BigDecimal getLocked(String currency) {
+        BigDecimal locked = mLocked.get(currency);
+        return (locked != null) ? locked : BigDecimal.ZERO;
+    }
+
+    /** The id of the last ledger entry seen, whether it was applied or already part of a snapshot. */
+    public String getMarker() {
+        return mMarker;
+    }
+
+    private boolean applyIfNewer(BitsoOperation operation) {
+        if (mSnapshotEntry != null) {
+            // Part of the latest snapshot, as is every entry up to it
+            if (mSnapshotEntry.equals(operation.getEntryId())) {
+                mSnapshotEntry = null;
+            }
+            return false;
+        }
+        apply(operation);
+        return true;
+    }
+
+    private static void add(ConcurrentHashMap<String, BigDecimal> balances, String currency,
+            BigDecimal amount) {
+        BigDecimal current = balances.get(currency);
+        balances.put(currency, (current != null) ? current.add(amount) : amount);
+    }
+}
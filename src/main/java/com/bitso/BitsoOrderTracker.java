@@ -0,0 +1,238 @@
+package com.bitso;
+
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.bitso.exceptions.BitsoAPIException;
+import com.bitso.exceptions.BitsoPayloadException;
+import com.bitso.exceptions.BitsoServerException;
+import com.bitso.exceptions.BitsoValidationException;
+import com.bitso.helpers.Helpers;
+
+/**
+ * Keeps an in-memory view of the user's working orders, keyed by order id.
+ *
+ * Orders placed or cancelled through the tracker are reflected immediately. Calling
+ * {@link #reconcile(String)} periodically brings the view in line with the server: only the
+ * orders whose updated_at changed since the previous reconciliation are decoded, and the orders
+ * that left the open orders list are resolved with a single bulk lookup.
+ */
+public class BitsoOrderTracker {
+    private static final int PAGE_SIZE = 100;
+
+    private final Bitso mBitso;
+    // book -> (oid -> order)
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, BitsoOrder>> mOrdersByBook;
+    // oid -> raw updated_at as seen in the last reconciliation
+    private final ConcurrentHashMap<String, String> mUpdatedAt;
+
+    public BitsoOrderTracker(Bitso bitso) {
+        mBitso = bitso;
+        mOrdersByBook = new ConcurrentHashMap<String, ConcurrentHashMap<String, BitsoOrder>>();
+        mUpdatedAt = new ConcurrentHashMap<String, String>();
+    }
+
+    /** Places an order through {@link Bitso#placeOrder} and starts tracking it as queued
+     * until the next reconciliation fills in the server side details.
+     * @return The order ID generated by the system, or null if the order was not placed.
+     */
+    public String placeOrder(String book, BitsoOrder.SIDE side, BitsoOrder.TYPE type, BigDecimal major,
+            BigDecimal minor, BigDecimal price, BitsoOrder.TIME_IN_FORCE tif)
+            throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        String oid = mBitso.placeOrder(book, side, type, major, minor, price, tif);
+        if (oid != null) {
+            track(provisionalOrder(oid, book, side, type, major, minor, price));
+        }
+        return oid;
+    }
+
+    /** Cancels orders through {@link Bitso#cancelOrder} and stops tracking the ones the
+     * server reports as cancelled.
+     * @return The ids of the cancelled orders.
+     */
+    public String[] cancelOrder(String... ordersIds)
+            throws BitsoAPIException, BitsoValidationException, BitsoPayloadException, BitsoServerException {
+        String[] cancelled = mBitso.cancelOrder(ordersIds);
+        for (String oid : cancelled) {
+            untrack(oid);
+        }
+        return cancelled;
+    }
+
+    /** Starts tracking an order obtained elsewhere, e.g. from {@link Bitso#lookupOrders}. */
+    public void track(BitsoOrder order) {
+        if (isClosed(order)) {
+            untrack(order.getOid());
+            return;
+        }
+        ordersOf(order.getBook()).put(order.getOid(), order);
+    }
+
+    /** Reconciles the tracked orders of a book against the server.
+     * @param book The book to reconcile.
+     * @return The number of orders that were decoded because they were new, changed or closed.
+     */
+    public int reconcile(String book)
+            throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        ConcurrentHashMap<String, BitsoOrder> orders = ordersOf(book);
+        Set<String> seen = new HashSet<String>();
+        int decoded = 0;
+
+        String marker = null;
+        while (true) {
+            JSONArray page = (marker == null)
+                    ? mBitso.getOpenOrdersPayload(book, "limit=" + PAGE_SIZE)
+                    : mBitso.getOpenOrdersPayload(book, "limit=" + PAGE_SIZE, "marker=" + marker);
+            int totalElements = page.length();
+            for (int i = 0; i < totalElements; i++) {
+                JSONObject o = page.getJSONObject(i);
+                String oid = o.optString("oid", null);
+                if (oid == null) {
+                    continue;
+                }
+                seen.add(oid);
+                String updatedAt = o.optString("updated_at", "");
+                if (!updatedAt.equals(mUpdatedAt.get(oid)) || !orders.containsKey(oid)) {
+                    orders.put(oid, new BitsoOrder(o));
+                    mUpdatedAt.put(oid, updatedAt);
+                    decoded++;
+                }
+            }
+            if (totalElements < PAGE_SIZE) {
+                break;
+            }
+            marker = page.getJSONObject(totalElements - 1).optString("oid", null);
+            if (marker == null) {
+                break;
+            }
+        }
+
+        // Orders no longer open were either filled, cancelled or not processed yet
+        List<String> missing = new ArrayList<String>();
+        for (String oid : orders.keySet()) {
+            if (!seen.contains(oid)) {
+                missing.add(oid);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<String, BitsoOrder> lookedUp = mBitso.lookupOrdersBulk(missing.toArray(new String[0]));
+            for (String oid : missing) {
+                BitsoOrder order = lookedUp.get(oid);
+                if (order == null || isClosed(order)) {
+                    untrack(oid);
+                } else {
+                    orders.put(oid, order);
+                }
+                decoded++;
+            }
+        }
+        return decoded;
+    }
+
+    /** Reconciles every book that currently has tracked orders.
+     * @return The number of orders that were decoded.
+     */
+    public int reconcileAll() throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        int decoded = 0;
+        for (String book : mOrdersByBook.keySet()) {
+            decoded += reconcile(book);
+        }
+        return decoded;
+    }
+
+    public BitsoOrder getOrder(String oid) {
+        for (ConcurrentHashMap<String, BitsoOrder> orders : mOrdersByBook.values()) {
+            BitsoOrder order = orders.get(oid);
+            if (order != null) {
+                return order;
+            }
+        }
+        return null;
+    }
+
+    public List<BitsoOrder> getOrders(String book) {
+        return getOrders(book, null, null);
+    }
+
+    public List<BitsoOrder> getOrders(String book, BitsoOrder.SIDE side) {
+        return getOrders(book, side, null);
+    }
+
+    /** Returns the tracked orders of a book matching the given side and status.
+     * @param book The book of the orders.
+     * @param side The side to match, or null for both sides.
+     * @param status The status to match, or null for any status.
+     */
+    public List<BitsoOrder> getOrders(String book, BitsoOrder.SIDE side, BitsoOrder.STATUS status) {
+        List<BitsoOrder> result = new ArrayList<BitsoOrder>();
+        ConcurrentHashMap<String, BitsoOrder> orders = mOrdersByBook.get(book);
+        if (orders == null) {
+            return result;
+        }
+        for (BitsoOrder order : orders.values()) {
+            if ((side == null || side == order.getSide())
+                    && (status == null || status == order.getStatus())) {
+                result.add(order);
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        int size = 0;
+        for (ConcurrentHashMap<String, BitsoOrder> orders : mOrdersByBook.values()) {
+            size += orders.size();
+        }
+        return size;
+    }
+
+    private void untrack(String oid) {
+        mUpdatedAt.remove(oid);
+        for (ConcurrentHashMap<String, BitsoOrder> orders : mOrdersByBook.values()) {
+            if (orders.remove(oid) != null) {
+                return;
+            }
+        }
+    }
+
+    private ConcurrentHashMap<String, BitsoOrder> ordersOf(String book) {
+        ConcurrentHashMap<String, BitsoOrder> orders = mOrdersByBook.get(book);
+        if (orders == null) {
+            mOrdersByBook.putIfAbsent(book, new ConcurrentHashMap<String, BitsoOrder>());
+            orders = mOrdersByBook.get(book);
+        }
+        return orders;
+    }
+
+    private boolean isClosed(BitsoOrder order) {
+        return order.getStatus() == BitsoOrder.STATUS.COMPLETED
+                || order.getStatus() == BitsoOrder.STATUS.CANCELLED;
+    }
+
+    private BitsoOrder provisionalOrder(String oid, String book, BitsoOrder.SIDE side, BitsoOrder.TYPE type,
+            BigDecimal major, BigDecimal minor, BigDecimal price) {
+        String now = new SimpleDateFormat(Helpers.dateTimeFormatterZOffset).format(new Date());
+        JSONObject o = new JSONObject();
+        o.put("oid", oid);
+        o.put("book", book);
+        o.put("side", side.toString());
+        o.put("type", type.toString());
+        o.put("status", "queued");
+        o.put("original_amount", (major != null) ? major.toString() : JSONObject.NULL);
+        o.put("original_value", (minor != null) ? minor.toString() : JSONObject.NULL);
+        o.put("price", (price != null) ? price.toString() : JSONObject.NULL);
+        o.put("created_at", now);
+        o.put("updated_at", now);
+        return new BitsoOrder(o);
+    }
+}
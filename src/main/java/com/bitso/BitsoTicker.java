@@ -9,6 +9,9 @@ public class BitsoTicker extends Ticker {
 
     private String book;
 
+    public BitsoTicker() {
+    }
+
     public BitsoTicker(JSONObject o) {
         mLast = Helpers.getBD(o, "last");
         mHigh = Helpers.getBD(o, "high");
@@ -0,0 +1,115 @@
+package com.bitso.journal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads back, in order, the frames recorded by a {@link BitsoJournalWriter}.
+ *
+ * <pre>
+ * BitsoJournalReader reader = new BitsoJournalReader(directory);
+ * while (reader.next()) {
+ *     process(reader.getReceivedAt(), reader.getFrame());
+ * }
+ * </pre>
+ */
+public class BitsoJournalReader implements Closeable {
+    private final List<File> mSegments;
+    private int mSegment;
+    private FileChannel mChannel;
+    private MappedByteBuffer mBuffer;
+    private long mReceivedAt;
+    private String mFrame;
+    private byte[] mScratch;
+
+    public BitsoJournalReader(File directory) throws IOException {
+        if (!directory.isDirectory()) {
+            throw new IOException(directory + " is not a journal directory");
+        }
+        List<Integer> indexes = new ArrayList<Integer>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                int index = BitsoJournalWriter.segmentIndex(file);
+                if (index >= 0) {
+                    indexes.add(index);
+                }
+            }
+        }
+        Collections.sort(indexes);
+        mSegments = new ArrayList<File>();
+        for (Integer index : indexes) {
+            mSegments.add(BitsoJournalWriter.segmentFile(directory, index));
+        }
+        mSegment = -1;
+        mScratch = new byte[1024];
+    }
+
+    /** Moves to the next recorded frame.
+     * @return false once every segment has been read.
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (mBuffer == null && !openNextSegment()) {
+                return false;
+            }
+            if (mBuffer.remaining() >= BitsoJournalWriter.HEADER_SIZE) {
+                int start = mBuffer.position();
+                int length = mBuffer.getInt(start);
+                if (length > 0 && mBuffer.remaining() >= BitsoJournalWriter.HEADER_SIZE + length) {
+                    mBuffer.position(start + 4);
+                    mReceivedAt = mBuffer.getLong();
+                    if (mScratch.length < length) {
+                        mScratch = new byte[Math.max(length, mScratch.length * 2)];
+                    }
+                    mBuffer.get(mScratch, 0, length);
+                    mFrame = new String(mScratch, 0, length, StandardCharsets.UTF_8);
+                    return true;
+                }
+            }
+            // End of the written data, or a segment closed early
+            closeSegment();
+        }
+    }
+
+    /** Receive timestamp of the current frame, in epoch nanoseconds. */
+    public long getReceivedAt() {
+        return mReceivedAt;
+    }
+
+    public String getFrame() {
+        return mFrame;
+    }
+
+    public void close() throws IOException {
+        closeSegment();
+        mSegment = mSegments.size();
+    }
+
+    private boolean openNextSegment() throws IOException {
+        if (mSegment + 1 >= mSegments.size()) {
+            return false;
+        }
+        mSegment++;
+        RandomAccessFile file = new RandomAccessFile(mSegments.get(mSegment), "r");
+        mChannel = file.getChannel();
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_ONLY, 0, mChannel.size());
+        return true;
+    }
+
+    private void closeSegment() throws IOException {
+        if (mChannel != null) {
+            mChannel.close();
+            mChannel = null;
+        }
+        mBuffer = null;
+    }
+}
@@ -0,0 +1,105 @@
+package com.bitso.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Observable;
+import java.util.concurrent.locks.LockSupport;
+
+import com.bitso.websockets.BitsoStreamProcessedOrders;
+
+/**
+ * Feeds frames recorded by a {@link BitsoJournalWriter} to observers exactly the way a live
+ * {@link com.bitso.websockets.BitsoWebSocket} does: a {@code Boolean.TRUE} connection update,
+ * then every frame as the original {@code String}, then {@code Boolean.FALSE}. Any observer
+ * written for the live socket, such as an order book or a strategy, can therefore be run
+ * against recorded data. Frames are replayed byte for byte, so sequence numbers are the ones
+ * seen in production.
+ *
+ * The replay can follow the recorded timing, run it N times faster, or go as fast as possible.
+ * Like the live socket, it can deliver processed orders decoded, see
+ * {@link #setTypedProcessedOrders}.
+ */
+public class BitsoJournalReplay extends Observable {
+    /** Replay speed that delivers frames without waiting. */
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+    /** Replay speed that follows the recorded timing. */
+    public static final double REAL_TIME = 1;
+
+    private final File mDirectory;
+    private volatile boolean mStopped;
+    private volatile boolean mTypedProcessedOrders;
+
+    /**
+     * @param directory A directory written by {@link BitsoJournalWriter}.
+     */
+    public BitsoJournalReplay(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Delivers processed orders decoded, as {@link BitsoStreamProcessedOrders}, like
+     * {@link com.bitso.websockets.BitsoWebSocket#setTypedProcessedOrders} does live. Off by
+     * default.
+     */
+    public void setTypedProcessedOrders(boolean typedProcessedOrders) {
+        mTypedProcessedOrders = typedProcessedOrders;
+    }
+
+    /** Replays the whole journal on the calling thread.
+     * @param speed How many times faster than recorded, or {@link #AS_FAST_AS_POSSIBLE}.
+     * @return The number of frames delivered.
+     */
+    public long replay(double speed) throws IOException {
+        mStopped = false;
+        long delivered = 0;
+        BitsoJournalReader reader = new BitsoJournalReader(mDirectory);
+        try {
+            notifyConnected(Boolean.TRUE);
+            long firstReceivedAt = 0;
+            long startNanos = 0;
+            while (!mStopped && reader.next()) {
+                if (speed > 0) {
+                    if (delivered == 0) {
+                        firstReceivedAt = reader.getReceivedAt();
+                        startNanos = System.nanoTime();
+                    } else {
+                        long offset = (long) ((reader.getReceivedAt() - firstReceivedAt) / speed);
+                        waitUntil(startNanos + offset);
+                    }
+                }
+                setChanged();
+                notifyObservers(decode(reader.getFrame()));
+                delivered++;
+            }
+        } finally {
+            reader.close();
+            notifyConnected(Boolean.FALSE);
+        }
+        return delivered;
+    }
+
+    /** Stops a replay running on another thread after the frame being delivered. */
+    public void stop() {
+        mStopped = true;
+    }
+
+    private Object decode(String frame) {
+        if (!mTypedProcessedOrders) {
+            return frame;
+        }
+        BitsoStreamProcessedOrders processedOrders = BitsoStreamProcessedOrders.fromFrame(frame);
+        return (processedOrders != null) ? processedOrders : frame;
+    }
+
+    private void notifyConnected(Boolean connected) {
+        setChanged();
+        notifyObservers(connected);
+    }
+
+    private void waitUntil(long deadline) {
+        long remaining;
+        while (!mStopped && (remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
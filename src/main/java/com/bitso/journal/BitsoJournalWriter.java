@@ -0,0 +1,202 @@
+package com.bitso.journal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Observable;
+import java.util.Observer;
+
+import com.bitso.websockets.BitsoStreamProcessedOrders;
+
+/**
+ * Records every frame received by a {@link com.bitso.websockets.BitsoWebSocket} into rolling
+ * memory-mapped segment files.
+ *
+ * Each record is laid out as {@code [int length][long receivedAtNanos][length bytes of UTF-8]}
+ * and appended sequentially with plain puts into the mapped segment, so recording a frame costs
+ * a memory copy instead of a system call. The length is written after the rest of the record, a
+ * zero length therefore marks the end of the written data, and {@link #END_OF_SEGMENT} marks a
+ * segment that was closed early because the next record did not fit.
+ *
+ * Timestamps are epoch nanoseconds derived from a single wall-clock reading and
+ * {@link System#nanoTime()}, so they are monotonic within a journal. A journal has a single
+ * writer: register it as an observer of one web socket, or call {@link #append} from one thread.
+ */
+public class BitsoJournalWriter implements Observer, Closeable {
+    public static final int HEADER_SIZE = 4 + 8;
+    public static final int END_OF_SEGMENT = -1;
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private final File mDirectory;
+    private final int mSegmentSize;
+    private final long mEpochNanosBase;
+    private final long mNanoTimeBase;
+
+    private FileChannel mChannel;
+    private MappedByteBuffer mBuffer;
+    private int mSegmentIndex;
+    private long mRecords;
+    private volatile long mFailures;
+    private volatile IOException mLastFailure;
+    private byte[] mScratch;
+
+    public BitsoJournalWriter(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param directory Where the segment files are created. New segments follow the existing ones.
+     * @param segmentSize The size of each segment file, which bounds the size of a single frame.
+     */
+    public BitsoJournalWriter(File directory, int segmentSize) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+        mDirectory = directory;
+        mSegmentSize = segmentSize;
+        mEpochNanosBase = System.currentTimeMillis() * 1_000_000L;
+        mNanoTimeBase = System.nanoTime();
+        mScratch = new byte[1024];
+        mSegmentIndex = lastSegmentIndex(directory);
+        openSegment(mSegmentIndex + 1);
+    }
+
+    public void update(Observable o, Object arg) {
+        if (arg instanceof BitsoStreamProcessedOrders) {
+            arg = ((BitsoStreamProcessedOrders) arg).getFrame();
+        }
+        if (arg instanceof String) {
+            try {
+                append((String) arg);
+            } catch (IOException e) {
+                // Not thrown back to the web socket, which would stop notifying other observers
+                mLastFailure = e;
+                mFailures++;
+            }
+        }
+    }
+
+    /** Appends a frame stamped with the current time. */
+    public void append(String frame) throws IOException {
+        append(frame, now());
+    }
+
+    /** Appends a frame with an explicit receive timestamp, in epoch nanoseconds. */
+    public void append(String frame, long receivedAtNanos) throws IOException {
+        int length = encode(frame);
+        if (HEADER_SIZE + length > mSegmentSize - 4) {
+            throw new IOException("Frame of " + length + " bytes does not fit in a journal segment");
+        }
+        if (mBuffer.remaining() < HEADER_SIZE + length + 4) {
+            mBuffer.putInt(mBuffer.position(), END_OF_SEGMENT);
+            openSegment(mSegmentIndex + 1);
+        }
+
+        int start = mBuffer.position();
+        mBuffer.position(start + 4);
+        mBuffer.putLong(receivedAtNanos);
+        mBuffer.put(mScratch, 0, length);
+        // Publishing the length last commits the record
+        mBuffer.putInt(start, length);
+        mRecords++;
+    }
+
+    /** Current time in the journal's epoch nanosecond clock. */
+    public long now() {
+        return mEpochNanosBase + (System.nanoTime() - mNanoTimeBase);
+    }
+
+    public long getRecordsWritten() {
+        return mRecords;
+    }
+
+    /** Number of frames received as an observer that could not be recorded. */
+    public long getFailures() {
+        return mFailures;
+    }
+
+    /** Why the latest frame received as an observer could not be recorded, null if none failed. */
+    public IOException getLastFailure() {
+        return mLastFailure;
+    }
+
+    /** Flushes the current segment to disk. */
+    public void flush() {
+        mBuffer.force();
+    }
+
+    public void close() throws IOException {
+        if (mChannel != null) {
+            mBuffer.force();
+            mChannel.close();
+            mChannel = null;
+        }
+    }
+
+    // Encodes into the scratch buffer, avoiding a byte[] per frame for the usual ASCII payloads
+    private int encode(String frame) {
+        int length = frame.length();
+        if (mScratch.length < length) {
+            mScratch = new byte[Math.max(length, mScratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            char c = frame.charAt(i);
+            if (c >= 0x80) {
+                byte[] bytes = frame.getBytes(StandardCharsets.UTF_8);
+                if (mScratch.length < bytes.length) {
+                    mScratch = new byte[bytes.length];
+                }
+                System.arraycopy(bytes, 0, mScratch, 0, bytes.length);
+                return bytes.length;
+            }
+            mScratch[i] = (byte) c;
+        }
+        return length;
+    }
+
+    private void openSegment(int index) throws IOException {
+        if (mChannel != null) {
+            mBuffer.force();
+            mChannel.close();
+        }
+        RandomAccessFile file = new RandomAccessFile(segmentFile(mDirectory, index), "rw");
+        mChannel = file.getChannel();
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, mSegmentSize);
+        mSegmentIndex = index;
+    }
+
+    static File segmentFile(File directory, int index) {
+        return new File(directory, String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    static int segmentIndex(File file) {
+        String name = file.getName();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            int end = name.length() - SEGMENT_SUFFIX.length();
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int lastSegmentIndex(File directory) {
+        int last = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                last = Math.max(last, segmentIndex(file));
+            }
+        }
+        return last;
+    }
+}
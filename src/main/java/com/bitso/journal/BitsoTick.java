@@ -0,0 +1,121 @@
+package com.bitso.journal;
+
+import java.math.BigDecimal;
+
+import com.bitso.BitsoOrder;
+
+/**
+ * A single trade or order book change read by a {@link BitsoTickDecoder}.
+ *
+ * The decoder reuses one instance for every tick it reads, so callers must copy whatever they
+ * need to keep before moving to the next tick.
+ */
+public class BitsoTick {
+    public enum KIND {
+        TRADE, DIFF
+    }
+
+    /** Status of the order behind a diff tick. */
+    public enum STATUS {
+        OPEN, CANCELLED, COMPLETED
+    }
+
+    KIND mKind;
+    long mTimestamp;
+    long mTradeId;
+    long mSequence;
+    BitsoOrder.SIDE mSide;
+    STATUS mStatus;
+    long mPriceTicks;
+    long mAmountUnits;
+    boolean mHasPrice;
+    boolean mHasAmount;
+    String mOrderId;
+    int mPriceScale;
+    int mAmountScale;
+    double mPriceUnit;
+    double mAmountUnit;
+
+    public KIND getKind() {
+        return mKind;
+    }
+
+    /** Epoch milliseconds. */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /** Trade id of a trade tick, -1 for diff ticks. */
+    public long getTradeId() {
+        return mTradeId;
+    }
+
+    /** Sequence number of the diff-orders message of a diff tick, -1 for trade ticks. */
+    public long getSequence() {
+        return mSequence;
+    }
+
+    /** Side of the order for diff ticks, side of the maker for trade ticks, null when it was not known. */
+    public BitsoOrder.SIDE getSide() {
+        return mSide;
+    }
+
+    /** Status of the order of a diff tick, null for trade ticks. */
+    public STATUS getStatus() {
+        return mStatus;
+    }
+
+    /** Order id of a diff tick, null for trade ticks. */
+    public String getOrderId() {
+        return mOrderId;
+    }
+
+    /** Whether the price was known when the tick was encoded. */
+    public boolean hasPrice() {
+        return mHasPrice;
+    }
+
+    /** Whether the amount was known when the tick was encoded. */
+    public boolean hasAmount() {
+        return mHasAmount;
+    }
+
+    /** Price as an integer number of 10^-priceScale units, 0 without a price. */
+    public long getPriceTicks() {
+        return mPriceTicks;
+    }
+
+    /** Amount as an integer number of 10^-amountScale units, 0 without an amount. */
+    public long getAmountUnits() {
+        return mAmountUnits;
+    }
+
+    /** NaN without a price. */
+    public double getPrice() {
+        return mHasPrice ? mPriceTicks * mPriceUnit : Double.NaN;
+    }
+
+    /** NaN without an amount. */
+    public double getAmount() {
+        return mHasAmount ? mAmountUnits * mAmountUnit : Double.NaN;
+    }
+
+    /** Null without a price. */
+    public BigDecimal getPriceDecimal() {
+        return mHasPrice ? BigDecimal.valueOf(mPriceTicks, mPriceScale) : null;
+    }
+
+    /** Null without an amount. */
+    public BigDecimal getAmountDecimal() {
+        return mHasAmount ? BigDecimal.valueOf(mAmountUnits, mAmountScale) : null;
+    }
+
+    @Override
+    public String toString() {
+        String details = (mKind == KIND.TRADE)
+                ? "tid:" + mTradeId
+                : "seq:" + mSequence + " " + mOrderId + " " + mStatus;
+        return mKind + " " + mTimestamp + " " + mSide + " " + getPriceDecimal() + " x " + getAmountDecimal()
+                + " " + details;
+    }
+}
@@ -0,0 +1,220 @@
+package com.bitso.journal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import com.bitso.BitsoOrder;
+
+/**
+ * Reads the ticks written by a {@link BitsoTickEncoder}.
+ *
+ * Blocks are read whole and decoded from memory into a single reused {@link BitsoTick}, so
+ * iterating an archive allocates only per block and per order id. The block index allows
+ * starting at any point in time or sequence without decoding what comes before it.
+ */
+public class BitsoTickDecoder implements Closeable {
+    private static final BitsoTick.STATUS[] STATUSES = BitsoTick.STATUS.values();
+
+    private final RandomAccessFile mFile;
+    private final String mBook;
+    private final int mPriceScale;
+    private final int mAmountScale;
+    private final long[] mBlockOffsets;
+    private final long[] mBlockTimestamps;
+    private final long[] mBlockSequences;
+    private final BitsoTick mTick;
+
+    private int mNextBlock;
+    private byte[] mBlock;
+    private int mPosition;
+    private int mBlockTicksLeft;
+    private long mLastTimestamp;
+    private long mLastTradeId;
+    private long mLastSequence;
+    private long mLastPrice;
+
+    public BitsoTickDecoder(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        if (mFile.readInt() != BitsoTickEncoder.MAGIC) {
+            mFile.close();
+            throw new IOException(file + " is not a tick archive");
+        }
+        mPriceScale = mFile.readByte();
+        mAmountScale = mFile.readByte();
+        mBook = mFile.readUTF();
+
+        mFile.seek(mFile.length() - 12);
+        int blockCount = mFile.readInt();
+        long footerOffset = mFile.readLong();
+        mBlockOffsets = new long[blockCount];
+        mBlockTimestamps = new long[blockCount];
+        mBlockSequences = new long[blockCount];
+        mFile.seek(footerOffset);
+        for (int i = 0; i < blockCount; i++) {
+            mBlockOffsets[i] = mFile.readLong();
+            mBlockTimestamps[i] = mFile.readLong();
+            mBlockSequences[i] = mFile.readLong();
+            mFile.readInt();
+        }
+
+        mTick = new BitsoTick();
+        mTick.mPriceScale = mPriceScale;
+        mTick.mAmountScale = mAmountScale;
+        mTick.mPriceUnit = Math.pow(10, -mPriceScale);
+        mTick.mAmountUnit = Math.pow(10, -mAmountScale);
+        mBlock = new byte[0];
+    }
+
+    /** Moves to the next tick.
+     * @return false at the end of the archive.
+     */
+    public boolean next() throws IOException {
+        while (mBlockTicksLeft == 0) {
+            if (mNextBlock >= mBlockOffsets.length) {
+                return false;
+            }
+            readBlock(mNextBlock++);
+        }
+        decodeTick();
+        mBlockTicksLeft--;
+        return true;
+    }
+
+    /** The current tick. Its contents change on every call to {@link #next()}. */
+    public BitsoTick getTick() {
+        return mTick;
+    }
+
+    /** Positions the decoder on the block that may contain the first tick at or after a time.
+     * Ticks before that time in the same block are still returned by {@link #next()}.
+     */
+    public void seekTimestamp(long timestamp) {
+        seekBlock(floorBlock(mBlockTimestamps, timestamp));
+    }
+
+    /** Positions the decoder on the block that may contain the given diff sequence number. */
+    public void seekSequence(long sequence) {
+        int block = 0;
+        for (int i = 0; i < mBlockSequences.length; i++) {
+            if (mBlockSequences[i] >= 0 && mBlockSequences[i] <= sequence) {
+                block = i;
+            } else if (mBlockSequences[i] > sequence) {
+                break;
+            }
+        }
+        seekBlock(block);
+    }
+
+    public String getBook() {
+        return mBook;
+    }
+
+    public int getBlockCount() {
+        return mBlockOffsets.length;
+    }
+
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    private void seekBlock(int block) {
+        mNextBlock = block;
+        mBlockTicksLeft = 0;
+    }
+
+    private static int floorBlock(long[] firstValues, long value) {
+        int low = 0;
+        int high = firstValues.length - 1;
+        int result = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (firstValues[middle] <= value) {
+                result = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return result;
+    }
+
+    private void readBlock(int block) throws IOException {
+        mFile.seek(mBlockOffsets[block]);
+        int ticks = mFile.readInt();
+        int length = mFile.readInt();
+        if (mBlock.length < length) {
+            mBlock = new byte[length];
+        }
+        mFile.readFully(mBlock, 0, length);
+        mPosition = 0;
+        mBlockTicksLeft = ticks;
+        mLastTimestamp = 0;
+        mLastTradeId = 0;
+        mLastSequence = 0;
+        mLastPrice = 0;
+    }
+
+    private void decodeTick() {
+        int flags = mBlock[mPosition++] & 0xFF;
+        BitsoTick tick = mTick;
+        if ((flags & BitsoTickEncoder.FLAG_NO_SIDE) != 0) {
+            tick.mSide = null;
+        } else {
+            tick.mSide = ((flags & BitsoTickEncoder.FLAG_SELL) != 0)
+                    ? BitsoOrder.SIDE.SELL
+                    : BitsoOrder.SIDE.BUY;
+        }
+        mLastTimestamp += readSignedVarint();
+        tick.mTimestamp = mLastTimestamp;
+
+        if ((flags & 1) == BitsoTickEncoder.KIND_TRADE) {
+            tick.mKind = BitsoTick.KIND.TRADE;
+            mLastTradeId += readSignedVarint();
+            tick.mTradeId = mLastTradeId;
+            tick.mSequence = -1;
+            tick.mStatus = null;
+            tick.mOrderId = null;
+        } else {
+            tick.mKind = BitsoTick.KIND.DIFF;
+            tick.mStatus = STATUSES[(flags >> BitsoTickEncoder.STATUS_SHIFT) & 0x3];
+            mLastSequence += readSignedVarint();
+            tick.mSequence = mLastSequence;
+            tick.mTradeId = -1;
+            int length = (int) readVarint();
+            tick.mOrderId = (length > 0)
+                    ? new String(mBlock, mPosition, length, BitsoTickEncoder.ORDER_ID_CHARSET)
+                    : null;
+            mPosition += length;
+        }
+
+        tick.mHasPrice = (flags & BitsoTickEncoder.FLAG_NO_PRICE) == 0;
+        if (tick.mHasPrice) {
+            mLastPrice += readSignedVarint();
+            tick.mPriceTicks = mLastPrice;
+        } else {
+            tick.mPriceTicks = 0;
+        }
+        tick.mHasAmount = (flags & BitsoTickEncoder.FLAG_NO_AMOUNT) == 0;
+        tick.mAmountUnits = tick.mHasAmount ? readVarint() : 0;
+    }
+
+    private long readSignedVarint() {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readVarint() {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = mBlock[mPosition++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.bitso.journal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.bitso.BitsoOrder;
+import com.bitso.websockets.BitsoStreamDiffOrders;
+import com.bitso.websockets.BitsoStreamTrades;
+import com.bitso.websockets.BitsoStreamTrades.TradePayload;
+import com.bitso.websockets.BitsoWebSocketPublicOrder;
+
+/**
+ * Writes the trades and diff-orders of one book in a compact binary format read by
+ * {@link BitsoTickDecoder}.
+ *
+ * Ticks are grouped in blocks. Within a block, timestamps, trade ids, sequence numbers and prices
+ * are stored as zigzag varint deltas against the previous tick, with prices and amounts first
+ * converted to integers at a fixed scale. Values that don't fit the scale exactly are rejected
+ * rather than rounded, and missing prices or amounts are flagged and left out. Order ids are
+ * stored as length prefixed UTF-8. Every block starts from a zero state, so it can be decoded on
+ * its own, and a footer indexes the offset, first timestamp and first sequence of each block.
+ *
+ * <pre>
+ * header: "BTK1" | priceScale | amountScale | book (UTF)
+ * block:  tickCount (int) | payloadLength (int) | payload
+ * tick:   flags | dTimestamp | dTradeId or (dSequence, idLength, orderId) | [dPrice] | [amount]
+ * flags:  kind (bit 0) | sell (bit 1) | status (bits 2-3) | unknown side (bit 4)
+ *         | no price (bit 5) | no amount (bit 6)
+ * footer: (offset, firstTimestamp, firstSequence, tickCount) per block
+ *         | blockCount (int) | footerOffset (long)
+ * </pre>
+ */
+public class BitsoTickEncoder implements Closeable {
+    static final int MAGIC = 0x42544B31; // BTK1
+    static final int KIND_TRADE = 0;
+    static final int KIND_DIFF = 1;
+    static final int FLAG_SELL = 1 << 1;
+    static final int STATUS_SHIFT = 2;
+    static final int FLAG_NO_SIDE = 1 << 4;
+    static final int FLAG_NO_PRICE = 1 << 5;
+    static final int FLAG_NO_AMOUNT = 1 << 6;
+    static final Charset ORDER_ID_CHARSET = StandardCharsets.UTF_8;
+
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    private final DataOutputStream mOut;
+    private final String mBook;
+    private final int mPriceScale;
+    private final int mAmountScale;
+    private final int mBlockSize;
+    private final ByteArrayOutputStream mBlock;
+    private final List<long[]> mIndex;
+
+    private long mOffset;
+    private int mBlockTicks;
+    private long mBlockFirstTimestamp;
+    private long mBlockFirstSequence;
+    private long mLastTimestamp;
+    private long mLastTradeId;
+    private long mLastSequence;
+    private long mLastPrice;
+
+    public BitsoTickEncoder(File file, String book, int priceScale, int amountScale) throws IOException {
+        this(new FileOutputStream(file), book, priceScale, amountScale, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param out Where the encoded ticks are written. It is closed by {@link #close()}.
+     * @param book The book of the ticks.
+     * @param priceScale Decimal places kept for prices, e.g. 2 for btc_mxn.
+     * @param amountScale Decimal places kept for amounts, e.g. 8 for btc_mxn.
+     * @param blockSize Number of ticks per block.
+     */
+    public BitsoTickEncoder(OutputStream out, String book, int priceScale, int amountScale,
+            int blockSize) throws IOException {
+        mOut = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        mBook = book;
+        mPriceScale = priceScale;
+        mAmountScale = amountScale;
+        mBlockSize = blockSize;
+        mBlock = new ByteArrayOutputStream(blockSize * 16);
+        mIndex = new ArrayList<long[]>();
+
+        mOut.writeInt(MAGIC);
+        mOut.writeByte(priceScale);
+        mOut.writeByte(amountScale);
+        mOut.writeUTF(book);
+        mOffset = mOut.size();
+    }
+
+    /** Encodes every trade of a trades message.
+     * @param receivedAt Epoch milliseconds used for trades without their own timestamp.
+     */
+    public void encode(BitsoStreamTrades trades, long receivedAt) throws IOException {
+        for (TradePayload trade : trades.getPayload()) {
+            long timestamp = (trade.getTimestamp() > 0) ? trade.getTimestamp() : receivedAt;
+            encodeTrade(timestamp, trade.getTradeId(), trade.getMakerSide(), trade.getRate(),
+                    trade.getAmount());
+        }
+    }
+
+    /** Encodes every order change of a diff-orders message. */
+    public void encode(BitsoStreamDiffOrders diff) throws IOException {
+        encode(diff, System.currentTimeMillis());
+    }
+
+    /** Encodes every order change of a diff-orders message.
+     * @param receivedAt Epoch milliseconds used for changes without their own timestamp.
+     */
+    public void encode(BitsoStreamDiffOrders diff, long receivedAt) throws IOException {
+        for (BitsoWebSocketPublicOrder order : diff.getPayload()) {
+            long timestamp = (order.getOrderDate() != null) ? order.getOrderDate().getTime() : receivedAt;
+            encodeDiff(timestamp, diff.getSequenceNumber(), order.getOrderId(), order.getSide(),
+                    status(order), order.getRate(), order.getAmount());
+        }
+    }
+
+    /**
+     * @param makerSide The side of the maker, or null when it is not known.
+     * @param price The price, or null when it is not known. The same applies to the amount.
+     * @throws IllegalArgumentException If the price or amount have more decimals than the archive
+     *         scale or don't fit in a long at that scale. Nothing is written in that case.
+     */
+    public void encodeTrade(long timestamp, long tradeId, BitsoOrder.SIDE makerSide, BigDecimal price,
+            BigDecimal amount) throws IOException {
+        long priceUnits = toUnits(price, mPriceScale);
+        long amountUnits = toUnits(amount, mAmountScale);
+        startTick(timestamp, -1);
+        mBlock.write(KIND_TRADE | sideFlags(makerSide) | presenceFlags(price, amount));
+        writeTimestamp(timestamp);
+        writeSignedVarint(tradeId - mLastTradeId);
+        mLastTradeId = tradeId;
+        writePriceAndAmount(price, priceUnits, amount, amountUnits);
+        endTick();
+    }
+
+    /**
+     * @param side The side of the order, or null when it is not known.
+     * @param price The price, or null when it is not known. The same applies to the amount.
+     * @throws IllegalArgumentException If the price or amount have more decimals than the archive
+     *         scale or don't fit in a long at that scale. Nothing is written in that case.
+     */
+    public void encodeDiff(long timestamp, long sequence, String orderId, BitsoOrder.SIDE side,
+            BitsoTick.STATUS status, BigDecimal price, BigDecimal amount) throws IOException {
+        long priceUnits = toUnits(price, mPriceScale);
+        long amountUnits = toUnits(amount, mAmountScale);
+        byte[] id = (orderId != null) ? orderId.getBytes(ORDER_ID_CHARSET) : new byte[0];
+        startTick(timestamp, sequence);
+        mBlock.write(KIND_DIFF | sideFlags(side) | presenceFlags(price, amount)
+                | (status.ordinal() << STATUS_SHIFT));
+        writeTimestamp(timestamp);
+        writeSignedVarint(sequence - mLastSequence);
+        mLastSequence = sequence;
+        writeVarint(id.length);
+        mBlock.write(id, 0, id.length);
+        writePriceAndAmount(price, priceUnits, amount, amountUnits);
+        endTick();
+    }
+
+    public String getBook() {
+        return mBook;
+    }
+
+    /** Writes the pending block and the index, then closes the output. */
+    public void close() throws IOException {
+        flushBlock();
+        long footerOffset = mOffset;
+        for (long[] entry : mIndex) {
+            mOut.writeLong(entry[0]);
+            mOut.writeLong(entry[1]);
+            mOut.writeLong(entry[2]);
+            mOut.writeInt((int) entry[3]);
+        }
+        mOut.writeInt(mIndex.size());
+        mOut.writeLong(footerOffset);
+        mOut.close();
+    }
+
+    private void startTick(long timestamp, long sequence) {
+        if (mBlockTicks == 0) {
+            mBlockFirstTimestamp = timestamp;
+            mBlockFirstSequence = sequence;
+        } else if (mBlockFirstSequence < 0 && sequence >= 0) {
+            mBlockFirstSequence = sequence;
+        }
+    }
+
+    private void endTick() throws IOException {
+        mBlockTicks++;
+        if (mBlockTicks >= mBlockSize) {
+            flushBlock();
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (mBlockTicks == 0) {
+            return;
+        }
+        mIndex.add(new long[] { mOffset, mBlockFirstTimestamp, mBlockFirstSequence, mBlockTicks });
+        mOut.writeInt(mBlockTicks);
+        mOut.writeInt(mBlock.size());
+        mBlock.writeTo(mOut);
+        mOffset += 8 + mBlock.size();
+
+        mBlock.reset();
+        mBlockTicks = 0;
+        mLastTimestamp = 0;
+        mLastTradeId = 0;
+        mLastSequence = 0;
+        mLastPrice = 0;
+    }
+
+    private void writeTimestamp(long timestamp) {
+        writeSignedVarint(timestamp - mLastTimestamp);
+        mLastTimestamp = timestamp;
+    }
+
+    private void writePriceAndAmount(BigDecimal price, long priceUnits, BigDecimal amount,
+            long amountUnits) {
+        if (price != null) {
+            writeSignedVarint(priceUnits - mLastPrice);
+            mLastPrice = priceUnits;
+        }
+        if (amount != null) {
+            writeVarint(amountUnits);
+        }
+    }
+
+    private static int presenceFlags(BigDecimal price, BigDecimal amount) {
+        return ((price == null) ? FLAG_NO_PRICE : 0) | ((amount == null) ? FLAG_NO_AMOUNT : 0);
+    }
+
+    private static int sideFlags(BitsoOrder.SIDE side) {
+        if (side == null) {
+            return FLAG_NO_SIDE;
+        }
+        return (side == BitsoOrder.SIDE.SELL) ? FLAG_SELL : 0;
+    }
+
+    private void writeSignedVarint(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    private void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            mBlock.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        mBlock.write((int) value);
+    }
+
+    private static long toUnits(BigDecimal value, int scale) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return value.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(value + " can't be stored exactly with " + scale
+                    + " decimals", e);
+        }
+    }
+
+    static BitsoTick.STATUS status(BitsoWebSocketPublicOrder order) {
+        String status = order.getStatus();
+        if ("cancelled".equals(status)) {
+            return BitsoTick.STATUS.CANCELLED;
+        }
+        if ("completed".equals(status)) {
+            return BitsoTick.STATUS.COMPLETED;
+        }
+        return BitsoTick.STATUS.OPEN;
+    }
+}
@@ -0,0 +1,227 @@
+package com.bitso.ledger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Append-only local store for ledger entries.
+ *
+ * Every stream (the whole ledger, or a single operation type such as trades or fees) is kept in
+ * its own file with one raw JSON entry per line, oldest first, next to a small checkpoint file
+ * holding the id of the last entry stored. The checkpoint is replaced after each append, atomically
+ * where the file system supports it. If the process dies between both writes, the last complete
+ * line of the data file wins, and a partially written line is truncated on the next start.
+ */
+public class BitsoLedgerFileStore {
+    /** Name of the stream that holds the whole ledger. */
+    public static final String ALL = "all";
+
+    private static final String DATA_SUFFIX = ".jsonl";
+    private static final String MARKER_SUFFIX = ".marker";
+
+    private final File mDirectory;
+    private final ConcurrentHashMap<String, String> mMarkers;
+
+    public BitsoLedgerFileStore(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create ledger store directory " + directory);
+        }
+        mDirectory = directory;
+        mMarkers = new ConcurrentHashMap<String, String>();
+    }
+
+    /** The id of the last entry stored for a stream, or null if the stream is empty.
+     * @param stream The operation type, or null for the whole ledger.
+     */
+    public synchronized String getMarker(String stream) throws IOException {
+        String name = streamName(stream);
+        String marker = mMarkers.get(name);
+        if (marker == null) {
+            marker = recoverMarker(name);
+            if (marker != null) {
+                mMarkers.put(name, marker);
+            }
+        }
+        return marker;
+    }
+
+    /** Appends ledger entries, oldest first, and moves the stream checkpoint to the last of them.
+     * @param stream The operation type, or null for the whole ledger.
+     * @param entries The raw entries as returned by the ledger endpoint in ascending order.
+     */
+    public synchronized void append(String stream, JSONArray entries) throws IOException {
+        int totalElements = entries.length();
+        if (totalElements == 0) {
+            return;
+        }
+        String name = streamName(stream);
+        getMarker(stream);
+
+        StringBuilder sb = new StringBuilder();
+        String lastEntryId = null;
+        for (int i = 0; i < totalElements; i++) {
+            JSONObject entry = entries.getJSONObject(i);
+            sb.append(entry.toString()).append('\n');
+            lastEntryId = entry.optString("eid", lastEntryId);
+        }
+
+        FileOutputStream out = new FileOutputStream(dataFile(name), true);
+        try {
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            out.getChannel().force(false);
+        } finally {
+            out.close();
+        }
+
+        if (lastEntryId != null) {
+            writeMarker(name, lastEntryId);
+            mMarkers.put(name, lastEntryId);
+        }
+    }
+
+    /** Reads every stored entry of a stream, oldest first.
+     * @param stream The operation type, or null for the whole ledger.
+     * @param handler Receives each stored entry.
+     * @return The number of entries read.
+     */
+    public int read(String stream, EntryHandler handler) throws IOException {
+        File file = dataFile(streamName(stream));
+        if (!file.exists()) {
+            return 0;
+        }
+        int count = 0;
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0) {
+                    continue;
+                }
+                handler.onEntry(new JSONObject(line));
+                count++;
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    private String recoverMarker(String name) throws IOException {
+        String checkpoint = null;
+        File markerFile = markerFile(name);
+        if (markerFile.exists()) {
+            checkpoint = new String(Files.readAllBytes(markerFile.toPath()), StandardCharsets.UTF_8).trim();
+            if (checkpoint.length() == 0) {
+                checkpoint = null;
+            }
+        }
+
+        String lastStored = lastStoredEntryId(name);
+        if (lastStored != null && !lastStored.equals(checkpoint)) {
+            // The data file got ahead of the checkpoint
+            writeMarker(name, lastStored);
+            return lastStored;
+        }
+        return checkpoint;
+    }
+
+    // Returns the eid of the last complete line, truncating a trailing partial line
+    private String lastStoredEntryId(String name) throws IOException {
+        File file = dataFile(name);
+        if (!file.exists() || file.length() == 0) {
+            return null;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long end = raf.length();
+            if (readByte(raf, end - 1) != '\n') {
+                end = previousLineEnd(raf, end - 1);
+                raf.setLength(end);
+            }
+            while (end > 0) {
+                long start = previousLineEnd(raf, end - 1);
+                byte[] line = new byte[(int) (end - start)];
+                raf.seek(start);
+                raf.readFully(line);
+                String text = new String(line, StandardCharsets.UTF_8).trim();
+                if (text.length() > 0) {
+                    try {
+                        return new JSONObject(text).optString("eid", null);
+                    } catch (JSONException e) {
+                        raf.setLength(start);
+                    }
+                }
+                end = start;
+            }
+        } finally {
+            raf.close();
+        }
+        return null;
+    }
+
+    // Position right after the newline that precedes the given position, or zero
+    private long previousLineEnd(RandomAccessFile raf, long position) throws IOException {
+        long current = position - 1;
+        while (current >= 0) {
+            if (readByte(raf, current) == '\n') {
+                return current + 1;
+            }
+            current--;
+        }
+        return 0;
+    }
+
+    private int readByte(RandomAccessFile raf, long position) throws IOException {
+        raf.seek(position);
+        return raf.read();
+    }
+
+    private void writeMarker(String name, String marker) throws IOException {
+        File temporary = new File(mDirectory, name + MARKER_SUFFIX + ".tmp");
+        Files.write(temporary.toPath(), marker.getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(temporary.toPath(), markerFile(name).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // A torn checkpoint is recovered from the data file on the next start
+            Files.move(temporary.toPath(), markerFile(name).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private File dataFile(String name) {
+        return new File(mDirectory, name + DATA_SUFFIX);
+    }
+
+    private File markerFile(String name) {
+        return new File(mDirectory, name + MARKER_SUFFIX);
+    }
+
+    private static String streamName(String stream) {
+        return (stream == null || stream.length() == 0) ? ALL : stream;
+    }
+
+    /** Receives the entries read from the store. */
+    public interface EntryHandler {
+        void onEntry(JSONObject entry);
+    }
+}
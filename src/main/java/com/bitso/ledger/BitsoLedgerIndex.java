@@ -0,0 +1,486 @@
+package com.bitso.ledger;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+import com.bitso.BitsoOperation;
+import com.bitso.BitsoOperation.BalanceUpdate;
+
+/**
+ * In-memory ledger history optimized for accounting queries.
+ *
+ * Entries are kept in time order in parallel arrays, one per attribute, and every balance update
+ * is flattened into its own set of columns. Secondary indexes map each operation type to the
+ * offsets of its entries, and each currency, alone and paired with an operation type, to the
+ * offsets of its balance updates along with running totals. Time range scans are binary searches
+ * over these offsets and sums are the difference of two running totals, so no query walks the
+ * full history. Each batch is sorted by time before it is added, so ledger pages, which list the
+ * newest entries first, don't force the indexes to be rebuilt.
+ *
+ * Populate it with {@link #addAll(BitsoOperation[])} from {@code getLedger} pages, or with
+ * {@link #load(BitsoLedgerFileStore, String)} from a synchronized local store. Instances are not
+ * thread safe.
+ */
+public class BitsoLedgerIndex {
+    private static final int INITIAL_CAPACITY = 256;
+
+    // Entry columns, sorted by time once mSorted is true
+    private long[] mTimes;
+    private int[] mOperationCodes;
+    private BitsoOperation[] mOperations;
+    private int mSize;
+
+    // Balance update columns
+    private int[] mUpdateEntries;
+    private int[] mUpdateCurrencies;
+    private BigDecimal[] mUpdateAmounts;
+    private int mUpdateSize;
+
+    private final Dictionary mOperationNames;
+    private final Dictionary mCurrencyNames;
+    private final HashMap<String, Integer> mEntryIds;
+
+    // Secondary indexes, rebuilt lazily when entries arrive out of order
+    private final List<IntList> mEntriesByOperation;
+    private final List<IntList> mUpdatesByCurrency;
+    private final List<List<BigDecimal>> mRunningTotals;
+    // Keyed by currency and operation codes, see key()
+    private final HashMap<Long, IntList> mUpdatesByCurrencyOperation;
+    private final HashMap<Long, List<BigDecimal>> mOperationRunningTotals;
+    private boolean mSorted;
+
+    public BitsoLedgerIndex() {
+        mTimes = new long[INITIAL_CAPACITY];
+        mOperationCodes = new int[INITIAL_CAPACITY];
+        mOperations = new BitsoOperation[INITIAL_CAPACITY];
+        mUpdateEntries = new int[INITIAL_CAPACITY];
+        mUpdateCurrencies = new int[INITIAL_CAPACITY];
+        mUpdateAmounts = new BigDecimal[INITIAL_CAPACITY];
+        mOperationNames = new Dictionary();
+        mCurrencyNames = new Dictionary();
+        mEntryIds = new HashMap<String, Integer>();
+        mEntriesByOperation = new ArrayList<IntList>();
+        mUpdatesByCurrency = new ArrayList<IntList>();
+        mRunningTotals = new ArrayList<List<BigDecimal>>();
+        mUpdatesByCurrencyOperation = new HashMap<Long, IntList>();
+        mOperationRunningTotals = new HashMap<Long, List<BigDecimal>>();
+        mSorted = true;
+    }
+
+    /** Adds ledger entries in any order. Entries already indexed are ignored.
+     * @return The number of entries added.
+     */
+    public int addAll(BitsoOperation[] operations) {
+        BitsoOperation[] byTime = operations.clone();
+        // Stable, so entries of the same second keep their relative order
+        Arrays.sort(byTime, new Comparator<BitsoOperation>() {
+            public int compare(BitsoOperation a, BitsoOperation b) {
+                return Long.compare(timeOf(a), timeOf(b));
+            }
+        });
+        int added = 0;
+        for (BitsoOperation operation : byTime) {
+            if (add(operation)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /** Adds a single ledger entry, unless an entry with the same id is already indexed.
+     * @return Whether the entry was added.
+     */
+    public boolean add(BitsoOperation operation) {
+        String entryId = operation.getEntryId();
+        if (entryId != null && mEntryIds.containsKey(entryId)) {
+            return false;
+        }
+        long time = timeOf(operation);
+
+        ensureEntryCapacity(mSize + 1);
+        int entry = mSize++;
+        if (mSorted && entry > 0 && time < mTimes[entry - 1]) {
+            mSorted = false;
+        }
+        mTimes[entry] = time;
+        mOperationCodes[entry] = mOperationNames.code(operation.getOperationDescription());
+        mOperations[entry] = operation;
+        if (entryId != null) {
+            mEntryIds.put(entryId, entry);
+        }
+
+        int firstUpdate = mUpdateSize;
+        BalanceUpdate[] updates = operation.getAfterOperationBalances();
+        if (updates != null) {
+            for (BalanceUpdate update : updates) {
+                if (update.getCurrency() == null || update.getAmount() == null) {
+                    continue;
+                }
+                ensureUpdateCapacity(mUpdateSize + 1);
+                mUpdateEntries[mUpdateSize] = entry;
+                mUpdateCurrencies[mUpdateSize] = mCurrencyNames.code(update.getCurrency());
+                mUpdateAmounts[mUpdateSize] = update.getAmount();
+                mUpdateSize++;
+            }
+        }
+
+        // Out of order entries are indexed on the next query, after sorting
+        if (mSorted) {
+            indexEntry(entry);
+            for (int update = firstUpdate; update < mUpdateSize; update++) {
+                indexUpdate(update);
+            }
+        }
+        return true;
+    }
+
+    /** Adds every entry of a stream kept in a local file store.
+     * @param stream The operation type, or null for the whole ledger.
+     * @return The number of entries added.
+     */
+    public int load(BitsoLedgerFileStore store, String stream) throws IOException {
+        final int[] added = new int[1];
+        store.read(stream, new BitsoLedgerFileStore.EntryHandler() {
+            public void onEntry(JSONObject entry) {
+                if (add(new BitsoOperation(entry))) {
+                    added[0]++;
+                }
+            }
+        });
+        return added[0];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public BitsoOperation getEntry(String entryId) {
+        Integer entry = mEntryIds.get(entryId);
+        return (entry != null) ? mOperations[entry] : null;
+    }
+
+    /** Returns the entries created in [from, to), oldest first.
+     * @param operation The operation type to match, e.g. trade or fee, or null for any type.
+     * @param from Inclusive lower bound, in epoch milliseconds.
+     * @param to Exclusive upper bound, in epoch milliseconds.
+     */
+    public List<BitsoOperation> getEntries(String operation, long from, long to) {
+        ensureSorted();
+        List<BitsoOperation> result = new ArrayList<BitsoOperation>();
+        if (operation == null) {
+            int end = lowerBound(to);
+            for (int entry = lowerBound(from); entry < end; entry++) {
+                result.add(mOperations[entry]);
+            }
+            return result;
+        }
+
+        IntList entries = entriesOf(operation);
+        if (entries == null) {
+            return result;
+        }
+        int end = lowerBound(entries, to, false);
+        for (int i = lowerBound(entries, from, false); i < end; i++) {
+            result.add(mOperations[entries.get(i)]);
+        }
+        return result;
+    }
+
+    /** Counts the entries of an operation type created in [from, to). */
+    public int count(String operation, long from, long to) {
+        ensureSorted();
+        if (operation == null) {
+            return lowerBound(to) - lowerBound(from);
+        }
+        IntList entries = entriesOf(operation);
+        if (entries == null) {
+            return 0;
+        }
+        return lowerBound(entries, to, false) - lowerBound(entries, from, false);
+    }
+
+    /** Net change of a currency balance in [from, to), across every operation type. */
+    public BigDecimal sum(String currency, long from, long to) {
+        ensureSorted();
+        int code = mCurrencyNames.find(currency);
+        if (code < 0) {
+            return BigDecimal.ZERO;
+        }
+        return sum(mUpdatesByCurrency.get(code), mRunningTotals.get(code), from, to);
+    }
+
+    /** Net change of a currency balance caused by one operation type in [from, to). */
+    public BigDecimal sum(String currency, String operation, long from, long to) {
+        if (operation == null) {
+            return sum(currency, from, to);
+        }
+        ensureSorted();
+        int currencyCode = mCurrencyNames.find(currency);
+        int operationCode = mOperationNames.find(operation);
+        if (currencyCode < 0 || operationCode < 0) {
+            return BigDecimal.ZERO;
+        }
+        long key = key(currencyCode, operationCode);
+        IntList updates = mUpdatesByCurrencyOperation.get(key);
+        if (updates == null) {
+            return BigDecimal.ZERO;
+        }
+        return sum(updates, mOperationRunningTotals.get(key), from, to);
+    }
+
+    // totals.get(i) is the sum of the first i updates
+    private BigDecimal sum(IntList updates, List<BigDecimal> totals, long from, long to) {
+        int start = lowerBound(updates, from, true);
+        int end = lowerBound(updates, to, true);
+        return totals.get(end).subtract(totals.get(start));
+    }
+
+    // Whether the indexes are current, false until the next query after an out of order entry
+    boolean isSorted() {
+        return mSorted;
+    }
+
+    /** Every currency with at least one balance update. */
+    public List<String> getCurrencies() {
+        return mCurrencyNames.names();
+    }
+
+    /** Every operation type with at least one entry. */
+    public List<String> getOperations() {
+        return mOperationNames.names();
+    }
+
+    private IntList entriesOf(String operation) {
+        int code = mOperationNames.find(operation);
+        return (code < 0) ? null : mEntriesByOperation.get(code);
+    }
+
+    private void indexEntry(int entry) {
+        indexOf(mEntriesByOperation, mOperationCodes[entry]).add(entry);
+    }
+
+    private void indexUpdate(int update) {
+        int currency = mUpdateCurrencies[update];
+        BigDecimal amount = mUpdateAmounts[update];
+        indexOf(mUpdatesByCurrency, currency).add(update);
+        while (mRunningTotals.size() <= currency) {
+            mRunningTotals.add(newRunningTotals());
+        }
+        addToRunningTotals(mRunningTotals.get(currency), amount);
+
+        long key = key(currency, mOperationCodes[mUpdateEntries[update]]);
+        IntList updates = mUpdatesByCurrencyOperation.get(key);
+        if (updates == null) {
+            updates = new IntList();
+            mUpdatesByCurrencyOperation.put(key, updates);
+            mOperationRunningTotals.put(key, newRunningTotals());
+        }
+        updates.add(update);
+        addToRunningTotals(mOperationRunningTotals.get(key), amount);
+    }
+
+    private static List<BigDecimal> newRunningTotals() {
+        List<BigDecimal> totals = new ArrayList<BigDecimal>();
+        totals.add(BigDecimal.ZERO);
+        return totals;
+    }
+
+    private static void addToRunningTotals(List<BigDecimal> totals, BigDecimal amount) {
+        totals.add(totals.get(totals.size() - 1).add(amount));
+    }
+
+    private static long key(int currency, int operation) {
+        return ((long) currency << 32) | (operation & 0xFFFFFFFFL);
+    }
+
+    private static long timeOf(BitsoOperation operation) {
+        return (operation.getOperationDate() != null) ? operation.getOperationDate().getTime() : 0;
+    }
+
+    private static IntList indexOf(List<IntList> index, int code) {
+        while (index.size() <= code) {
+            index.add(new IntList());
+        }
+        return index.get(code);
+    }
+
+    private void ensureSorted() {
+        if (!mSorted) {
+            sort();
+        }
+    }
+
+    // Reorders every column by time and rebuilds the secondary indexes
+    private void sort() {
+        Integer[] order = new Integer[mSize];
+        for (int i = 0; i < mSize; i++) {
+            order[i] = i;
+        }
+        final long[] times = mTimes;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                int byTime = Long.compare(times[a], times[b]);
+                return (byTime != 0) ? byTime : Integer.compare(a, b);
+            }
+        });
+
+        int[] newPosition = new int[mSize];
+        long[] sortedTimes = new long[mTimes.length];
+        int[] sortedCodes = new int[mOperationCodes.length];
+        BitsoOperation[] sortedOperations = new BitsoOperation[mOperations.length];
+        for (int i = 0; i < mSize; i++) {
+            int old = order[i];
+            newPosition[old] = i;
+            sortedTimes[i] = mTimes[old];
+            sortedCodes[i] = mOperationCodes[old];
+            sortedOperations[i] = mOperations[old];
+        }
+        mTimes = sortedTimes;
+        mOperationCodes = sortedCodes;
+        mOperations = sortedOperations;
+        for (Map.Entry<String, Integer> entry : mEntryIds.entrySet()) {
+            entry.setValue(newPosition[entry.getValue()]);
+        }
+
+        // Updates of an entry stay together, in entry order
+        Integer[] updateOrder = new Integer[mUpdateSize];
+        for (int i = 0; i < mUpdateSize; i++) {
+            updateOrder[i] = i;
+            mUpdateEntries[i] = newPosition[mUpdateEntries[i]];
+        }
+        final int[] updateEntries = mUpdateEntries;
+        Arrays.sort(updateOrder, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                int byEntry = Integer.compare(updateEntries[a], updateEntries[b]);
+                return (byEntry != 0) ? byEntry : Integer.compare(a, b);
+            }
+        });
+        int[] sortedEntries = new int[mUpdateEntries.length];
+        int[] sortedCurrencies = new int[mUpdateCurrencies.length];
+        BigDecimal[] sortedAmounts = new BigDecimal[mUpdateAmounts.length];
+        for (int i = 0; i < mUpdateSize; i++) {
+            int old = updateOrder[i];
+            sortedEntries[i] = mUpdateEntries[old];
+            sortedCurrencies[i] = mUpdateCurrencies[old];
+            sortedAmounts[i] = mUpdateAmounts[old];
+        }
+        mUpdateEntries = sortedEntries;
+        mUpdateCurrencies = sortedCurrencies;
+        mUpdateAmounts = sortedAmounts;
+
+        mEntriesByOperation.clear();
+        mUpdatesByCurrency.clear();
+        mRunningTotals.clear();
+        mUpdatesByCurrencyOperation.clear();
+        mOperationRunningTotals.clear();
+        for (int entry = 0; entry < mSize; entry++) {
+            indexEntry(entry);
+        }
+        for (int update = 0; update < mUpdateSize; update++) {
+            indexUpdate(update);
+        }
+        mSorted = true;
+    }
+
+    // First entry created at or after the given time
+    private int lowerBound(long time) {
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mTimes[middle] < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // First position of an index list whose entry was created at or after the given time
+    private int lowerBound(IntList offsets, long time, boolean updates) {
+        int low = 0;
+        int high = offsets.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int entry = updates ? mUpdateEntries[offsets.get(middle)] : offsets.get(middle);
+            if (mTimes[entry] < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void ensureEntryCapacity(int capacity) {
+        if (capacity > mTimes.length) {
+            int newCapacity = Math.max(capacity, mTimes.length * 2);
+            mTimes = Arrays.copyOf(mTimes, newCapacity);
+            mOperationCodes = Arrays.copyOf(mOperationCodes, newCapacity);
+            mOperations = Arrays.copyOf(mOperations, newCapacity);
+        }
+    }
+
+    private void ensureUpdateCapacity(int capacity) {
+        if (capacity > mUpdateEntries.length) {
+            int newCapacity = Math.max(capacity, mUpdateEntries.length * 2);
+            mUpdateEntries = Arrays.copyOf(mUpdateEntries, newCapacity);
+            mUpdateCurrencies = Arrays.copyOf(mUpdateCurrencies, newCapacity);
+            mUpdateAmounts = Arrays.copyOf(mUpdateAmounts, newCapacity);
+        }
+    }
+
+    private static class IntList {
+        private int[] mValues = new int[16];
+        private int mSize;
+
+        void add(int value) {
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+        }
+
+        int get(int i) {
+            return mValues[i];
+        }
+
+        int size() {
+            return mSize;
+        }
+    }
+
+    // Maps repeated strings such as currencies and operation types to small integer codes
+    private static class Dictionary {
+        private final HashMap<String, Integer> mCodes = new HashMap<String, Integer>();
+        private final List<String> mNames = new ArrayList<String>();
+
+        int code(String name) {
+            Integer code = mCodes.get(name);
+            if (code == null) {
+                code = mNames.size();
+                mCodes.put(name, code);
+                mNames.add(name);
+            }
+            return code;
+        }
+
+        int find(String name) {
+            Integer code = mCodes.get(name);
+            return (code != null) ? code : -1;
+        }
+
+        List<String> names() {
+            return new ArrayList<String>(mNames);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.bitso.ledger;
+
+import java.io.IOException;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.bitso.Bitso;
+import com.bitso.exceptions.BitsoAPIException;
+import com.bitso.exceptions.BitsoPayloadException;
+import com.bitso.exceptions.BitsoServerException;
+
+/**
+ * Keeps a {@link BitsoLedgerFileStore} up to date with the account ledger.
+ *
+ * Each sync resumes from the marker persisted by the store, so a restart only downloads the
+ * entries added while the process was down instead of the full history.
+ *
+ * {@link #syncAll()} downloads the whole ledger once and files each entry into the stream of its
+ * operation type as well, so streams kept by it should not also be synchronized on their own.
+ */
+public class BitsoLedgerSync {
+    /** The operation types that can be synchronized on their own. */
+    public static final String[] OPERATIONS = { "trades", "fees", "fundings", "withdrawals" };
+    // The operation field of the entries of each stream in OPERATIONS
+    private static final String[] ENTRY_OPERATIONS = { "trade", "fee", "funding", "withdrawal" };
+
+    private static final int PAGE_SIZE = 100;
+
+    private final Bitso mBitso;
+    private final BitsoLedgerFileStore mStore;
+
+    public BitsoLedgerSync(Bitso bitso, BitsoLedgerFileStore store) {
+        mBitso = bitso;
+        mStore = store;
+    }
+
+    /** Downloads and stores the ledger entries newer than the stored marker.
+     * @param operation The operation type to synchronize, or null for the whole ledger.
+     * @return The number of entries stored.
+     */
+    public int sync(String operation)
+            throws IOException, BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        return sync(operation, false);
+    }
+
+    /** Synchronizes the whole ledger, and every operation type in {@link #OPERATIONS} from it.
+     * @return The number of ledger entries downloaded.
+     */
+    public int syncAll() throws IOException, BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        return sync(null, true);
+    }
+
+    private int sync(String operation, boolean fileByOperation)
+            throws IOException, BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        String limit = "limit=" + PAGE_SIZE;
+        int stored = 0;
+        while (true) {
+            String marker = mStore.getMarker(operation);
+            JSONArray page = (marker == null)
+                    ? mBitso.getLedgerPayload(operation, "sort=asc", limit)
+                    : mBitso.getLedgerPayload(operation, "marker=" + marker, "sort=asc", limit);
+            mStore.append(operation, page);
+            if (fileByOperation) {
+                for (int i = 0; i < OPERATIONS.length; i++) {
+                    mStore.append(OPERATIONS[i], filter(page, ENTRY_OPERATIONS[i]));
+                }
+            }
+            stored += page.length();
+            if (page.length() < PAGE_SIZE) {
+                return stored;
+            }
+        }
+    }
+
+    public BitsoLedgerFileStore getStore() {
+        return mStore;
+    }
+
+    private static JSONArray filter(JSONArray page, String operation) {
+        JSONArray entries = new JSONArray();
+        for (int i = 0; i < page.length(); i++) {
+            JSONObject entry = page.getJSONObject(i);
+            if (operation.equals(entry.optString("operation"))) {
+                entries.put(entry);
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,99 @@
+package com.bitso.marketdata;
+
+/**
+ * An OHLCV bar of one book over a fixed interval, as produced by a
+ * {@link BitsoCandleAggregator}.
+ */
+public class BitsoCandle {
+    private final String mBook;
+    private final long mInterval;
+    private final long mOpenTime;
+    private final double mOpen;
+    private final double mHigh;
+    private final double mLow;
+    private final double mClose;
+    private final double mVolume;
+    private final double mValue;
+    private final int mTradeCount;
+    private final boolean mClosed;
+
+    BitsoCandle(String book, long interval, long openTime, double open, double high, double low,
+            double close, double volume, double value, int tradeCount, boolean closed) {
+        mBook = book;
+        mInterval = interval;
+        mOpenTime = openTime;
+        mOpen = open;
+        mHigh = high;
+        mLow = low;
+        mClose = close;
+        mVolume = volume;
+        mValue = value;
+        mTradeCount = tradeCount;
+        mClosed = closed;
+    }
+
+    public String getBook() {
+        return mBook;
+    }
+
+    /** Length of the bar in milliseconds. */
+    public long getInterval() {
+        return mInterval;
+    }
+
+    /** Start of the bar in epoch milliseconds. */
+    public long getOpenTime() {
+        return mOpenTime;
+    }
+
+    /** End of the bar in epoch milliseconds, exclusive. */
+    public long getCloseTime() {
+        return mOpenTime + mInterval;
+    }
+
+    public double getOpen() {
+        return mOpen;
+    }
+
+    public double getHigh() {
+        return mHigh;
+    }
+
+    public double getLow() {
+        return mLow;
+    }
+
+    public double getClose() {
+        return mClose;
+    }
+
+    /** Traded amount in the major currency. */
+    public double getVolume() {
+        return mVolume;
+    }
+
+    /** Traded value in the minor currency. */
+    public double getValue() {
+        return mValue;
+    }
+
+    /** Volume weighted average price of the bar. */
+    public double getVwap() {
+        return (mVolume > 0) ? mValue / mVolume : mClose;
+    }
+
+    public int getTradeCount() {
+        return mTradeCount;
+    }
+
+    /** False while the bar is still accumulating trades. */
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    @Override
+    public String toString() {
+        return mBook + " " + mOpenTime + "/" + mInterval + " O:" + mOpen + " H:" + mHigh + " L:" + mLow
+                + " C:" + mClose + " V:" + mVolume + " N:" + mTradeCount;
+    }
+}
@@ -0,0 +1,191 @@
+package com.bitso.marketdata;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.bitso.websockets.BitsoStreamAdapter;
+import com.bitso.websockets.BitsoStreamTrades;
+import com.bitso.websockets.BitsoStreamTrades.TradePayload;
+
+/**
+ * Builds OHLCV bars for every book of a trades stream, for several intervals at once.
+ *
+ * Each book and interval keeps a single mutable bar of primitive fields that is updated in
+ * constant time per trade. When a trade falls past the end of a bar, the bar is handed to the
+ * {@link Listener} as a {@link BitsoCandle} and a new one starts. Intervals without trades
+ * produce no bar. Since a bar otherwise only closes on the next trade, {@link #flush(long)} can be
+ * called from a timer to close bars of quiet books.
+ *
+ * <pre>
+ * BitsoCandleAggregator candles = new BitsoCandleAggregator(listener,
+ *         BitsoCandleAggregator.ONE_MINUTE, BitsoCandleAggregator.ONE_HOUR);
+ * dispatcher.addListener(candles);
+ * </pre>
+ */
+public class BitsoCandleAggregator extends BitsoStreamAdapter {
+    public static final long ONE_SECOND = 1000L;
+    public static final long ONE_MINUTE = 60 * ONE_SECOND;
+    public static final long FIVE_MINUTES = 5 * ONE_MINUTE;
+    public static final long ONE_HOUR = 60 * ONE_MINUTE;
+
+    /** Receives every bar as it closes. */
+    public interface Listener {
+        void onCandle(BitsoCandle candle);
+    }
+
+    private final Listener mListener;
+    private final long[] mIntervals;
+    private final ConcurrentHashMap<String, Bar[]> mBars;
+
+    /**
+     * @param listener Receives closed bars, on the thread that feeds the trades.
+     * @param intervals Bar lengths in milliseconds.
+     */
+    public BitsoCandleAggregator(Listener listener, long... intervals) {
+        if (intervals.length == 0) {
+            throw new IllegalArgumentException("At least one interval is required");
+        }
+        for (long interval : intervals) {
+            if (interval <= 0) {
+                throw new IllegalArgumentException("Invalid interval: " + interval);
+            }
+        }
+        mListener = listener;
+        mIntervals = intervals.clone();
+        mBars = new ConcurrentHashMap<String, Bar[]>();
+    }
+
+    @Override
+    public void onTrades(BitsoStreamTrades trades) {
+        String book = trades.getBitsoBook();
+        long now = System.currentTimeMillis();
+        for (TradePayload trade : trades.getPayload()) {
+            long timestamp = (trade.getTimestamp() > 0) ? trade.getTimestamp() : now;
+            onTrade(book, timestamp, trade.getRate().doubleValue(), trade.getAmount().doubleValue());
+        }
+    }
+
+    /** Adds one trade to the bars of its book.
+     * @param timestamp Execution time in epoch milliseconds. Trades older than the open bar are
+     * added to it.
+     */
+    public void onTrade(String book, long timestamp, double price, double amount) {
+        Bar[] bars = getBars(book);
+        for (Bar bar : bars) {
+            BitsoCandle closed = bar.add(timestamp, price, amount);
+            if (closed != null && mListener != null) {
+                mListener.onCandle(closed);
+            }
+        }
+    }
+
+    /** Closes every bar that ended at or before the given time.
+     * @param now Epoch milliseconds.
+     */
+    public void flush(long now) {
+        for (Bar[] bars : mBars.values()) {
+            for (Bar bar : bars) {
+                BitsoCandle closed = bar.closeBefore(now);
+                if (closed != null && mListener != null) {
+                    mListener.onCandle(closed);
+                }
+            }
+        }
+    }
+
+    /** The bar being built for a book and interval.
+     * @return null if the book has no trades in the current bar or the interval isn't tracked.
+     */
+    public BitsoCandle getPartial(String book, long interval) {
+        Bar[] bars = mBars.get(book);
+        if (bars == null) {
+            return null;
+        }
+        for (Bar bar : bars) {
+            if (bar.mInterval == interval) {
+                return bar.snapshot();
+            }
+        }
+        return null;
+    }
+
+    public long[] getIntervals() {
+        return mIntervals.clone();
+    }
+
+    private Bar[] getBars(String book) {
+        Bar[] bars = mBars.get(book);
+        if (bars == null) {
+            bars = new Bar[mIntervals.length];
+            for (int i = 0; i < mIntervals.length; i++) {
+                bars[i] = new Bar(book, mIntervals[i]);
+            }
+            Bar[] existing = mBars.putIfAbsent(book, bars);
+            if (existing != null) {
+                bars = existing;
+            }
+        }
+        return bars;
+    }
+
+    private static class Bar {
+        private final String mBook;
+        private final long mInterval;
+        private long mOpenTime;
+        private double mOpen;
+        private double mHigh;
+        private double mLow;
+        private double mClose;
+        private double mVolume;
+        private double mValue;
+        private int mTradeCount;
+
+        Bar(String book, long interval) {
+            mBook = book;
+            mInterval = interval;
+        }
+
+        /** @return The previous bar if this trade closed it. */
+        synchronized BitsoCandle add(long timestamp, double price, double amount) {
+            BitsoCandle closed = null;
+            if (mTradeCount > 0 && timestamp >= mOpenTime + mInterval) {
+                closed = toCandle(true);
+                mTradeCount = 0;
+            }
+            if (mTradeCount == 0) {
+                mOpenTime = timestamp - Math.floorMod(timestamp, mInterval);
+                mOpen = price;
+                mHigh = price;
+                mLow = price;
+                mVolume = 0;
+                mValue = 0;
+            } else if (price > mHigh) {
+                mHigh = price;
+            } else if (price < mLow) {
+                mLow = price;
+            }
+            mClose = price;
+            mVolume += amount;
+            mValue += price * amount;
+            mTradeCount++;
+            return closed;
+        }
+
+        synchronized BitsoCandle closeBefore(long now) {
+            if (mTradeCount == 0 || now < mOpenTime + mInterval) {
+                return null;
+            }
+            BitsoCandle closed = toCandle(true);
+            mTradeCount = 0;
+            return closed;
+        }
+
+        synchronized BitsoCandle snapshot() {
+            return (mTradeCount > 0) ? toCandle(false) : null;
+        }
+
+        private BitsoCandle toCandle(boolean closed) {
+            return new BitsoCandle(mBook, mInterval, mOpenTime, mOpen, mHigh, mLow, mClose, mVolume, mValue,
+                    mTradeCount, closed);
+        }
+    }
+}
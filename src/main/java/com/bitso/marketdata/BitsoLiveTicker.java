@@ -0,0 +1,332 @@
+package com.bitso.marketdata;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.bitso.Bitso;
+import com.bitso.BitsoTicker;
+import com.bitso.exceptions.BitsoAPIException;
+import com.bitso.exceptions.BitsoPayloadException;
+import com.bitso.exceptions.BitsoServerException;
+import com.bitso.websockets.BitsoStreamAdapter;
+import com.bitso.websockets.BitsoStreamOrders;
+import com.bitso.websockets.BitsoStreamTrades;
+import com.bitso.websockets.BitsoStreamTrades.TradePayload;
+import com.bitso.websockets.BitsoWebSocketPublicOrder;
+
+/**
+ * A ticker for every book kept current from the trades and orders channels, replacing
+ * {@link Bitso#getTicker()} polling.
+ *
+ * The last price comes from trades, and bid and ask from the top of the orders channel. The 24
+ * hour high, low, volume and vwap are seeded from {@link Bitso#getTicker()} and then extended with
+ * every streamed trade; trades older than 24 hours are not removed until the next
+ * {@link #reseed()}. A reseed runs in the background every time the websocket connects, so
+ * nothing missed while disconnected stays stale, and on a fixed interval, so the 24 hour figures
+ * never cover much more than a day. A reseed keeps the last price, bid and ask streamed after its
+ * request went out, since those are newer than the snapshot it returns, and adds the trades
+ * streamed since then to the snapshot's figures. Trades the server already counted in the snapshot
+ * during the request's round trip are then counted twice, so the 24 hour volume and vwap are
+ * approximate to that extent.
+ *
+ * Every change publishes a new immutable quote, so {@link #getTicker(String)} never locks.
+ */
+public class BitsoLiveTicker extends BitsoStreamAdapter {
+    public static final long DEFAULT_RESEED_INTERVAL = 10 * BitsoRollingStats.ONE_MINUTE;
+    // How long streamed trades are kept to be added to a reseed, longer than any request takes
+    private static final long RECENT_TRADES = BitsoRollingStats.ONE_MINUTE;
+
+    private final Bitso mBitso;
+    private final ConcurrentHashMap<String, Book> mBooks;
+    private final ScheduledExecutorService mReseedExecutor;
+    private final Runnable mReseedTask;
+    private final AtomicLong mReseedFailures;
+    private volatile Exception mLastReseedFailure;
+
+    /**
+     * @param bitso Used to reseed on connect and every {@link #DEFAULT_RESEED_INTERVAL}, null to rely
+     *        on the streams only.
+     */
+    public BitsoLiveTicker(Bitso bitso) {
+        this(bitso, DEFAULT_RESEED_INTERVAL);
+    }
+
+    /**
+     * @param bitso Used to reseed on connect and on every interval, null to rely on the streams only.
+     * @param reseedInterval Milliseconds between reseeds, zero or less to reseed only on connect.
+     */
+    public BitsoLiveTicker(Bitso bitso, long reseedInterval) {
+        mBitso = bitso;
+        mBooks = new ConcurrentHashMap<String, Book>();
+        mReseedFailures = new AtomicLong();
+        mReseedExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "bitso-ticker-reseed");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mReseedTask = new Runnable() {
+            public void run() {
+                try {
+                    reseed();
+                } catch (BitsoAPIException | BitsoPayloadException | BitsoServerException e) {
+                    // The next connect or interval retries
+                    mLastReseedFailure = e;
+                    mReseedFailures.incrementAndGet();
+                }
+            }
+        };
+        if (bitso != null && reseedInterval > 0) {
+            mReseedExecutor.scheduleAtFixedRate(mReseedTask, reseedInterval, reseedInterval,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void onConnectionChanged(boolean connected) {
+        if (connected && mBitso != null) {
+            // Don't block the websocket thread on a REST request
+            mReseedExecutor.execute(mReseedTask);
+        }
+    }
+
+    @Override
+    public void onTrades(BitsoStreamTrades trades) {
+        Book book = getBook(trades.getBitsoBook());
+        for (TradePayload trade : trades.getPayload()) {
+            book.trade(trade.getRate(), trade.getAmount());
+        }
+    }
+
+    @Override
+    public void onOrders(BitsoStreamOrders orders) {
+        BigDecimal bid = best(orders.getmBids(), true);
+        BigDecimal ask = best(orders.getmAsks(), false);
+        getBook(orders.getBitsoBook()).quote(bid, ask);
+    }
+
+    /** Replaces every ticker with the one returned by {@link Bitso#getTicker()}, keeping the last
+     * price, bid and ask streamed after the request was sent.
+     */
+    public void reseed() throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        long requestedAt = System.currentTimeMillis();
+        for (BitsoTicker ticker : mBitso.getTicker()) {
+            getBook(ticker.getBook()).seed(ticker, requestedAt);
+        }
+    }
+
+    /**
+     * The current ticker of a book.
+     * @return A copy the caller owns, or null if nothing has been seen for the book.
+     */
+    public BitsoTicker getTicker(String book) {
+        Book state = mBooks.get(book);
+        if (state == null) {
+            return null;
+        }
+        Quote quote = state.mQuote;
+        BitsoTicker ticker = new BitsoTicker();
+        ticker.setBook(book);
+        ticker.setLast(quote.mLast);
+        ticker.setHigh(quote.mHigh);
+        ticker.setLow(quote.mLow);
+        ticker.setVwap(quote.mVwap);
+        ticker.setVolume(quote.mVolume);
+        ticker.setBid(quote.mBid);
+        ticker.setAsk(quote.mAsk);
+        ticker.setCreatedAt(new Date(quote.mUpdatedAt));
+        return ticker;
+    }
+
+    public BigDecimal getLast(String book) {
+        Book state = mBooks.get(book);
+        return (state != null) ? state.mQuote.mLast : null;
+    }
+
+    public BigDecimal getBid(String book) {
+        Book state = mBooks.get(book);
+        return (state != null) ? state.mQuote.mBid : null;
+    }
+
+    public BigDecimal getAsk(String book) {
+        Book state = mBooks.get(book);
+        return (state != null) ? state.mQuote.mAsk : null;
+    }
+
+    public Set<String> getBooks() {
+        return mBooks.keySet();
+    }
+
+    /** Number of background reseeds that failed. */
+    public long getReseedFailures() {
+        return mReseedFailures.get();
+    }
+
+    /** Why the latest failed background reseed failed, null if none did. */
+    public Exception getLastReseedFailure() {
+        return mLastReseedFailure;
+    }
+
+    /** Stops the background and scheduled reseeds. */
+    public void close() {
+        mReseedExecutor.shutdownNow();
+    }
+
+    private Book getBook(String book) {
+        Book state = mBooks.get(book);
+        if (state == null) {
+            state = new Book();
+            Book existing = mBooks.putIfAbsent(book, state);
+            if (existing != null) {
+                state = existing;
+            }
+        }
+        return state;
+    }
+
+    private static BigDecimal best(BitsoWebSocketPublicOrder[] orders, boolean highest) {
+        BigDecimal best = null;
+        for (BitsoWebSocketPublicOrder order : orders) {
+            BigDecimal rate = order.getRate();
+            if (best == null || (highest ? rate.compareTo(best) > 0 : rate.compareTo(best) < 0)) {
+                best = rate;
+            }
+        }
+        return best;
+    }
+
+    /** An immutable view of a ticker. */
+    private static class Quote {
+        private final BigDecimal mLast;
+        private final BigDecimal mHigh;
+        private final BigDecimal mLow;
+        private final BigDecimal mVwap;
+        private final BigDecimal mVolume;
+        private final BigDecimal mBid;
+        private final BigDecimal mAsk;
+        private final long mUpdatedAt;
+
+        Quote(BigDecimal last, BigDecimal high, BigDecimal low, BigDecimal vwap, BigDecimal volume,
+                BigDecimal bid, BigDecimal ask) {
+            mLast = last;
+            mHigh = high;
+            mLow = low;
+            mVwap = vwap;
+            mVolume = volume;
+            mBid = bid;
+            mAsk = ask;
+            mUpdatedAt = System.currentTimeMillis();
+        }
+    }
+
+    private static class Trade {
+        private final BigDecimal mPrice;
+        private final BigDecimal mAmount;
+        // Local time the trade was streamed
+        private final long mAt;
+
+        Trade(BigDecimal price, BigDecimal amount, long at) {
+            mPrice = price;
+            mAmount = amount;
+            mAt = at;
+        }
+    }
+
+    /**
+     * Ticker state of one book. Writers, the websocket thread and the reseed thread, synchronize
+     * on it; readers only read the volatile quote.
+     */
+    private static class Book {
+        private volatile Quote mQuote;
+        private BigDecimal mValue;
+        // Streamed trades of the last RECENT_TRADES, oldest first
+        private final ArrayDeque<Trade> mRecentTrades;
+        // Local times of the last streamed trade and top of book sides, 0 if none yet
+        private long mLastAt;
+        private long mBidAt;
+        private long mAskAt;
+
+        Book() {
+            mQuote = new Quote(null, null, null, null, BigDecimal.ZERO, null, null);
+            mValue = BigDecimal.ZERO;
+            mRecentTrades = new ArrayDeque<Trade>();
+        }
+
+        /**
+         * @param requestedAt Local time the ticker was requested; anything streamed since then is
+         *        newer than the ticker and is kept.
+         */
+        synchronized void seed(BitsoTicker ticker, long requestedAt) {
+            Quote quote = mQuote;
+            BigDecimal volume = (ticker.getVolume() != null) ? ticker.getVolume() : BigDecimal.ZERO;
+            BigDecimal vwap = ticker.getVwap();
+            mValue = (vwap != null) ? vwap.multiply(volume) : BigDecimal.ZERO;
+            BigDecimal last = ticker.getLast();
+            BigDecimal high = ticker.getHigh();
+            BigDecimal low = ticker.getLow();
+            // Trades streamed while the request was in flight may be missing from the snapshot
+            boolean streamed = false;
+            for (Trade trade : mRecentTrades) {
+                if (trade.mAt >= requestedAt) {
+                    streamed = true;
+                    volume = volume.add(trade.mAmount);
+                    mValue = mValue.add(trade.mPrice.multiply(trade.mAmount));
+                    high = (high == null || trade.mPrice.compareTo(high) > 0) ? trade.mPrice : high;
+                    low = (low == null || trade.mPrice.compareTo(low) < 0) ? trade.mPrice : low;
+                }
+            }
+            if (streamed && volume.signum() > 0) {
+                vwap = mValue.divide(volume, MathContext.DECIMAL64);
+            }
+            if (mLastAt >= requestedAt && quote.mLast != null) {
+                // Keep the streamed price within the range it's reported with
+                last = quote.mLast;
+                high = (high == null || last.compareTo(high) > 0) ? last : high;
+                low = (low == null || last.compareTo(low) < 0) ? last : low;
+            }
+            mQuote = new Quote(last, high, low, vwap, volume,
+                    (mBidAt >= requestedAt) ? quote.mBid : ticker.getBid(),
+                    (mAskAt >= requestedAt) ? quote.mAsk : ticker.getAsk());
+        }
+
+        synchronized void trade(BigDecimal price, BigDecimal amount) {
+            Quote quote = mQuote;
+            BigDecimal high = (quote.mHigh == null || price.compareTo(quote.mHigh) > 0) ? price : quote.mHigh;
+            BigDecimal low = (quote.mLow == null || price.compareTo(quote.mLow) < 0) ? price : quote.mLow;
+            BigDecimal volume = quote.mVolume.add(amount);
+            mValue = mValue.add(price.multiply(amount));
+            BigDecimal vwap = (volume.signum() > 0)
+                    ? mValue.divide(volume, MathContext.DECIMAL64)
+                    : quote.mVwap;
+            mQuote = new Quote(price, high, low, vwap, volume, quote.mBid, quote.mAsk);
+            mLastAt = System.currentTimeMillis();
+            while (!mRecentTrades.isEmpty() && mRecentTrades.peekFirst().mAt < mLastAt - RECENT_TRADES) {
+                mRecentTrades.pollFirst();
+            }
+            mRecentTrades.addLast(new Trade(price, amount, mLastAt));
+        }
+
+        synchronized void quote(BigDecimal bid, BigDecimal ask) {
+            Quote quote = mQuote;
+            long now = System.currentTimeMillis();
+            if (bid != null) {
+                mBidAt = now;
+            }
+            if (ask != null) {
+                mAskAt = now;
+            }
+            mQuote = new Quote(quote.mLast, quote.mHigh, quote.mLow, quote.mVwap, quote.mVolume,
+                    (bid != null) ? bid : quote.mBid, (ask != null) ? ask : quote.mAsk);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.bitso.marketdata;
+
+/**
+ * Trade statistics of one book over a rolling window, as computed by a
+ * {@link BitsoRollingStats}.
+ */
+public class BitsoMarketStats {
+    private final String mBook;
+    private final long mWindow;
+    private final long mTime;
+    private final int mTradeCount;
+    private final double mVolume;
+    private final double mValue;
+    private final double mHigh;
+    private final double mLow;
+    private final double mLast;
+    private final double mVolatility;
+
+    BitsoMarketStats(String book, long window, long time, int tradeCount, double volume, double value,
+            double high, double low, double last, double volatility) {
+        mBook = book;
+        mWindow = window;
+        mTime = time;
+        mTradeCount = tradeCount;
+        mVolume = volume;
+        mValue = value;
+        mHigh = high;
+        mLow = low;
+        mLast = last;
+        mVolatility = volatility;
+    }
+
+    public String getBook() {
+        return mBook;
+    }
+
+    /** Length of the window in milliseconds. */
+    public long getWindow() {
+        return mWindow;
+    }
+
+    /** End of the window in epoch milliseconds. */
+    public long getTime() {
+        return mTime;
+    }
+
+    public int getTradeCount() {
+        return mTradeCount;
+    }
+
+    /** Traded amount in the major currency. */
+    public double getVolume() {
+        return mVolume;
+    }
+
+    /** Traded value in the minor currency. */
+    public double getValue() {
+        return mValue;
+    }
+
+    /** Volume weighted average price, NaN without trades. */
+    public double getVwap() {
+        return (mVolume > 0) ? mValue / mVolume : Double.NaN;
+    }
+
+    /** Highest price, NaN without trades. */
+    public double getHigh() {
+        return mHigh;
+    }
+
+    /** Lowest price, NaN without trades. */
+    public double getLow() {
+        return mLow;
+    }
+
+    /** Price of the last trade seen for the book, even if it's older than the window. */
+    public double getLast() {
+        return mLast;
+    }
+
+    /** Realized volatility: square root of the sum of squared trade to trade log returns. */
+    public double getVolatility() {
+        return mVolatility;
+    }
+
+    @Override
+    public String toString() {
+        return mBook + " " + mWindow + "ms N:" + mTradeCount + " V:" + mVolume + " VWAP:" + getVwap()
+                + " H:" + mHigh + " L:" + mLow + " RV:" + mVolatility;
+    }
+}
@@ -0,0 +1,302 @@
+package com.bitso.marketdata;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.bitso.websockets.BitsoStreamAdapter;
+import com.bitso.websockets.BitsoStreamTrades;
+import com.bitso.websockets.BitsoStreamTrades.TradePayload;
+
+/**
+ * Keeps VWAP, volume, high, low and realized volatility of every book of a trades stream over
+ * several rolling windows, e.g. the last minute, hour and day.
+ *
+ * The trades of a book are stored once in a ring buffer of primitive columns, sized for the
+ * longest window. Every window keeps running sums and monotonic queues for its high and low, so
+ * adding a trade and evicting the trades that left a window are O(1) amortized and allocate
+ * nothing once the ring has grown to the trade rate of the book.
+ *
+ * Windows are evicted as trades arrive and when stats are read, so reads always reflect the
+ * given time even for books that stopped trading.
+ */
+public class BitsoRollingStats extends BitsoStreamAdapter {
+    public static final long ONE_MINUTE = 60 * 1000L;
+    public static final long ONE_HOUR = 60 * ONE_MINUTE;
+    public static final long ONE_DAY = 24 * ONE_HOUR;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final long[] mWindows;
+    private final ConcurrentHashMap<String, Series> mSeries;
+
+    /**
+     * @param windows Window lengths in milliseconds.
+     */
+    public BitsoRollingStats(long... windows) {
+        if (windows.length == 0) {
+            throw new IllegalArgumentException("At least one window is required");
+        }
+        for (long window : windows) {
+            if (window <= 0) {
+                throw new IllegalArgumentException("Invalid window: " + window);
+            }
+        }
+        mWindows = windows.clone();
+        mSeries = new ConcurrentHashMap<String, Series>();
+    }
+
+    @Override
+    public void onTrades(BitsoStreamTrades trades) {
+        String book = trades.getBitsoBook();
+        long now = System.currentTimeMillis();
+        for (TradePayload trade : trades.getPayload()) {
+            long timestamp = (trade.getTimestamp() > 0) ? trade.getTimestamp() : now;
+            onTrade(book, timestamp, trade.getRate().doubleValue(), trade.getAmount().doubleValue());
+        }
+    }
+
+    /** Adds one trade to the windows of its book.
+     * @param timestamp Execution time in epoch milliseconds.
+     */
+    public void onTrade(String book, long timestamp, double price, double amount) {
+        Series series = mSeries.get(book);
+        if (series == null) {
+            series = new Series(book, mWindows);
+            Series existing = mSeries.putIfAbsent(book, series);
+            if (existing != null) {
+                series = existing;
+            }
+        }
+        series.add(timestamp, price, amount);
+    }
+
+    /** Stats of a book over a window ending now. */
+    public BitsoMarketStats getStats(String book, long window) {
+        return getStats(book, window, System.currentTimeMillis());
+    }
+
+    /**
+     * Stats of a book over a window ending at the given time.
+     * @param now Epoch milliseconds, not earlier than previous reads and trades.
+     * @return null if the book has no trades or the window isn't tracked.
+     */
+    public BitsoMarketStats getStats(String book, long window, long now) {
+        Series series = mSeries.get(book);
+        if (series == null) {
+            return null;
+        }
+        for (int i = 0; i < mWindows.length; i++) {
+            if (mWindows[i] == window) {
+                return series.stats(i, now);
+            }
+        }
+        return null;
+    }
+
+    public long[] getWindows() {
+        return mWindows.clone();
+    }
+
+    /**
+     * Trades of one book, addressed by an ever increasing position whose slot in the ring is
+     * {@code position & mMask}.
+     */
+    private static class Series {
+        private final String mBook;
+        private final Window[] mWindows;
+        private long[] mTimes;
+        private double[] mPrices;
+        private double[] mAmounts;
+        private double[] mReturns;
+        private int mMask;
+        private long mEnd;
+        private long mLastTime;
+        private double mLastPrice;
+
+        Series(String book, long[] windows) {
+            mBook = book;
+            mWindows = new Window[windows.length];
+            for (int i = 0; i < windows.length; i++) {
+                mWindows[i] = new Window(windows[i], INITIAL_CAPACITY);
+            }
+            allocate(INITIAL_CAPACITY);
+        }
+
+        synchronized void add(long timestamp, double price, double amount) {
+            // Timestamps must not go backwards for eviction to work
+            long time = Math.max(timestamp, mLastTime);
+            if (mEnd - oldest() == mTimes.length) {
+                grow();
+            }
+            long position = mEnd;
+            int slot = (int) (position & mMask);
+            mTimes[slot] = time;
+            mPrices[slot] = price;
+            mAmounts[slot] = amount;
+            mReturns[slot] = (mLastPrice > 0 && price > 0) ? Math.log(price / mLastPrice) : 0;
+            mEnd++;
+            mLastTime = time;
+            mLastPrice = price;
+
+            for (Window window : mWindows) {
+                window.add(this, position);
+                window.evict(this, time);
+            }
+        }
+
+        synchronized BitsoMarketStats stats(int index, long now) {
+            Window window = mWindows[index];
+            window.evict(this, Math.max(now, mLastTime));
+            int count = (int) (mEnd - window.mStart);
+            double high = Double.NaN;
+            double low = Double.NaN;
+            if (count > 0) {
+                high = mPrices[(int) (window.mMax.first() & mMask)];
+                low = mPrices[(int) (window.mMin.first() & mMask)];
+            }
+            return new BitsoMarketStats(mBook, window.mLength, now, count, window.mVolume, window.mValue,
+                    high, low, mLastPrice, Math.sqrt(Math.max(0, window.mSquaredReturns)));
+        }
+
+        private long oldest() {
+            long oldest = mEnd;
+            for (Window window : mWindows) {
+                oldest = Math.min(oldest, window.mStart);
+            }
+            return oldest;
+        }
+
+        private void allocate(int capacity) {
+            mTimes = new long[capacity];
+            mPrices = new double[capacity];
+            mAmounts = new double[capacity];
+            mReturns = new double[capacity];
+            mMask = capacity - 1;
+        }
+
+        private void grow() {
+            long[] times = mTimes;
+            double[] prices = mPrices;
+            double[] amounts = mAmounts;
+            double[] returns = mReturns;
+            int oldMask = mMask;
+            allocate(times.length * 2);
+            for (long position = oldest(); position < mEnd; position++) {
+                int from = (int) (position & oldMask);
+                int to = (int) (position & mMask);
+                mTimes[to] = times[from];
+                mPrices[to] = prices[from];
+                mAmounts[to] = amounts[from];
+                mReturns[to] = returns[from];
+            }
+            for (Window window : mWindows) {
+                window.mMax.grow(mTimes.length);
+                window.mMin.grow(mTimes.length);
+            }
+        }
+    }
+
+    private static class Window {
+        private final long mLength;
+        private final PositionQueue mMax;
+        private final PositionQueue mMin;
+        private long mStart;
+        private double mVolume;
+        private double mValue;
+        private double mSquaredReturns;
+
+        Window(long length, int capacity) {
+            mLength = length;
+            mMax = new PositionQueue(capacity);
+            mMin = new PositionQueue(capacity);
+        }
+
+        void add(Series series, long position) {
+            int slot = (int) (position & series.mMask);
+            double price = series.mPrices[slot];
+            double amount = series.mAmounts[slot];
+            mVolume += amount;
+            mValue += price * amount;
+            mSquaredReturns += series.mReturns[slot] * series.mReturns[slot];
+
+            while (!mMax.isEmpty() && series.mPrices[(int) (mMax.last() & series.mMask)] <= price) {
+                mMax.removeLast();
+            }
+            mMax.add(position);
+            while (!mMin.isEmpty() && series.mPrices[(int) (mMin.last() & series.mMask)] >= price) {
+                mMin.removeLast();
+            }
+            mMin.add(position);
+        }
+
+        void evict(Series series, long now) {
+            long limit = now - mLength;
+            while (mStart < series.mEnd && series.mTimes[(int) (mStart & series.mMask)] <= limit) {
+                int slot = (int) (mStart & series.mMask);
+                mVolume -= series.mAmounts[slot];
+                mValue -= series.mPrices[slot] * series.mAmounts[slot];
+                mSquaredReturns -= series.mReturns[slot] * series.mReturns[slot];
+                if (!mMax.isEmpty() && mMax.first() == mStart) {
+                    mMax.removeFirst();
+                }
+                if (!mMin.isEmpty() && mMin.first() == mStart) {
+                    mMin.removeFirst();
+                }
+                mStart++;
+            }
+            if (mStart == series.mEnd) {
+                // Reset the sums so rounding errors don't accumulate across quiet periods
+                mVolume = 0;
+                mValue = 0;
+                mSquaredReturns = 0;
+            }
+        }
+    }
+
+    /** A double ended queue of trade positions over a power of two ring. */
+    private static class PositionQueue {
+        private long[] mPositions;
+        private int mMask;
+        private long mHead;
+        private long mTail;
+
+        PositionQueue(int capacity) {
+            mPositions = new long[capacity];
+            mMask = capacity - 1;
+        }
+
+        boolean isEmpty() {
+            return mHead == mTail;
+        }
+
+        long first() {
+            return mPositions[(int) (mHead & mMask)];
+        }
+
+        long last() {
+            return mPositions[(int) ((mTail - 1) & mMask)];
+        }
+
+        void add(long position) {
+            mPositions[(int) (mTail & mMask)] = position;
+            mTail++;
+        }
+
+        void removeFirst() {
+            mHead++;
+        }
+
+        void removeLast() {
+            mTail--;
+        }
+
+        void grow(int capacity) {
+            long[] positions = new long[capacity];
+            int mask = capacity - 1;
+            for (long i = mHead; i < mTail; i++) {
+                positions[(int) (i & mask)] = mPositions[(int) (i & mMask)];
+            }
+            mPositions = positions;
+            mMask = mask;
+        }
+    }
+}
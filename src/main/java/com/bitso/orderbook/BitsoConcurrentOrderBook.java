@@ -0,0 +1,157 @@
+package com.bitso.orderbook;
+
+import java.util.concurrent.locks.StampedLock;
+
+import com.bitso.Bitso;
+import com.bitso.BitsoOrder;
+import com.bitso.BitsoOrderBook;
+import com.bitso.websockets.BitsoStreamAdapter;
+import com.bitso.websockets.BitsoStreamDiffOrders;
+
+/**
+ * A {@link BitsoLiveOrderBook} updated by the websocket thread and read by any number of other
+ * threads without locking.
+ *
+ * After each diff the writer publishes the best levels of both sides under a sequence lock: an
+ * optimistic {@link StampedLock} stamp that readers validate after copying, retrying if a write
+ * happened meanwhile. Readers therefore never see a half applied diff, and since they never
+ * acquire the lock the writer never waits for them.
+ *
+ * <pre>
+ * BitsoConcurrentOrderBook book = new BitsoConcurrentOrderBook(bitso, "btc_mxn", 20);
+ * dispatcher.addListener(book);
+ * ...
+ * BitsoDepthSnapshot depth = new BitsoDepthSnapshot(5);  // once per reader thread
+ * book.read(depth);
+ * </pre>
+ */
+public class BitsoConcurrentOrderBook extends BitsoStreamAdapter {
+    private final BitsoLiveOrderBook mBook;
+    private final BitsoSnapshotLoader mSnapshotLoader;
+    private final BitsoSnapshotLoader.Callback mSnapshotCallback;
+    private final StampedLock mLock;
+    private final BitsoDepthSnapshot mPublished;
+
+    /**
+     * @param bitso Used to snapshot the book, null if snapshots are applied by the caller.
+     * @param book The book to follow, diffs of other books are ignored.
+     * @param depth Number of levels per side published to readers.
+     */
+    public BitsoConcurrentOrderBook(Bitso bitso, String book, int depth) {
+        mBook = new BitsoLiveOrderBook(book);
+        mSnapshotLoader = new BitsoSnapshotLoader(bitso);
+        mSnapshotCallback = new BitsoSnapshotLoader.Callback() {
+            public void onSnapshotApplied(BitsoLiveOrderBook orderBook) {
+                publish();
+            }
+        };
+        mLock = new StampedLock();
+        mPublished = new BitsoDepthSnapshot(depth);
+    }
+
+    @Override
+    public void onDiffOrders(BitsoStreamDiffOrders diffOrders) {
+        if (!mBook.getBook().equals(diffOrders.getBitsoBook())) {
+            return;
+        }
+        synchronized (mBook) {
+            boolean synced = mBook.applyDiff(diffOrders);
+            publish();
+            if (!synced) {
+                mSnapshotLoader.request(mBook, mSnapshotCallback);
+            }
+        }
+    }
+
+    @Override
+    public void onConnectionChanged(boolean connected) {
+        if (!connected) {
+            synchronized (mBook) {
+                mBook.clear();
+                publish();
+            }
+        }
+    }
+
+    /** Applies a snapshot fetched by the caller. */
+    public void applySnapshot(BitsoOrderBook snapshot) {
+        synchronized (mBook) {
+            mBook.applySnapshot(snapshot);
+            publish();
+        }
+    }
+
+    /**
+     * Copies the latest published levels. Can be called from any thread.
+     * @param snapshot Receives the levels, up to its own depth.
+     */
+    public void read(BitsoDepthSnapshot snapshot) {
+        while (true) {
+            long stamp = mLock.tryOptimisticRead();
+            if (stamp != 0) {
+                snapshot.copyFrom(mPublished);
+                if (mLock.validate(stamp)) {
+                    return;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    /** Latest published best bid price, NaN without bids. Can be called from any thread. */
+    public double getBestBid() {
+        while (true) {
+            long stamp = mLock.tryOptimisticRead();
+            double price = (mPublished.mBidCount > 0) ? mPublished.mBidPrices[0] : Double.NaN;
+            if (stamp != 0 && mLock.validate(stamp)) {
+                return price;
+            }
+            Thread.yield();
+        }
+    }
+
+    /** Latest published best ask price, NaN without asks. Can be called from any thread. */
+    public double getBestAsk() {
+        while (true) {
+            long stamp = mLock.tryOptimisticRead();
+            double price = (mPublished.mAskCount > 0) ? mPublished.mAskPrices[0] : Double.NaN;
+            if (stamp != 0 && mLock.validate(stamp)) {
+                return price;
+            }
+            Thread.yield();
+        }
+    }
+
+    public String getBook() {
+        return mBook.getBook();
+    }
+
+    /** Number of order book snapshot fetches that failed. */
+    public long getSnapshotFailures() {
+        return mSnapshotLoader.getFailures();
+    }
+
+    /** Why the latest failed snapshot fetch failed, null if none did. */
+    public Exception getLastSnapshotFailure() {
+        return mSnapshotLoader.getLastFailure();
+    }
+
+    /** Stops the snapshot thread. */
+    public void close() {
+        mSnapshotLoader.close();
+    }
+
+    /** Copies the book into the published levels. Called by the writer holding the book. */
+    private void publish() {
+        long stamp = mLock.writeLock();
+        try {
+            mPublished.mBidCount = mBook.getDepth(BitsoOrder.SIDE.BUY, mPublished.mBidPrices,
+                    mPublished.mBidAmounts);
+            mPublished.mAskCount = mBook.getDepth(BitsoOrder.SIDE.SELL, mPublished.mAskPrices,
+                    mPublished.mAskAmounts);
+            mPublished.mSequence = mBook.getSequence();
+        } finally {
+            mLock.unlockWrite(stamp);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.bitso.orderbook;
+
+import com.bitso.BitsoOrder;
+
+/**
+ * A consistent copy of the best levels of both sides of a book, filled by
+ * {@link BitsoConcurrentOrderBook#read(BitsoDepthSnapshot)}. A reader keeps one instance and
+ * refills it, so reading allocates nothing.
+ */
+public class BitsoDepthSnapshot {
+    final double[] mBidPrices;
+    final double[] mBidAmounts;
+    final double[] mAskPrices;
+    final double[] mAskAmounts;
+    int mBidCount;
+    int mAskCount;
+    int mSequence;
+
+    /**
+     * @param depth Maximum number of levels copied per side.
+     */
+    public BitsoDepthSnapshot(int depth) {
+        mBidPrices = new double[depth];
+        mBidAmounts = new double[depth];
+        mAskPrices = new double[depth];
+        mAskAmounts = new double[depth];
+        mSequence = -1;
+    }
+
+    public int getDepth() {
+        return mBidPrices.length;
+    }
+
+    /** Sequence number of the last diff in the copy, -1 if the book was out of sync. */
+    public int getSequence() {
+        return mSequence;
+    }
+
+    public boolean isSynced() {
+        return mSequence >= 0;
+    }
+
+    /** Number of levels copied for a side. */
+    public int getLevelCount(BitsoOrder.SIDE side) {
+        return (side == BitsoOrder.SIDE.BUY) ? mBidCount : mAskCount;
+    }
+
+    /** Price of a level, 0 being the best. */
+    public double getPrice(BitsoOrder.SIDE side, int level) {
+        return (side == BitsoOrder.SIDE.BUY) ? mBidPrices[level] : mAskPrices[level];
+    }
+
+    /** Total amount of a level, 0 being the best. */
+    public double getAmount(BitsoOrder.SIDE side, int level) {
+        return (side == BitsoOrder.SIDE.BUY) ? mBidAmounts[level] : mAskAmounts[level];
+    }
+
+    /** Best bid price, NaN without bids. */
+    public double getBestBid() {
+        return (mBidCount > 0) ? mBidPrices[0] : Double.NaN;
+    }
+
+    /** Best ask price, NaN without asks. */
+    public double getBestAsk() {
+        return (mAskCount > 0) ? mAskPrices[0] : Double.NaN;
+    }
+
+    void copyFrom(BitsoDepthSnapshot other) {
+        mBidCount = copy(other.mBidPrices, other.mBidAmounts, other.mBidCount, mBidPrices, mBidAmounts);
+        mAskCount = copy(other.mAskPrices, other.mAskAmounts, other.mAskCount, mAskPrices, mAskAmounts);
+        mSequence = other.mSequence;
+    }
+
+    private static int copy(double[] prices, double[] amounts, int count, double[] toPrices,
+            double[] toAmounts) {
+        int copied = Math.min(count, toPrices.length);
+        System.arraycopy(prices, 0, toPrices, 0, copied);
+        System.arraycopy(amounts, 0, toAmounts, 0, copied);
+        return copied;
+    }
+}
@@ -0,0 +1,225 @@
+package com.bitso.orderbook;
+
+import java.util.Random;
+
+/**
+ * The price levels of one side of a book in a treap ordered best price first, where every node
+ * also holds the total amount and value of its subtree. Cumulative amount and value up to any
+ * point of the book, and the point where a given amount is reached, are found in a single walk
+ * from the root, in O(log n) on average.
+ */
+class BitsoDepthTree {
+    private final boolean mDescending;
+    private final Random mRandom;
+    private Node mRoot;
+    private int mSize;
+
+    /**
+     * @param descending True for bids, where the best price is the highest.
+     */
+    BitsoDepthTree(boolean descending) {
+        mDescending = descending;
+        mRandom = new Random();
+    }
+
+    /** Sets the amount at a price, removing the price if the amount isn't positive. */
+    void put(double price, double amount) {
+        double key = key(price);
+        if (amount > 0) {
+            mRoot = insert(mRoot, key, price, amount);
+        } else {
+            mRoot = delete(mRoot, key);
+        }
+    }
+
+    void clear() {
+        mRoot = null;
+        mSize = 0;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    double totalAmount() {
+        return amount(mRoot);
+    }
+
+    /** Best price, NaN if empty. */
+    double bestPrice() {
+        Node node = mRoot;
+        if (node == null) {
+            return Double.NaN;
+        }
+        while (node.mLeft != null) {
+            node = node.mLeft;
+        }
+        return node.mPrice;
+    }
+
+    /**
+     * Value of taking an amount from the best price down.
+     * @return NaN if the side holds less than the amount.
+     */
+    double valueOf(double amount) {
+        double remaining = amount;
+        double value = 0;
+        Node node = mRoot;
+        while (node != null) {
+            double leftAmount = amount(node.mLeft);
+            if (remaining <= leftAmount) {
+                node = node.mLeft;
+                continue;
+            }
+            remaining -= leftAmount;
+            value += value(node.mLeft);
+            if (remaining <= node.mAmount) {
+                return value + remaining * node.mPrice;
+            }
+            remaining -= node.mAmount;
+            value += node.mAmount * node.mPrice;
+            node = node.mRight;
+        }
+        return Double.NaN;
+    }
+
+    /** Amount resting at prices as good as or better than a limit. */
+    double amountUpTo(double limitPrice) {
+        double limit = key(limitPrice);
+        double amount = 0;
+        Node node = mRoot;
+        while (node != null) {
+            if (node.mKey <= limit) {
+                amount += amount(node.mLeft) + node.mAmount;
+                node = node.mRight;
+            } else {
+                node = node.mLeft;
+            }
+        }
+        return amount;
+    }
+
+    /** Value of the amount resting at prices as good as or better than a limit. */
+    double valueUpTo(double limitPrice) {
+        double limit = key(limitPrice);
+        double value = 0;
+        Node node = mRoot;
+        while (node != null) {
+            if (node.mKey <= limit) {
+                value += value(node.mLeft) + node.mAmount * node.mPrice;
+                node = node.mRight;
+            } else {
+                node = node.mLeft;
+            }
+        }
+        return value;
+    }
+
+    private double key(double price) {
+        return mDescending ? -price : price;
+    }
+
+    private Node insert(Node node, double key, double price, double amount) {
+        if (node == null) {
+            mSize++;
+            return new Node(key, price, amount, mRandom.nextInt());
+        }
+        if (key == node.mKey) {
+            node.mAmount = amount;
+        } else if (key < node.mKey) {
+            node.mLeft = insert(node.mLeft, key, price, amount);
+            if (node.mLeft.mPriority > node.mPriority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.mRight = insert(node.mRight, key, price, amount);
+            if (node.mRight.mPriority > node.mPriority) {
+                node = rotateLeft(node);
+            }
+        }
+        node.update();
+        return node;
+    }
+
+    private Node delete(Node node, double key) {
+        if (node == null) {
+            return null;
+        }
+        if (key < node.mKey) {
+            node.mLeft = delete(node.mLeft, key);
+        } else if (key > node.mKey) {
+            node.mRight = delete(node.mRight, key);
+        } else {
+            mSize--;
+            return merge(node.mLeft, node.mRight);
+        }
+        node.update();
+        return node;
+    }
+
+    /** Joins two treaps where every key of the left one is smaller. */
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.mPriority > right.mPriority) {
+            left.mRight = merge(left.mRight, right);
+            left.update();
+            return left;
+        }
+        right.mLeft = merge(left, right.mLeft);
+        right.update();
+        return right;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.mLeft;
+        node.mLeft = left.mRight;
+        left.mRight = node;
+        node.update();
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.mRight;
+        node.mRight = right.mLeft;
+        right.mLeft = node;
+        node.update();
+        return right;
+    }
+
+    private static double amount(Node node) {
+        return (node != null) ? node.mSumAmount : 0;
+    }
+
+    private static double value(Node node) {
+        return (node != null) ? node.mSumValue : 0;
+    }
+
+    private static class Node {
+        private final double mKey;
+        private final double mPrice;
+        private final int mPriority;
+        private double mAmount;
+        private double mSumAmount;
+        private double mSumValue;
+        private Node mLeft;
+        private Node mRight;
+
+        Node(double key, double price, double amount, int priority) {
+            mKey = key;
+            mPrice = price;
+            mAmount = amount;
+            mPriority = priority;
+            update();
+        }
+
+        void update() {
+            mSumAmount = amount(mLeft) + mAmount + amount(mRight);
+            mSumValue = value(mLeft) + mAmount * mPrice + value(mRight);
+        }
+    }
+}
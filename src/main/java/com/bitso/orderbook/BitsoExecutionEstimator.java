@@ -0,0 +1,117 @@
+package com.bitso.orderbook;
+
+import com.bitso.BitsoOrder;
+
+/**
+ * Estimates what a market order would cost against a {@link BitsoLiveOrderBook} before it's
+ * sent with {@code placeMarketBuyOrder} or {@code placeMarketSellOrder}.
+ *
+ * The estimator listens to the level changes of the book and keeps each side in a tree of
+ * running amount and value sums, so every estimate is O(log n) in the number of levels instead
+ * of a walk over the book. Sides are named after the market order: a buy takes the asks and a
+ * sell takes the bids. Like the book, it must be used on the thread that applies the diffs.
+ *
+ * <pre>
+ * BitsoExecutionEstimator estimator = new BitsoExecutionEstimator(book);
+ * double price = estimator.getAveragePrice(BitsoOrder.SIDE.BUY, 0.5);
+ * double slippage = estimator.getSlippage(BitsoOrder.SIDE.BUY, 0.5);
+ * </pre>
+ */
+public class BitsoExecutionEstimator implements BitsoLiveOrderBook.LevelListener {
+    private final BitsoLiveOrderBook mBook;
+    private final BitsoDepthTree mAsks;
+    private final BitsoDepthTree mBids;
+
+    /**
+     * Loads the current levels of a book and adds itself to its level listeners.
+     */
+    public BitsoExecutionEstimator(BitsoLiveOrderBook book) {
+        mBook = book;
+        mAsks = new BitsoDepthTree(false);
+        mBids = new BitsoDepthTree(true);
+        for (BitsoPriceLevel level : book.getLevels(BitsoOrder.SIDE.SELL)) {
+            onLevelChanged(level, false);
+        }
+        for (BitsoPriceLevel level : book.getLevels(BitsoOrder.SIDE.BUY)) {
+            onLevelChanged(level, false);
+        }
+        book.addLevelListener(this);
+    }
+
+    /** Stops following the level changes of the book. */
+    public void close() {
+        mBook.removeLevelListener(this);
+    }
+
+    public void onLevelChanged(BitsoPriceLevel level, boolean removed) {
+        BitsoDepthTree tree = (level.getSide() == BitsoOrder.SIDE.SELL) ? mAsks : mBids;
+        tree.put(level.getPriceValue(), removed ? 0 : level.getAmountValue());
+    }
+
+    /**
+     * Average fill price of a market order.
+     * @param amount Amount in the major currency.
+     * @return NaN if the book can't fill the amount.
+     */
+    public double getAveragePrice(BitsoOrder.SIDE side, double amount) {
+        if (amount <= 0) {
+            return Double.NaN;
+        }
+        return taken(side).valueOf(amount) / amount;
+    }
+
+    /**
+     * Slippage of a market order against the best price, in basis points. Positive values are
+     * always a cost: a buy above the best ask or a sell below the best bid.
+     * @return NaN if the book can't fill the amount.
+     */
+    public double getSlippage(BitsoOrder.SIDE side, double amount) {
+        double best = taken(side).bestPrice();
+        double average = getAveragePrice(side, amount);
+        double slippage = (average - best) / best * 10_000;
+        return (side == BitsoOrder.SIDE.BUY) ? slippage : -slippage;
+    }
+
+    /**
+     * Amount that can be bought or sold without moving the price further than a number of basis
+     * points from the best price.
+     */
+    public double getAmountWithin(BitsoOrder.SIDE side, double bps) {
+        BitsoDepthTree tree = taken(side);
+        return tree.amountUpTo(limitPrice(side, tree.bestPrice(), bps));
+    }
+
+    /**
+     * Value in the minor currency of everything that can be bought or sold within a number of
+     * basis points from the best price.
+     */
+    public double getValueWithin(BitsoOrder.SIDE side, double bps) {
+        BitsoDepthTree tree = taken(side);
+        return tree.valueUpTo(limitPrice(side, tree.bestPrice(), bps));
+    }
+
+    /**
+     * Minor currency paid by a market buy, or received by a market sell, including the fee.
+     * @param amount Amount in the major currency.
+     * @param feeDecimal Taker fee as a fraction, the {@code taker_fee_decimal} of the book.
+     * @return NaN if the book can't fill the amount.
+     */
+    public double getCostWithFee(BitsoOrder.SIDE side, double amount, double feeDecimal) {
+        double value = taken(side).valueOf(amount);
+        return (side == BitsoOrder.SIDE.BUY) ? value * (1 + feeDecimal) : value * (1 - feeDecimal);
+    }
+
+    /** Amount the book can fill for a market order of a side. */
+    public double getAvailableAmount(BitsoOrder.SIDE side) {
+        return taken(side).totalAmount();
+    }
+
+    private BitsoDepthTree taken(BitsoOrder.SIDE side) {
+        return (side == BitsoOrder.SIDE.BUY) ? mAsks : mBids;
+    }
+
+    private static double limitPrice(BitsoOrder.SIDE side, double best, double bps) {
+        double factor = bps / 10_000;
+        return (side == BitsoOrder.SIDE.BUY) ? best * (1 + factor) : best * (1 - factor);
+    }
+}
@@ -0,0 +1,397 @@
+package com.bitso.orderbook;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.bitso.BitsoOrder;
+import com.bitso.BitsoOrderBook;
+import com.bitso.BitsoOrderBook.PublicOrder;
+import com.bitso.websockets.BitsoStreamDiffOrders;
+import com.bitso.websockets.BitsoWebSocketPublicOrder;
+
+/**
+ * An order book of one book kept current from a REST snapshot and the diff-orders stream.
+ *
+ * Orders are tracked by id and grouped in price levels sorted best first. Each diff updates the
+ * levels it touches in place, so the aggregated depth is always current without re-aggregating,
+ * and {@link #getDepth(BitsoOrder.SIDE, double[], double[])} copies the top levels into arrays
+ * owned by the caller.
+ *
+ * Diffs must arrive with
+ * consecutive sequence numbers: diffs received before the first snapshot are buffered and
+ * replayed on top of it, diffs already contained in the snapshot are skipped, and a missing
+ * sequence number drops the book out of sync until a new snapshot is applied.
+ *
+ * <pre>
+ * if (!book.applyDiff(diff)) {
+ *     book.applySnapshot(bitso.getOrderBook(diff.getBitsoBook(), false));
+ * }
+ * </pre>
+ *
+ * A book isn't thread safe; it must be updated and read by a single thread.
+ */
+public class BitsoLiveOrderBook {
+    /** Receives every change of a price level. */
+    public interface LevelListener {
+        /**
+         * Called after a level changed, with the level already updated. A level whose last order
+         * left the book is passed with {@code removed} set.
+         */
+        void onLevelChanged(BitsoPriceLevel level, boolean removed);
+    }
+
+    /** Default maximum number of diffs buffered while waiting for a snapshot. */
+    public static final int DEFAULT_MAX_PENDING_DIFFS = 10_000;
+
+    private final String mBook;
+    private final TreeMap<BigDecimal, BitsoPriceLevel> mBids;
+    private final TreeMap<BigDecimal, BitsoPriceLevel> mAsks;
+    private final HashMap<String, Order> mOrders;
+    private final List<BitsoStreamDiffOrders> mPendingDiffs;
+    private final int mMaxPendingDiffs;
+    private BitsoPriceLevel mBestBid;
+    private BitsoPriceLevel mBestAsk;
+    private BigDecimal mBidTotal;
+    private BigDecimal mAskTotal;
+    private final CopyOnWriteArrayList<LevelListener> mLevelListeners;
+    private int mSequence;
+    private long mGaps;
+
+    public BitsoLiveOrderBook(String book) {
+        this(book, DEFAULT_MAX_PENDING_DIFFS);
+    }
+
+    /**
+     * @param book The book whose diffs are applied.
+     * @param maxPendingDiffs Maximum number of diffs buffered while waiting for a snapshot; the
+     *        oldest are dropped beyond it.
+     */
+    public BitsoLiveOrderBook(String book, int maxPendingDiffs) {
+        mBook = book;
+        mMaxPendingDiffs = Math.max(1, maxPendingDiffs);
+        mBids = new TreeMap<BigDecimal, BitsoPriceLevel>(Collections.<BigDecimal>reverseOrder());
+        mAsks = new TreeMap<BigDecimal, BitsoPriceLevel>();
+        mOrders = new HashMap<String, Order>();
+        mPendingDiffs = new ArrayList<BitsoStreamDiffOrders>();
+        mLevelListeners = new CopyOnWriteArrayList<LevelListener>();
+        mBidTotal = BigDecimal.ZERO;
+        mAskTotal = BigDecimal.ZERO;
+        mSequence = -1;
+    }
+
+    /**
+     * Replaces the content of the book with a snapshot and replays the buffered diffs that are
+     * newer than it.
+     * @param snapshot An unaggregated order book, from {@code getOrderBook(book, false)}.
+     * @return false if the buffered diffs have a gap after the snapshot.
+     */
+    public boolean applySnapshot(BitsoOrderBook snapshot) {
+        clear();
+        addSnapshotOrders(BitsoOrder.SIDE.BUY, snapshot.getBids());
+        addSnapshotOrders(BitsoOrder.SIDE.SELL, snapshot.getAsks());
+        mSequence = snapshot.getSequence();
+
+        List<BitsoStreamDiffOrders> pending = new ArrayList<BitsoStreamDiffOrders>(mPendingDiffs);
+        mPendingDiffs.clear();
+        for (int i = 0; i < pending.size(); i++) {
+            if (!applyDiff(pending.get(i))) {
+                // Keep what's left for the next snapshot
+                for (int j = i + 1; j < pending.size(); j++) {
+                    bufferDiff(pending.get(j));
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies a diff-orders message of this book.
+     * @return false if the book is out of sync and needs a new snapshot. The diff is kept and
+     * replayed after the snapshot.
+     */
+    public boolean applyDiff(BitsoStreamDiffOrders diff) {
+        int sequence = diff.getSequenceNumber();
+        if (mSequence < 0) {
+            bufferDiff(diff);
+            return false;
+        }
+        if (sequence <= mSequence) {
+            // Already in the snapshot
+            return true;
+        }
+        if (sequence != mSequence + 1) {
+            mGaps++;
+            clear();
+            bufferDiff(diff);
+            return false;
+        }
+        for (BitsoWebSocketPublicOrder order : diff.getPayload()) {
+            applyOrder(order);
+        }
+        mSequence = sequence;
+        return true;
+    }
+
+    /** Empties the book and marks it out of sync. */
+    public void clear() {
+        clearLevels(mBids);
+        clearLevels(mAsks);
+        mBestBid = null;
+        mBestAsk = null;
+        mBidTotal = BigDecimal.ZERO;
+        mAskTotal = BigDecimal.ZERO;
+        mOrders.clear();
+        mSequence = -1;
+    }
+
+    public String getBook() {
+        return mBook;
+    }
+
+    /** True after a snapshot, until a sequence gap. */
+    public boolean isSynced() {
+        return mSequence >= 0;
+    }
+
+    /** Sequence number of the last applied diff or snapshot, -1 while out of sync. */
+    public int getSequence() {
+        return mSequence;
+    }
+
+    /** Number of sequence gaps detected so far. */
+    public long getGaps() {
+        return mGaps;
+    }
+
+    /** Best bid, or null if there are no bids. */
+    public BitsoPriceLevel getBestBid() {
+        return mBestBid;
+    }
+
+    /** Best ask, or null if there are no asks. */
+    public BitsoPriceLevel getBestAsk() {
+        return mBestAsk;
+    }
+
+    /**
+     * Copies the best levels of a side into caller owned arrays, without allocating.
+     * @param prices Receives the prices, best first. Its length is the number of levels copied.
+     * @param amounts Receives the total amount of each level, at least as long as prices.
+     * @return The number of levels copied, less than the array length if the side is shallower.
+     */
+    public int getDepth(BitsoOrder.SIDE side, double[] prices, double[] amounts) {
+        return getDepth(side, prices, amounts, null);
+    }
+
+    /**
+     * Same as {@link #getDepth(BitsoOrder.SIDE, double[], double[])}, also copying the number of
+     * orders of each level if {@code orderCounts} isn't null.
+     */
+    public int getDepth(BitsoOrder.SIDE side, double[] prices, double[] amounts, int[] orderCounts) {
+        BitsoPriceLevel level = (side == BitsoOrder.SIDE.BUY) ? mBestBid : mBestAsk;
+        int count = 0;
+        while (level != null && count < prices.length) {
+            prices[count] = level.getPriceValue();
+            amounts[count] = level.mAmountValue;
+            if (orderCounts != null) {
+                orderCounts[count] = level.mOrderCount;
+            }
+            count++;
+            level = level.mWorse;
+        }
+        return count;
+    }
+
+    /** Total amount resting on a side. */
+    public BigDecimal getTotalAmount(BitsoOrder.SIDE side) {
+        return (side == BitsoOrder.SIDE.BUY) ? mBidTotal : mAskTotal;
+    }
+
+    public int getLevelCount(BitsoOrder.SIDE side) {
+        return levels(side).size();
+    }
+
+    /** Adds a listener called on every level change, unless it was already added. */
+    public void addLevelListener(LevelListener listener) {
+        mLevelListeners.addIfAbsent(listener);
+    }
+
+    public void removeLevelListener(LevelListener listener) {
+        mLevelListeners.remove(listener);
+    }
+
+    /** Price levels of a side, best first. */
+    public Collection<BitsoPriceLevel> getLevels(BitsoOrder.SIDE side) {
+        return Collections.unmodifiableCollection(levels(side).values());
+    }
+
+    public BitsoPriceLevel getLevel(BitsoOrder.SIDE side, BigDecimal price) {
+        return levels(side).get(price);
+    }
+
+    public int getOrderCount() {
+        return mOrders.size();
+    }
+
+    TreeMap<BigDecimal, BitsoPriceLevel> levels(BitsoOrder.SIDE side) {
+        return (side == BitsoOrder.SIDE.BUY) ? mBids : mAsks;
+    }
+
+    private void clearLevels(TreeMap<BigDecimal, BitsoPriceLevel> levels) {
+        for (BitsoPriceLevel level : levels.values()) {
+            level.mAmount = BigDecimal.ZERO;
+            level.mAmountValue = 0;
+            level.mOrderCount = 0;
+            level.mBetter = null;
+            level.mWorse = null;
+            onLevelChanged(level, true);
+        }
+        levels.clear();
+    }
+
+    private void onLevelChanged(BitsoPriceLevel level, boolean removed) {
+        for (LevelListener listener : mLevelListeners) {
+            listener.onLevelChanged(level, removed);
+        }
+    }
+
+    private void bufferDiff(BitsoStreamDiffOrders diff) {
+        if (mPendingDiffs.size() >= mMaxPendingDiffs) {
+            // The snapshot will be newer than the oldest diffs anyway
+            mPendingDiffs.remove(0);
+        }
+        mPendingDiffs.add(diff);
+    }
+
+    private void addSnapshotOrders(BitsoOrder.SIDE side, PublicOrder[] orders) {
+        if (orders == null) {
+            return;
+        }
+        for (PublicOrder order : orders) {
+            // Aggregated snapshots have no order ids, so each level acts as a single order
+            String orderId = (order.getOrderId() != null && order.getOrderId().length() > 0)
+                    ? order.getOrderId()
+                    : side + ":" + order.getPrice().toPlainString();
+            addOrder(orderId, side, order.getPrice(), order.getAmount());
+        }
+    }
+
+    private void applyOrder(BitsoWebSocketPublicOrder update) {
+        String orderId = update.getOrderId();
+        if (orderId == null) {
+            return;
+        }
+        Order order = mOrders.get(orderId);
+        // Open updates without an amount can't be placed in the book, so they count as removals
+        boolean open = "open".equals(update.getStatus()) && update.getAmount() != null
+                && update.getAmount().signum() > 0;
+        if (order != null) {
+            if (!open) {
+                removeOrder(orderId, order);
+            } else if (order.mPrice.compareTo(update.getRate()) != 0 || order.mSide != update.getSide()) {
+                removeOrder(orderId, order);
+                addOrder(orderId, update.getSide(), update.getRate(), update.getAmount());
+            } else {
+                BitsoPriceLevel level = levels(order.mSide).get(order.mPrice);
+                addAmount(level, update.getAmount().subtract(order.mAmount));
+                order.mAmount = update.getAmount();
+                onLevelChanged(level, false);
+            }
+        } else if (open) {
+            addOrder(orderId, update.getSide(), update.getRate(), update.getAmount());
+        }
+    }
+
+    private void addOrder(String orderId, BitsoOrder.SIDE side, BigDecimal price, BigDecimal amount) {
+        TreeMap<BigDecimal, BitsoPriceLevel> levels = levels(side);
+        BitsoPriceLevel level = levels.get(price);
+        if (level == null) {
+            level = new BitsoPriceLevel(side, price);
+            levels.put(price, level);
+            link(levels, level);
+        }
+        addAmount(level, amount);
+        level.mOrderCount++;
+        // Keep the level's price instance so lookups never depend on the scale of the update
+        mOrders.put(orderId, new Order(side, level.getPrice(), amount));
+        onLevelChanged(level, false);
+    }
+
+    private void removeOrder(String orderId, Order order) {
+        TreeMap<BigDecimal, BitsoPriceLevel> levels = levels(order.mSide);
+        BitsoPriceLevel level = levels.get(order.mPrice);
+        mOrders.remove(orderId);
+        addAmount(level, order.mAmount.negate());
+        level.mOrderCount--;
+        boolean removed = level.mOrderCount == 0;
+        if (removed) {
+            levels.remove(order.mPrice);
+            unlink(level);
+        }
+        onLevelChanged(level, removed);
+    }
+
+    private void addAmount(BitsoPriceLevel level, BigDecimal delta) {
+        level.mAmount = level.mAmount.add(delta);
+        level.mAmountValue = level.mAmount.doubleValue();
+        if (level.getSide() == BitsoOrder.SIDE.BUY) {
+            mBidTotal = mBidTotal.add(delta);
+        } else {
+            mAskTotal = mAskTotal.add(delta);
+        }
+    }
+
+    /** Links a level just added to the map between its neighbours. */
+    private void link(TreeMap<BigDecimal, BitsoPriceLevel> levels, BitsoPriceLevel level) {
+        // The maps are ordered best first, so lower keys are better prices
+        Map.Entry<BigDecimal, BitsoPriceLevel> better = levels.lowerEntry(level.getPrice());
+        Map.Entry<BigDecimal, BitsoPriceLevel> worse = levels.higherEntry(level.getPrice());
+        level.mBetter = (better != null) ? better.getValue() : null;
+        level.mWorse = (worse != null) ? worse.getValue() : null;
+        if (level.mBetter != null) {
+            level.mBetter.mWorse = level;
+        } else if (level.getSide() == BitsoOrder.SIDE.BUY) {
+            mBestBid = level;
+        } else {
+            mBestAsk = level;
+        }
+        if (level.mWorse != null) {
+            level.mWorse.mBetter = level;
+        }
+    }
+
+    private void unlink(BitsoPriceLevel level) {
+        if (level.mBetter != null) {
+            level.mBetter.mWorse = level.mWorse;
+        } else if (level.getSide() == BitsoOrder.SIDE.BUY) {
+            mBestBid = level.mWorse;
+        } else {
+            mBestAsk = level.mWorse;
+        }
+        if (level.mWorse != null) {
+            level.mWorse.mBetter = level.mBetter;
+        }
+        level.mBetter = null;
+        level.mWorse = null;
+    }
+
+    private static class Order {
+        private final BitsoOrder.SIDE mSide;
+        private final BigDecimal mPrice;
+        private BigDecimal mAmount;
+
+        Order(BitsoOrder.SIDE side, BigDecimal price, BigDecimal amount) {
+            mSide = side;
+            mPrice = price;
+            mAmount = amount;
+        }
+    }
+}
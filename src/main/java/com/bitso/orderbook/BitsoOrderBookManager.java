@@ -0,0 +1,222 @@
+package com.bitso.orderbook;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.bitso.Bitso;
+import com.bitso.BitsoOrderBook;
+import com.bitso.websockets.BitsoStreamAdapter;
+import com.bitso.websockets.BitsoStreamDiffOrders;
+
+/**
+ * Maintains many books at once, spreading the diff work across a fixed set of shards.
+ *
+ * Each shard is a single thread that owns the {@link BitsoLiveOrderBook}s of the books hashed to
+ * it, so books are updated without locks, diffs of one book are always applied in order, and
+ * different books are updated in parallel. The websocket thread only hands each decoded diff to
+ * its shard.
+ *
+ * Reads go through the same shards: {@link #query(String, Query)} runs a query on the thread
+ * that owns the book, and {@link #getTopOfBook(String)} returns the best bid and ask the shard
+ * published after its last change.
+ *
+ * <pre>
+ * BitsoOrderBookManager manager = new BitsoOrderBookManager(bitso, 4);
+ * dispatcher.addListener(manager);
+ * for (BookInfo book : bitso.getAvailableBooks()) {
+ *     webSocket.subscribeBitsoChannel(book.getBook(), BitsoChannels.DIFF_ORDERS.toString());
+ * }
+ * </pre>
+ */
+public class BitsoOrderBookManager extends BitsoStreamAdapter {
+    /** A read of a book, run on the shard that owns it. */
+    public interface Query<T> {
+        T run(BitsoLiveOrderBook book);
+    }
+
+    private final Shard[] mShards;
+    private final BitsoSnapshotLoader mSnapshotLoader;
+    private final ConcurrentHashMap<String, BitsoTopOfBook> mTopOfBooks;
+
+    /**
+     * @param bitso Used to snapshot books, null if snapshots are applied by the caller.
+     * @param shards Number of shard threads, usually no more than the number of cores.
+     */
+    public BitsoOrderBookManager(Bitso bitso, int shards) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("Invalid number of shards: " + shards);
+        }
+        mShards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            mShards[i] = new Shard(i);
+        }
+        mSnapshotLoader = new BitsoSnapshotLoader(bitso);
+        mTopOfBooks = new ConcurrentHashMap<String, BitsoTopOfBook>();
+    }
+
+    @Override
+    public void onDiffOrders(final BitsoStreamDiffOrders diffOrders) {
+        final Shard shard = shard(diffOrders.getBitsoBook());
+        shard.mExecutor.execute(new Runnable() {
+            public void run() {
+                BitsoLiveOrderBook book = shard.getBook(diffOrders.getBitsoBook());
+                boolean synced = book.applyDiff(diffOrders);
+                publish(book);
+                if (!synced) {
+                    requestSnapshot(book.getBook());
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onConnectionChanged(boolean connected) {
+        if (connected) {
+            return;
+        }
+        // Diffs missed while disconnected can't be recovered
+        for (final Shard shard : mShards) {
+            shard.mExecutor.execute(new Runnable() {
+                public void run() {
+                    for (BitsoLiveOrderBook book : shard.mBooks.values()) {
+                        book.clear();
+                        publish(book);
+                    }
+                }
+            });
+        }
+    }
+
+    /** Applies a snapshot fetched by the caller, on the shard of the book. */
+    public void applySnapshot(final String book, final BitsoOrderBook snapshot) {
+        final Shard shard = shard(book);
+        shard.mExecutor.execute(new Runnable() {
+            public void run() {
+                BitsoLiveOrderBook orderBook = shard.getBook(book);
+                orderBook.applySnapshot(snapshot);
+                publish(orderBook);
+            }
+        });
+    }
+
+    /**
+     * Runs a read of a book on the shard that owns it, after every diff received before the call.
+     * The query receives null if no diff or snapshot of the book has been seen.
+     */
+    public <T> Future<T> query(final String book, final Query<T> query) {
+        final Shard shard = shard(book);
+        return shard.mExecutor.submit(new Callable<T>() {
+            public T call() {
+                return query.run(shard.mBooks.get(book));
+            }
+        });
+    }
+
+    /** Runs a read of a book on its shard and waits for the result. */
+    public <T> T queryAndWait(String book, Query<T> query) throws InterruptedException {
+        try {
+            return query(book, query).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /** Best bid and ask after the last change of a book, without waiting for its shard.
+     * @return null if the book hasn't been seen.
+     */
+    public BitsoTopOfBook getTopOfBook(String book) {
+        return mTopOfBooks.get(book);
+    }
+
+    /** Books that have received diffs or snapshots. */
+    public Set<String> getBooks() {
+        return mTopOfBooks.keySet();
+    }
+
+    public int getShardCount() {
+        return mShards.length;
+    }
+
+    /** Index of the shard that owns a book. */
+    public int getShard(String book) {
+        return (book.hashCode() & Integer.MAX_VALUE) % mShards.length;
+    }
+
+    /** Number of order book snapshot fetches that failed. */
+    public long getSnapshotFailures() {
+        return mSnapshotLoader.getFailures();
+    }
+
+    /** Why the latest failed snapshot fetch failed, null if none did. */
+    public Exception getLastSnapshotFailure() {
+        return mSnapshotLoader.getLastFailure();
+    }
+
+    /** Stops the shard and snapshot threads. */
+    public void close() {
+        for (Shard shard : mShards) {
+            shard.mExecutor.shutdownNow();
+        }
+        mSnapshotLoader.close();
+    }
+
+    private Shard shard(String book) {
+        return mShards[getShard(book)];
+    }
+
+    /** Called on the shard thread of the book. */
+    private void publish(BitsoLiveOrderBook book) {
+        BitsoTopOfBook topOfBook = new BitsoTopOfBook(book.getBook(), book.getSequence(), book.getBestBid(),
+                book.getBestAsk());
+        if (topOfBook.differsFrom(mTopOfBooks.get(book.getBook()))) {
+            mTopOfBooks.put(book.getBook(), topOfBook);
+        }
+    }
+
+    private void requestSnapshot(String book) {
+        mSnapshotLoader.fetch(book, new BitsoSnapshotLoader.FetchCallback() {
+            public void onSnapshot(String name, BitsoOrderBook snapshot) {
+                // Hand the snapshot back to the owning shard
+                applySnapshot(name, snapshot);
+            }
+        });
+    }
+
+    private static class Shard {
+        /** Only touched by the shard's thread. */
+        private final Map<String, BitsoLiveOrderBook> mBooks;
+        private final ExecutorService mExecutor;
+
+        Shard(final int index) {
+            mBooks = new HashMap<String, BitsoLiveOrderBook>();
+            mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "bitso-book-shard-" + index);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        BitsoLiveOrderBook getBook(String book) {
+            BitsoLiveOrderBook orderBook = mBooks.get(book);
+            if (orderBook == null) {
+                orderBook = new BitsoLiveOrderBook(book);
+                mBooks.put(book, orderBook);
+            }
+            return orderBook;
+        }
+    }
+}
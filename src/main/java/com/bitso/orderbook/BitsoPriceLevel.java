@@ -0,0 +1,71 @@
+package com.bitso.orderbook;
+
+import java.math.BigDecimal;
+
+import com.bitso.BitsoOrder;
+
+/**
+ * The orders resting at one price on one side of a {@link BitsoLiveOrderBook}.
+ *
+ * Levels are owned and updated in place by the book, so they should only be read on the thread
+ * that applies the diffs. Price and amount are also kept as doubles for arithmetic that doesn't
+ * need to be exact, and levels are linked best to worst so the book can be walked without
+ * allocating.
+ */
+public class BitsoPriceLevel {
+    private final BitsoOrder.SIDE mSide;
+    private final BigDecimal mPrice;
+    private final double mPriceValue;
+    BigDecimal mAmount;
+    double mAmountValue;
+    int mOrderCount;
+    BitsoPriceLevel mBetter;
+    BitsoPriceLevel mWorse;
+
+    BitsoPriceLevel(BitsoOrder.SIDE side, BigDecimal price) {
+        mSide = side;
+        mPrice = price;
+        mPriceValue = price.doubleValue();
+        mAmount = BigDecimal.ZERO;
+    }
+
+    public BitsoOrder.SIDE getSide() {
+        return mSide;
+    }
+
+    public BigDecimal getPrice() {
+        return mPrice;
+    }
+
+    /** Total amount of the orders at this price. */
+    public BigDecimal getAmount() {
+        return mAmount;
+    }
+
+    public double getPriceValue() {
+        return mPriceValue;
+    }
+
+    public double getAmountValue() {
+        return mAmountValue;
+    }
+
+    /** The next level towards the worst price, or null. */
+    public BitsoPriceLevel getWorse() {
+        return mWorse;
+    }
+
+    /** The next level towards the best price, or null. */
+    public BitsoPriceLevel getBetter() {
+        return mBetter;
+    }
+
+    public int getOrderCount() {
+        return mOrderCount;
+    }
+
+    @Override
+    public String toString() {
+        return mSide + " " + mPrice + " x " + mAmount + " (" + mOrderCount + ")";
+    }
+}
@@ -0,0 +1,143 @@
+package com.bitso.orderbook;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.bitso.Bitso;
+import com.bitso.BitsoOrderBook;
+import com.bitso.exceptions.BitsoAPIException;
+import com.bitso.exceptions.BitsoPayloadException;
+import com.bitso.exceptions.BitsoServerException;
+
+/**
+ * Fetches order book snapshots on a background thread, so books that fall out of sync never
+ * block the websocket thread on a REST request. Snapshots passed to {@link Callback}s are applied
+ * while holding the book's monitor, which callers must also hold while applying diffs;
+ * {@link FetchCallback}s apply them on their own terms.
+ *
+ * After a failed fetch, requests for that book are ignored for a backoff that doubles with every
+ * consecutive failure, so a failing endpoint isn't hit again on every diff that arrives. Failures
+ * are counted and the latest one is kept for the owner to report.
+ */
+class BitsoSnapshotLoader {
+    interface Callback {
+        /** Called holding the book's monitor, after the snapshot was applied. */
+        void onSnapshotApplied(BitsoLiveOrderBook book);
+    }
+
+    interface FetchCallback {
+        /** Called on the loader thread with a snapshot the callback must apply itself. */
+        void onSnapshot(String book, BitsoOrderBook snapshot);
+    }
+
+    static final long INITIAL_BACKOFF = 500;
+    static final long MAX_BACKOFF = 30 * 1000;
+
+    private final Bitso mBitso;
+    private final Set<String> mInFlight;
+    // book -> (consecutive failures, earliest time of the next fetch)
+    private final ConcurrentHashMap<String, long[]> mBackoff;
+    private final long mInitialBackoff;
+    private final long mMaxBackoff;
+    private final ExecutorService mExecutor;
+    private final AtomicLong mFailures;
+    private volatile Exception mLastFailure;
+
+    /**
+     * @param bitso Used to fetch the snapshots, null to never fetch any.
+     */
+    BitsoSnapshotLoader(Bitso bitso) {
+        this(bitso, INITIAL_BACKOFF, MAX_BACKOFF);
+    }
+
+    /**
+     * @param bitso Used to fetch the snapshots, null to never fetch any.
+     * @param initialBackoff Milliseconds requests are ignored after the first failed fetch of a book.
+     * @param maxBackoff Upper bound of the backoff, in milliseconds.
+     */
+    BitsoSnapshotLoader(Bitso bitso, long initialBackoff, long maxBackoff) {
+        mBitso = bitso;
+        mInFlight = ConcurrentHashMap.newKeySet();
+        mBackoff = new ConcurrentHashMap<String, long[]>();
+        mInitialBackoff = initialBackoff;
+        mMaxBackoff = maxBackoff;
+        mFailures = new AtomicLong();
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "bitso-book-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /** Fetches and applies a snapshot, unless one is already being fetched for the book. */
+    void request(final BitsoLiveOrderBook book, final Callback callback) {
+        fetch(book.getBook(), new FetchCallback() {
+            public void onSnapshot(String name, BitsoOrderBook snapshot) {
+                synchronized (book) {
+                    book.applySnapshot(snapshot);
+                    callback.onSnapshotApplied(book);
+                }
+            }
+        });
+    }
+
+    /** Fetches a snapshot, unless one is already being fetched for the book or the book is
+     * backing off after a failure.
+     */
+    void fetch(final String book, final FetchCallback callback) {
+        if (mBitso == null || isBackingOff(book) || !mInFlight.add(book)) {
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            public void run() {
+                try {
+                    BitsoOrderBook snapshot = mBitso.getOrderBook(book, false);
+                    mBackoff.remove(book);
+                    callback.onSnapshot(book, snapshot);
+                } catch (BitsoAPIException | BitsoPayloadException | BitsoServerException e) {
+                    mLastFailure = e;
+                    mFailures.incrementAndGet();
+                    backOff(book);
+                } finally {
+                    mInFlight.remove(book);
+                }
+            }
+        });
+    }
+
+    private boolean isBackingOff(String book) {
+        long[] backoff = mBackoff.get(book);
+        return backoff != null && System.currentTimeMillis() < backoff[1];
+    }
+
+    /** Only called from the loader thread. */
+    private void backOff(String book) {
+        long[] previous = mBackoff.get(book);
+        long failures = (previous != null) ? previous[0] + 1 : 1;
+        long delay = mInitialBackoff << Math.min(failures - 1, 30);
+        if (delay <= 0 || delay > mMaxBackoff) {
+            delay = mMaxBackoff;
+        }
+        mBackoff.put(book, new long[] { failures, System.currentTimeMillis() + delay });
+    }
+
+    /** Number of snapshot fetches that failed. */
+    long getFailures() {
+        return mFailures.get();
+    }
+
+    /** Why the latest failed fetch failed, null if none did. */
+    Exception getLastFailure() {
+        return mLastFailure;
+    }
+
+    void close() {
+        mExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,73 @@
+package com.bitso.orderbook;
+
+import java.math.BigDecimal;
+
+/**
+ * Best bid and ask of a book at one sequence number. Prices and amounts are null when the side
+ * is empty or the book is out of sync.
+ */
+public class BitsoTopOfBook {
+    private final String mBook;
+    private final int mSequence;
+    private final BigDecimal mBidPrice;
+    private final BigDecimal mBidAmount;
+    private final BigDecimal mAskPrice;
+    private final BigDecimal mAskAmount;
+    private final long mTimestamp;
+
+    BitsoTopOfBook(String book, int sequence, BitsoPriceLevel bid, BitsoPriceLevel ask) {
+        mBook = book;
+        mSequence = sequence;
+        mBidPrice = (bid != null) ? bid.getPrice() : null;
+        mBidAmount = (bid != null) ? bid.getAmount() : null;
+        mAskPrice = (ask != null) ? ask.getPrice() : null;
+        mAskAmount = (ask != null) ? ask.getAmount() : null;
+        mTimestamp = System.currentTimeMillis();
+    }
+
+    public String getBook() {
+        return mBook;
+    }
+
+    public int getSequence() {
+        return mSequence;
+    }
+
+    public BigDecimal getBidPrice() {
+        return mBidPrice;
+    }
+
+    public BigDecimal getBidAmount() {
+        return mBidAmount;
+    }
+
+    public BigDecimal getAskPrice() {
+        return mAskPrice;
+    }
+
+    public BigDecimal getAskAmount() {
+        return mAskAmount;
+    }
+
+    /** Epoch milliseconds when the change was detected. */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /** True if best prices or amounts differ from another top of book. */
+    public boolean differsFrom(BitsoTopOfBook other) {
+        return other == null
+                || !equal(mBidPrice, other.mBidPrice) || !equal(mBidAmount, other.mBidAmount)
+                || !equal(mAskPrice, other.mAskPrice) || !equal(mAskAmount, other.mAskAmount);
+    }
+
+    private static boolean equal(BigDecimal a, BigDecimal b) {
+        return (a == null) ? b == null : (b != null && a.compareTo(b) == 0);
+    }
+
+    @Override
+    public String toString() {
+        return mBook + "#" + mSequence + " " + mBidAmount + " @ " + mBidPrice + " / " + mAskAmount + " @ "
+                + mAskPrice;
+    }
+}
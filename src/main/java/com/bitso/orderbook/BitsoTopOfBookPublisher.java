@@ -0,0 +1,175 @@
+package com.bitso.orderbook;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.bitso.Bitso;
+import com.bitso.BitsoOrderBook;
+import com.bitso.websockets.BitsoStreamAdapter;
+import com.bitso.websockets.BitsoStreamDiffOrders;
+
+/**
+ * Maintains every book of a diff-orders stream and publishes its best bid and ask only when the
+ * price or amount of either changes.
+ *
+ * Changes are delivered to the {@link Listener} on a dedicated thread and are conflated per
+ * book: while the listener is busy, newer changes of a book replace the one waiting to be
+ * delivered, so a slow listener always receives the latest state and never falls behind.
+ *
+ * Books out of sync, on start or after a sequence gap, are snapshotted from
+ * {@code getOrderBook(book, false)} on a background thread while their diffs are buffered.
+ */
+public class BitsoTopOfBookPublisher extends BitsoStreamAdapter {
+    /** Receives top of book changes. */
+    public interface Listener {
+        void onTopOfBook(BitsoTopOfBook topOfBook);
+    }
+
+    private final Listener mListener;
+    private final ConcurrentHashMap<String, BitsoLiveOrderBook> mBooks;
+    private final ConcurrentHashMap<String, BitsoTopOfBook> mLatest;
+    private final ConcurrentHashMap<String, BitsoTopOfBook> mPending;
+    private final LinkedBlockingQueue<String> mDirtyBooks;
+    private final BitsoSnapshotLoader mSnapshotLoader;
+    private final BitsoSnapshotLoader.Callback mSnapshotCallback;
+    private final Thread mDeliveryThread;
+    private final AtomicLong mPublished;
+    private final AtomicLong mDelivered;
+
+    /**
+     * @param bitso Used to snapshot books, null if snapshots are applied by the caller with
+     * {@link #applySnapshot(String, BitsoOrderBook)}.
+     * @param listener Receives the changes on the publisher's delivery thread.
+     */
+    public BitsoTopOfBookPublisher(Bitso bitso, Listener listener) {
+        mListener = listener;
+        mBooks = new ConcurrentHashMap<String, BitsoLiveOrderBook>();
+        mLatest = new ConcurrentHashMap<String, BitsoTopOfBook>();
+        mPending = new ConcurrentHashMap<String, BitsoTopOfBook>();
+        mDirtyBooks = new LinkedBlockingQueue<String>();
+        mSnapshotLoader = new BitsoSnapshotLoader(bitso);
+        mSnapshotCallback = new BitsoSnapshotLoader.Callback() {
+            public void onSnapshotApplied(BitsoLiveOrderBook book) {
+                publishIfChanged(book);
+            }
+        };
+        mPublished = new AtomicLong();
+        mDelivered = new AtomicLong();
+        mDeliveryThread = new Thread(new Runnable() {
+            public void run() {
+                deliver();
+            }
+        }, "bitso-top-of-book");
+        mDeliveryThread.setDaemon(true);
+        mDeliveryThread.start();
+    }
+
+    @Override
+    public void onDiffOrders(BitsoStreamDiffOrders diffOrders) {
+        BitsoLiveOrderBook book = getOrderBook(diffOrders.getBitsoBook());
+        synchronized (book) {
+            if (book.applyDiff(diffOrders)) {
+                publishIfChanged(book);
+            } else {
+                mSnapshotLoader.request(book, mSnapshotCallback);
+            }
+        }
+    }
+
+    @Override
+    public void onConnectionChanged(boolean connected) {
+        if (!connected) {
+            // Diffs missed while disconnected can't be recovered
+            for (BitsoLiveOrderBook book : mBooks.values()) {
+                synchronized (book) {
+                    book.clear();
+                    publishIfChanged(book);
+                }
+            }
+        }
+    }
+
+    /** Applies a snapshot fetched by the caller. */
+    public void applySnapshot(String book, BitsoOrderBook snapshot) {
+        BitsoLiveOrderBook orderBook = getOrderBook(book);
+        synchronized (orderBook) {
+            orderBook.applySnapshot(snapshot);
+            publishIfChanged(orderBook);
+        }
+    }
+
+    /** The latest top of book, without waiting for its delivery.
+     * @return null if the book hasn't been seen.
+     */
+    public BitsoTopOfBook getTopOfBook(String book) {
+        return mLatest.get(book);
+    }
+
+    /** Number of top of book changes detected. */
+    public long getPublished() {
+        return mPublished.get();
+    }
+
+    /** Number of changes handed to the listener. The rest were conflated. */
+    public long getDelivered() {
+        return mDelivered.get();
+    }
+
+    /** Number of order book snapshot fetches that failed. */
+    public long getSnapshotFailures() {
+        return mSnapshotLoader.getFailures();
+    }
+
+    /** Why the latest failed snapshot fetch failed, null if none did. */
+    public Exception getLastSnapshotFailure() {
+        return mSnapshotLoader.getLastFailure();
+    }
+
+    /** Stops the delivery and snapshot threads. */
+    public void close() {
+        mDeliveryThread.interrupt();
+        mSnapshotLoader.close();
+    }
+
+    private BitsoLiveOrderBook getOrderBook(String book) {
+        BitsoLiveOrderBook orderBook = mBooks.get(book);
+        if (orderBook == null) {
+            orderBook = new BitsoLiveOrderBook(book);
+            BitsoLiveOrderBook existing = mBooks.putIfAbsent(book, orderBook);
+            if (existing != null) {
+                orderBook = existing;
+            }
+        }
+        return orderBook;
+    }
+
+    private void publishIfChanged(BitsoLiveOrderBook book) {
+        BitsoTopOfBook topOfBook = new BitsoTopOfBook(book.getBook(), book.getSequence(), book.getBestBid(),
+                book.getBestAsk());
+        if (!topOfBook.differsFrom(mLatest.get(book.getBook()))) {
+            return;
+        }
+        mLatest.put(book.getBook(), topOfBook);
+        mPublished.incrementAndGet();
+        // Only queue the book if it isn't already waiting, otherwise just replace its state
+        if (mPending.put(book.getBook(), topOfBook) == null) {
+            mDirtyBooks.offer(book.getBook());
+        }
+    }
+
+    private void deliver() {
+        try {
+            while (true) {
+                String book = mDirtyBooks.take();
+                BitsoTopOfBook topOfBook = mPending.remove(book);
+                if (topOfBook != null && mListener != null) {
+                    mDelivered.incrementAndGet();
+                    mListener.onTopOfBook(topOfBook);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
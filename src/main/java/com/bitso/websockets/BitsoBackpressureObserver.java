@@ -0,0 +1,323 @@
+package com.bitso.websockets;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Isolates a subscriber from the websocket with a bounded queue and a delivery thread of its
+ * own, so a slow subscriber neither stalls the websocket thread and the other observers nor
+ * buffers without limit.
+ *
+ * When the queue is full the {@link BitsoBackpressurePolicy} decides what gives. Connection
+ * changes are never dropped or conflated, and only the snapshot channel, orders, is ever
+ * conflated.
+ *
+ * <pre>
+ * webSocket.addObserver(new BitsoBackpressureObserver(observer, BitsoBackpressurePolicy.DROP_OLDEST,
+ *         1024));
+ * </pre>
+ */
+public class BitsoBackpressureObserver implements Observer {
+    private final Observer mDelegate;
+    private final BitsoBackpressurePolicy mPolicy;
+    private final int mCapacity;
+    private final ArrayDeque<Entry> mQueue;
+    private final Map<String, Entry> mPendingByKey;
+    private final ReentrantLock mLock;
+    private final Condition mNotEmpty;
+    private final Condition mNotFull;
+    private final Thread mDeliveryThread;
+    private volatile Observable mObservable;
+    private volatile boolean mDisconnected;
+    private boolean mClosed;
+    private long mReceived;
+    private long mDelivered;
+    private long mDropped;
+    private long mConflated;
+    private volatile long mFailures;
+    private volatile RuntimeException mLastFailure;
+
+    /**
+     * @param delegate Subscriber receiving the messages on this observer's delivery thread.
+     * @param capacity Maximum number of queued messages.
+     */
+    public BitsoBackpressureObserver(Observer delegate, BitsoBackpressurePolicy policy, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        mDelegate = delegate;
+        mPolicy = policy;
+        mCapacity = capacity;
+        mQueue = new ArrayDeque<Entry>(capacity);
+        mPendingByKey = new HashMap<String, Entry>();
+        mLock = new ReentrantLock();
+        mNotEmpty = mLock.newCondition();
+        mNotFull = mLock.newCondition();
+        mDeliveryThread = new Thread(new Runnable() {
+            public void run() {
+                deliver();
+            }
+        }, "bitso-subscriber");
+        mDeliveryThread.setDaemon(true);
+        mDeliveryThread.start();
+    }
+
+    public void update(Observable o, Object arg) {
+        mObservable = o;
+        mLock.lock();
+        try {
+            if (mDisconnected || mClosed) {
+                mDropped++;
+                return;
+            }
+            mReceived++;
+            String key = (mPolicy == BitsoBackpressurePolicy.CONFLATE_LATEST) ? conflationKey(arg) : null;
+            if (key != null) {
+                Entry pending = mPendingByKey.get(key);
+                if (pending != null) {
+                    pending.mMessage = arg;
+                    mConflated++;
+                    return;
+                }
+            }
+            if (mQueue.size() >= mCapacity && !makeRoom(o)) {
+                return;
+            }
+            Entry entry = new Entry(arg, key);
+            mQueue.addLast(entry);
+            if (key != null) {
+                mPendingByKey.put(key, entry);
+            }
+            mNotEmpty.signal();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public BitsoBackpressurePolicy getPolicy() {
+        return mPolicy;
+    }
+
+    /** Messages received from the websocket, excluding those after a disconnect. */
+    public long getReceived() {
+        mLock.lock();
+        try {
+            return mReceived;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /** Messages handed to the subscriber. */
+    public long getDelivered() {
+        mLock.lock();
+        try {
+            return mDelivered;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /** Messages discarded because the queue was full or the subscriber was disconnected. */
+    public long getDropped() {
+        mLock.lock();
+        try {
+            return mDropped;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /** Messages replaced by a newer one of the same channel and book. */
+    public long getConflated() {
+        mLock.lock();
+        try {
+            return mConflated;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /** Messages waiting for the subscriber. */
+    public int getQueued() {
+        mLock.lock();
+        try {
+            return mQueue.size();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /** Messages the subscriber threw on. */
+    public long getFailures() {
+        return mFailures;
+    }
+
+    /** Latest exception thrown by the subscriber, null if none. */
+    public RuntimeException getLastFailure() {
+        return mLastFailure;
+    }
+
+    /** Whether the {@link BitsoBackpressurePolicy#DISCONNECT} policy removed the subscriber. */
+    public boolean isDisconnected() {
+        return mDisconnected;
+    }
+
+    /**
+     * Stops observing and stops the delivery thread. Queued messages are discarded, and a
+     * producer blocked by the {@link BitsoBackpressurePolicy#BLOCK} policy drops its message
+     * and returns.
+     */
+    public void close() {
+        Observable observable = mObservable;
+        if (observable != null) {
+            observable.deleteObserver(this);
+        }
+        mLock.lock();
+        try {
+            mClosed = true;
+            mNotFull.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+        mDeliveryThread.interrupt();
+    }
+
+    /**
+     * Called with the lock held and the queue full.
+     * @return Whether the new message can be queued.
+     */
+    private boolean makeRoom(Observable o) {
+        switch (mPolicy) {
+            case BLOCK:
+                while (mQueue.size() >= mCapacity && !mClosed) {
+                    try {
+                        mNotFull.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        mDropped++;
+                        return false;
+                    }
+                }
+                if (mClosed) {
+                    mDropped++;
+                    return false;
+                }
+                return true;
+            case DISCONNECT:
+                mDisconnected = true;
+                mDropped++;
+                // Connection changes already queued are still delivered
+                Iterator<Entry> iterator = mQueue.iterator();
+                while (iterator.hasNext()) {
+                    if (!(iterator.next().mMessage instanceof Boolean)) {
+                        iterator.remove();
+                        mDropped++;
+                    }
+                }
+                mPendingByKey.clear();
+                if (o != null) {
+                    o.deleteObserver(this);
+                }
+                // Let the subscriber know it won't receive anything else
+                mQueue.addLast(new Entry(Boolean.FALSE, null));
+                mNotEmpty.signal();
+                return false;
+            default:
+                if (dropOldest()) {
+                    return true;
+                }
+                mDropped++;
+                return false;
+        }
+    }
+
+    private boolean dropOldest() {
+        Iterator<Entry> iterator = mQueue.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (!(entry.mMessage instanceof Boolean)) {
+                iterator.remove();
+                if (entry.mKey != null) {
+                    mPendingByKey.remove(entry.mKey);
+                }
+                mDropped++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void deliver() {
+        try {
+            while (true) {
+                Object message;
+                mLock.lockInterruptibly();
+                try {
+                    while (mQueue.isEmpty()) {
+                        mNotEmpty.await();
+                    }
+                    Entry entry = mQueue.pollFirst();
+                    if (entry.mKey != null) {
+                        mPendingByKey.remove(entry.mKey);
+                    }
+                    message = entry.mMessage;
+                    mDelivered++;
+                    mNotFull.signal();
+                } finally {
+                    mLock.unlock();
+                }
+                try {
+                    mDelegate.update(mObservable, message);
+                } catch (RuntimeException e) {
+                    // Only the delivery thread writes these
+                    mLastFailure = e;
+                    mFailures++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Channel and book of a snapshot message, null for messages that must not be conflated:
+     * anything without a book and every channel whose messages are not full snapshots.
+     */
+    static String conflationKey(Object message) {
+        if (message instanceof BitsoStreamUpdate) {
+            BitsoStreamUpdate update = (BitsoStreamUpdate) message;
+            if (update.getBitsoBook() == null || update.getBitsoChannel() != BitsoChannels.ORDERS) {
+                return null;
+            }
+            return update.getBitsoChannel() + ":" + update.getBitsoBook();
+        }
+        if (message instanceof String) {
+            String frame = (String) message;
+            String type = BitsoFrames.stringField(frame, "type");
+            String book = BitsoFrames.stringField(frame, "book");
+            if (book == null || !BitsoChannels.ORDERS.toString().equals(type)
+                    || BitsoFrames.isAction(frame)) {
+                return null;
+            }
+            return type + ":" + book;
+        }
+        return null;
+    }
+
+    private static class Entry {
+        private Object mMessage;
+        private final String mKey;
+
+        Entry(Object message, String key) {
+            mMessage = message;
+            mKey = key;
+        }
+    }
+}
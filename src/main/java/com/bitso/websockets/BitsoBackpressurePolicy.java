@@ -0,0 +1,21 @@
+package com.bitso.websockets;
+
+/**
+ * What a {@link BitsoBackpressureObserver} does with a message when its subscriber is too slow
+ * and its queue is full.
+ */
+public enum BitsoBackpressurePolicy {
+    /** Waits for room, slowing down the websocket thread and every other observer. */
+    BLOCK,
+    /** Drops the oldest queued message to make room. */
+    DROP_OLDEST,
+    /**
+     * Replaces a queued orders message of the same book with the newer one, so the subscriber
+     * only sees the latest snapshot of each book. Messages of other channels, whose messages
+     * can't replace each other, are queued like {@link #DROP_OLDEST} does. Drops the oldest
+     * message if the queue is still full.
+     */
+    CONFLATE_LATEST,
+    /** Stops observing the websocket and discards every queued message but connection changes. */
+    DISCONNECT
+}
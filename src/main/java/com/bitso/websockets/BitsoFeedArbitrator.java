@@ -0,0 +1,364 @@
+package com.bitso.websockets;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Merges redundant websocket connections subscribed to the same books into one stream, taking
+ * the first copy of every message and dropping the copies that arrive later. A hiccup on one
+ * socket then costs neither a gap nor latency, as long as another socket delivers.
+ *
+ * Diff-orders are identified by book and sequence and delivered in sequence order: a diff that
+ * arrives after a gap is held until another feed fills the gap, for at most a number of diffs or
+ * milliseconds, after which the gap is skipped. Trades are identified by book and the id of their
+ * first trade, and orders and processed orders by their content, and they are delivered in
+ * arrival order. Trades without an id are never deduplicated. An orders snapshot is a duplicate if
+ * another feed delivered the same one among the latest snapshots of the book; the same content
+ * again from the same feed is a new snapshot of a book that went back to an earlier state.
+ * Keep-alives are not forwarded.
+ *
+ * <pre>
+ * BitsoFeedArbitrator arbitrator = new BitsoFeedArbitrator(2);
+ * arbitrator.addListener(manager);
+ * primary.addObserver(arbitrator.getFeed(0));
+ * backup.addObserver(arbitrator.getFeed(1));
+ * </pre>
+ *
+ * For every feed it keeps how often it delivered a message first, and how far behind the first
+ * copy its duplicates arrive.
+ */
+public class BitsoFeedArbitrator {
+    private static final int RECENT_KEYS = 4096;
+    private static final int RECENT_ORDERS = 16;
+
+    private final Feed[] mFeeds;
+    private final BitsoStreamDispatcher mOutput;
+    private final Map<String, Book> mBooks;
+    private final LinkedHashMap<String, Long> mRecentKeys;
+    private int mMaxHeldDiffs;
+    private long mMaxHoldNanos;
+    private int mConnectedFeeds;
+    private long mSkippedGaps;
+
+    public BitsoFeedArbitrator(int feeds) {
+        if (feeds <= 0) {
+            throw new IllegalArgumentException("Invalid number of feeds: " + feeds);
+        }
+        mFeeds = new Feed[feeds];
+        for (int i = 0; i < feeds; i++) {
+            mFeeds[i] = new Feed(i);
+        }
+        mOutput = new BitsoStreamDispatcher();
+        mBooks = new HashMap<String, Book>();
+        mRecentKeys = new LinkedHashMap<String, Long>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > RECENT_KEYS;
+            }
+        };
+        mMaxHeldDiffs = 1000;
+        mMaxHoldNanos = TimeUnit.MILLISECONDS.toNanos(500);
+    }
+
+    /** Receives the merged stream, on the thread of the feed that delivered each message. */
+    public void addListener(BitsoStreamListener listener) {
+        mOutput.addListener(listener);
+    }
+
+    public void removeListener(BitsoStreamListener listener) {
+        mOutput.removeListener(listener);
+    }
+
+    /** The observer to add to the websocket of a feed. */
+    public Observer getFeed(int index) {
+        return mFeeds[index];
+    }
+
+    public int getFeedCount() {
+        return mFeeds.length;
+    }
+
+    /**
+     * How long a diff after a gap waits for another feed to fill it.
+     * @param maxHeldDiffs Diffs held per book before the gap is skipped.
+     * @param maxHoldMillis Time after which the gap is skipped, checked when diffs arrive.
+     */
+    public synchronized void setGapTolerance(int maxHeldDiffs, long maxHoldMillis) {
+        mMaxHeldDiffs = maxHeldDiffs;
+        mMaxHoldNanos = TimeUnit.MILLISECONDS.toNanos(maxHoldMillis);
+    }
+
+    /** Messages a feed delivered before any other. */
+    public synchronized long getWins(int feed) {
+        return mFeeds[feed].mWins;
+    }
+
+    /** Messages a feed delivered after another had. */
+    public synchronized long getDuplicates(int feed) {
+        return mFeeds[feed].mDuplicates;
+    }
+
+    /** Share of its messages a feed delivered first, from 0 to 1. */
+    public synchronized double getWinRate(int feed) {
+        long total = mFeeds[feed].mWins + mFeeds[feed].mDuplicates;
+        return (total == 0) ? 0 : (double) mFeeds[feed].mWins / total;
+    }
+
+    /** Microseconds between the first copy of a message and the duplicates of a feed. */
+    public BitsoLatencyHistogram getLag(int feed) {
+        return mFeeds[feed].mLag;
+    }
+
+    /** Diff-order gaps no feed filled in time. */
+    public synchronized long getSkippedGaps() {
+        return mSkippedGaps;
+    }
+
+    /** Delivers held diffs of every book, skipping their gaps. */
+    public synchronized void flush() {
+        for (Book book : mBooks.values()) {
+            while (!book.mHeld.isEmpty()) {
+                skipGap(book);
+            }
+        }
+    }
+
+    /** @param decoded The frame already decoded, null if it wasn't. */
+    private synchronized void onFrame(Feed feed, String frame, BitsoStreamUpdate decoded) {
+        if (BitsoFrames.isAction(frame)) {
+            return;
+        }
+        String type = BitsoFrames.stringField(frame, "type");
+        String bookName = BitsoFrames.stringField(frame, "book");
+        if (type == null || bookName == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        BitsoChannels channel = BitsoChannels.getBitsoChannel(type);
+        if (channel == BitsoChannels.DIFF_ORDERS) {
+            onDiffOrders(feed, frame, getBook(bookName), now);
+        } else if (channel == BitsoChannels.TRADES) {
+            long tradeId = BitsoFrames.longField(frame, "i");
+            if (tradeId < 0) {
+                // Nothing to tell copies apart by
+                feed.mWins++;
+                emit(frame);
+                return;
+            }
+            String key = bookName + ":" + tradeId;
+            Long first = mRecentKeys.get(key);
+            if (first != null) {
+                feed.duplicate(now - first);
+                return;
+            }
+            mRecentKeys.put(key, now);
+            feed.mWins++;
+            emit(frame);
+        } else if (channel == BitsoChannels.PROCESSED_ORDERS) {
+            String key = bookName + ":" + frame;
+            Long first = mRecentKeys.get(key);
+            if (first != null) {
+                feed.duplicate(now - first);
+                return;
+            }
+            mRecentKeys.put(key, now);
+            feed.mWins++;
+            if (decoded != null) {
+                mOutput.dispatch(decoded);
+            } else {
+                emit(frame);
+            }
+        } else if (channel == BitsoChannels.ORDERS) {
+            Book book = getBook(bookName);
+            Snapshot snapshot = book.mRecentOrders.get(frame);
+            if (snapshot != null && !snapshot.mFeeds.get(feed.mIndex)) {
+                snapshot.mFeeds.set(feed.mIndex);
+                feed.duplicate(now - snapshot.mFirstAt);
+                return;
+            }
+            // Reinserted, so it counts as the latest snapshot again
+            book.mRecentOrders.remove(frame);
+            book.mRecentOrders.put(frame, new Snapshot(feed.mIndex, now));
+            feed.mWins++;
+            emit(frame);
+        }
+    }
+
+    private void onDiffOrders(Feed feed, String frame, Book book, long now) {
+        long sequence = BitsoFrames.longField(frame, "sequence");
+        if (sequence < 0) {
+            return;
+        }
+        if ((book.mLastSequence >= 0 && sequence <= book.mLastSequence) || book.mHeld.containsKey(sequence)) {
+            Long first = book.firstArrival(sequence);
+            feed.duplicate((first != null) ? now - first : 0);
+            return;
+        }
+        feed.mWins++;
+        book.recordArrival(sequence, now);
+        if (book.mLastSequence < 0 || sequence == book.mLastSequence + 1) {
+            book.mLastSequence = sequence;
+            emit(frame);
+            releaseHeld(book);
+            return;
+        }
+        // A gap, wait for another feed to fill it
+        book.mHeld.put(sequence, frame);
+        if (book.mHeld.size() == 1) {
+            book.mHoldStart = now;
+        }
+        while (!book.mHeld.isEmpty()
+                && (book.mHeld.size() > mMaxHeldDiffs || now - book.mHoldStart >= mMaxHoldNanos)) {
+            skipGap(book);
+        }
+    }
+
+    private void releaseHeld(Book book) {
+        while (!book.mHeld.isEmpty() && book.mHeld.firstKey() == book.mLastSequence + 1) {
+            book.mLastSequence = book.mHeld.firstKey();
+            emit(book.mHeld.pollFirstEntry().getValue());
+        }
+        book.mHoldStart = System.nanoTime();
+    }
+
+    private void skipGap(Book book) {
+        mSkippedGaps++;
+        Map.Entry<Long, String> next = book.mHeld.pollFirstEntry();
+        book.mLastSequence = next.getKey();
+        emit(next.getValue());
+        releaseHeld(book);
+    }
+
+    private synchronized void onConnectionChanged(Feed feed, boolean connected) {
+        if (feed.mConnected == connected) {
+            return;
+        }
+        feed.mConnected = connected;
+        mConnectedFeeds += connected ? 1 : -1;
+        // Only report when the first feed connects or the last one disconnects
+        if (connected && mConnectedFeeds == 1) {
+            mOutput.update(null, Boolean.TRUE);
+        } else if (!connected && mConnectedFeeds == 0) {
+            // Sequences after reconnecting can't be compared with those before
+            flush();
+            for (Book book : mBooks.values()) {
+                book.mLastSequence = -1;
+            }
+            mOutput.update(null, Boolean.FALSE);
+        }
+    }
+
+    private void emit(String frame) {
+        BitsoStreamUpdate update;
+        try {
+            update = BitsoStreamDispatcher.decode(new JSONObject(frame));
+        } catch (JSONException e) {
+            return;
+        }
+        if (update != null) {
+            mOutput.dispatch(update);
+        }
+    }
+
+    private Book getBook(String name) {
+        Book book = mBooks.get(name);
+        if (book == null) {
+            book = new Book();
+            mBooks.put(name, book);
+        }
+        return book;
+    }
+
+    private class Feed implements Observer {
+        private final int mIndex;
+        private final BitsoLatencyHistogram mLag;
+        private boolean mConnected;
+        private long mWins;
+        private long mDuplicates;
+
+        Feed(int index) {
+            mIndex = index;
+            mLag = new BitsoLatencyHistogram();
+        }
+
+        public void update(Observable o, Object arg) {
+            if (arg instanceof String) {
+                onFrame(this, (String) arg, null);
+            } else if (arg instanceof BitsoStreamProcessedOrders) {
+                BitsoStreamProcessedOrders processedOrders = (BitsoStreamProcessedOrders) arg;
+                if (processedOrders.getFrame() != null) {
+                    onFrame(this, processedOrders.getFrame(), processedOrders);
+                }
+            } else if (arg instanceof Boolean) {
+                onConnectionChanged(this, (Boolean) arg);
+            }
+        }
+
+        void duplicate(long lagNanos) {
+            mDuplicates++;
+            mLag.record(TimeUnit.NANOSECONDS.toMicros(lagNanos));
+        }
+    }
+
+    private static class Book {
+        /** Arrival times of the latest sequences, indexed by sequence. */
+        private final long[] mArrivalSequences;
+        private final long[] mArrivalTimes;
+        private final TreeMap<Long, String> mHeld;
+        private long mLastSequence;
+        private long mHoldStart;
+        /** Latest orders snapshots, oldest first. */
+        private final LinkedHashMap<String, Snapshot> mRecentOrders;
+
+        Book() {
+            mArrivalSequences = new long[1024];
+            mArrivalTimes = new long[1024];
+            Arrays.fill(mArrivalSequences, -1);
+            mHeld = new TreeMap<Long, String>();
+            mLastSequence = -1;
+            mRecentOrders = new LinkedHashMap<String, Snapshot>() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+                    return size() > RECENT_ORDERS;
+                }
+            };
+        }
+
+        void recordArrival(long sequence, long now) {
+            int slot = (int) (sequence & (mArrivalSequences.length - 1));
+            mArrivalSequences[slot] = sequence;
+            mArrivalTimes[slot] = now;
+        }
+
+        Long firstArrival(long sequence) {
+            int slot = (int) (sequence & (mArrivalSequences.length - 1));
+            return (mArrivalSequences[slot] == sequence) ? Long.valueOf(mArrivalTimes[slot]) : null;
+        }
+    }
+
+    /** An orders snapshot emitted recently and the feeds that delivered it since. */
+    private static class Snapshot {
+        private final BitSet mFeeds;
+        private final long mFirstAt;
+
+        Snapshot(int feed, long firstAt) {
+            mFeeds = new BitSet();
+            mFeeds.set(feed);
+            mFirstAt = firstAt;
+        }
+    }
+}
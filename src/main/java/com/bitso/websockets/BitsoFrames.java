@@ -0,0 +1,52 @@
+package com.bitso.websockets;
+
+/** Reads fields of raw websocket frames without parsing them. */
+final class BitsoFrames {
+    private BitsoFrames() {
+    }
+
+    /**
+     * Value of a top level string field such as {@code type} or {@code book}, assuming the
+     * compact {@code "name":"value"} layout the exchange sends.
+     * @return null if the field isn't found.
+     */
+    static String stringField(String frame, String name) {
+        String prefix = "\"" + name + "\":\"";
+        int start = frame.indexOf(prefix);
+        if (start < 0) {
+            return null;
+        }
+        start += prefix.length();
+        int end = frame.indexOf('"', start);
+        return (end < 0) ? null : frame.substring(start, end);
+    }
+
+    /**
+     * Value of the first numeric field with the given name, such as {@code sequence} or the
+     * {@code i} of the first trade.
+     * @return -1 if the field isn't found.
+     */
+    static long longField(String frame, String name) {
+        String prefix = "\"" + name + "\":";
+        int start = frame.indexOf(prefix);
+        if (start < 0) {
+            return -1;
+        }
+        long value = 0;
+        boolean digits = false;
+        for (int i = start + prefix.length(); i < frame.length(); i++) {
+            char c = frame.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+            digits = true;
+        }
+        return digits ? value : -1;
+    }
+
+    /** Whether a frame is a reply to a subscription rather than a channel update. */
+    static boolean isAction(String frame) {
+        return frame.indexOf("\"action\"") >= 0;
+    }
+}
@@ -0,0 +1,201 @@
+package com.bitso.websockets;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.bitso.websockets.BitsoStreamTrades.TradePayload;
+
+/**
+ * Tells a quiet market from a dead socket. Every frame, data or {@code ka}, counts as a sign of
+ * life; after too long without one the connection is declared stale, the {@link Listener} is
+ * told, and the websocket is reconnected and resubscribed.
+ *
+ * It also keeps a histogram of the gaps between frames and one of the lag between the exchange
+ * timestamp of trades and their receipt, both in milliseconds, which show a degraded feed well
+ * before it goes silent.
+ *
+ * <pre>
+ * BitsoHeartbeatMonitor monitor = new BitsoHeartbeatMonitor(webSocket, 15_000, listener);
+ * dispatcher.addListener(monitor);
+ * webSocket.subscribeBitsoChannel(BitsoChannels.KA.toString());
+ * </pre>
+ *
+ * Close the monitor before closing the websocket, otherwise it will reconnect it.
+ */
+public class BitsoHeartbeatMonitor extends BitsoStreamAdapter {
+    /** Receives stale connection events on the monitor's thread. */
+    public interface Listener {
+        /** @param silenceMillis Time since the last frame. */
+        void onStale(long silenceMillis);
+    }
+
+    private final BitsoWebSocket mWebSocket;
+    private final long mStaleAfterMillis;
+    private final Listener mListener;
+    private final BitsoLatencyHistogram mGaps;
+    private final BitsoLatencyHistogram mLag;
+    private final ScheduledExecutorService mScheduler;
+    private volatile long mLastFrameNanos;
+    private volatile boolean mStarted;
+    private volatile long mStaleEvents;
+    private volatile long mReconnectFailures;
+    private volatile Exception mLastReconnectFailure;
+
+    /**
+     * @param webSocket Reconnected when stale, null to only report.
+     * @param staleAfterMillis Silence after which the connection is stale. Bitso sends a
+     * {@code ka} every few seconds to subscribers of that channel.
+     * @param listener Told about stale connections, may be null.
+     */
+    public BitsoHeartbeatMonitor(BitsoWebSocket webSocket, long staleAfterMillis, Listener listener) {
+        if (staleAfterMillis <= 0) {
+            throw new IllegalArgumentException("Invalid stale threshold: " + staleAfterMillis);
+        }
+        mWebSocket = webSocket;
+        mStaleAfterMillis = staleAfterMillis;
+        mListener = listener;
+        mGaps = new BitsoLatencyHistogram();
+        mLag = new BitsoLatencyHistogram();
+        mScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "bitso-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(staleAfterMillis / 4, 1);
+        mScheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                checkStale();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onConnectionChanged(boolean connected) {
+        if (connected) {
+            // Gaps across a reconnect say nothing about the feed
+            mLastFrameNanos = System.nanoTime();
+            mStarted = true;
+        }
+    }
+
+    @Override
+    public void onKeepAlive() {
+        frameReceived();
+    }
+
+    @Override
+    public void onTrades(BitsoStreamTrades trades) {
+        long now = frameReceived();
+        for (TradePayload trade : trades.getPayload()) {
+            if (trade.getTimestamp() > 0) {
+                mLag.record(now - trade.getTimestamp());
+            }
+        }
+    }
+
+    @Override
+    public void onDiffOrders(BitsoStreamDiffOrders diffOrders) {
+        // The frame has no publication time and order dates are creation times, so no lag
+        frameReceived();
+    }
+
+    @Override
+    public void onOrders(BitsoStreamOrders orders) {
+        // Order dates are creation times, not publication times, so no lag is measured
+        frameReceived();
+    }
+
+    @Override
+    public void onProcessedOrders(BitsoStreamProcessedOrders processedOrders) {
+        frameReceived();
+    }
+
+    /**
+     * Declares the connection stale if it has been silent for too long. Runs periodically on
+     * the monitor's thread.
+     * @return Whether the connection was stale.
+     */
+    public boolean checkStale() {
+        if (!mStarted) {
+            return false;
+        }
+        long silenceMillis = getSilenceMillis();
+        if (silenceMillis < mStaleAfterMillis) {
+            return false;
+        }
+        mStaleEvents++;
+        // Wait a full threshold before declaring it stale again
+        mLastFrameNanos = System.nanoTime();
+        if (mListener != null) {
+            mListener.onStale(silenceMillis);
+        }
+        try {
+            reconnect();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Netty rethrows checked connect failures undeclared. Letting one escape would cancel
+            // every later check, so it is counted and the next check retries.
+            mLastReconnectFailure = e;
+            mReconnectFailures++;
+        }
+        return true;
+    }
+
+    /** Reconnects the websocket after it went stale, if there is one. */
+    void reconnect() throws InterruptedException {
+        if (mWebSocket != null) {
+            mWebSocket.reconnect();
+        }
+    }
+
+    /** Time since the last frame, or since connecting. */
+    public long getSilenceMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mLastFrameNanos);
+    }
+
+    /** Number of times the connection was declared stale. */
+    public long getStaleEvents() {
+        return mStaleEvents;
+    }
+
+    /** Number of reconnects after a stale connection that failed. */
+    public long getReconnectFailures() {
+        return mReconnectFailures;
+    }
+
+    /** Latest reconnect failure, null if none. */
+    public Exception getLastReconnectFailure() {
+        return mLastReconnectFailure;
+    }
+
+    /** Milliseconds between consecutive frames. */
+    public BitsoLatencyHistogram getGaps() {
+        return mGaps;
+    }
+
+    /** Milliseconds from the exchange timestamp of trades to their receipt. */
+    public BitsoLatencyHistogram getLag() {
+        return mLag;
+    }
+
+    /** Stops monitoring. */
+    public void close() {
+        mScheduler.shutdownNow();
+    }
+
+    /** @return The current time in milliseconds since the epoch. */
+    private long frameReceived() {
+        long nanos = System.nanoTime();
+        if (mStarted) {
+            mGaps.record(TimeUnit.NANOSECONDS.toMillis(nanos - mLastFrameNanos));
+        }
+        mLastFrameNanos = nanos;
+        mStarted = true;
+        return System.currentTimeMillis();
+    }
+}
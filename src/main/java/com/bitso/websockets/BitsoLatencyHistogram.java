@@ -0,0 +1,84 @@
+package com.bitso.websockets;
+
+/**
+ * A histogram of non-negative durations with power of two buckets: bucket 0 counts zeros and
+ * bucket i counts values from 2^(i-1) to 2^i - 1. Recording is constant time and allocation
+ * free; percentiles are accurate to within a factor of two.
+ */
+public class BitsoLatencyHistogram {
+    private static final int BUCKETS = 64;
+
+    private final long[] mCounts;
+    private long mCount;
+    private long mSum;
+    private long mMax;
+
+    public BitsoLatencyHistogram() {
+        mCounts = new long[BUCKETS];
+    }
+
+    /** Records a value, negative values count as zero. */
+    public synchronized void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        mCounts[BUCKETS - Long.numberOfLeadingZeros(value)]++;
+        mCount++;
+        mSum += value;
+        if (value > mMax) {
+            mMax = value;
+        }
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    public synchronized double getMean() {
+        return (mCount == 0) ? 0 : (double) mSum / mCount;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile, capped at the maximum recorded.
+     * @param percentile From 0 to 100.
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(mCount * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts[i];
+            if (seen >= rank && seen > 0) {
+                long upper = (i == 0) ? 0 : (i == BUCKETS - 1) ? Long.MAX_VALUE : (1L << i) - 1;
+                return Math.min(upper, mMax);
+            }
+        }
+        return mMax;
+    }
+
+    /** Number of values in a bucket, see the class description for its bounds. */
+    public synchronized long getBucketCount(int bucket) {
+        return mCounts[bucket];
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts[i] = 0;
+        }
+        mCount = 0;
+        mSum = 0;
+        mMax = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "count=" + mCount + " mean=" + getMean() + " p50=" + getPercentile(50) + " p99="
+                + getPercentile(99) + " max=" + mMax;
+    }
+}
@@ -0,0 +1,219 @@
+package com.bitso.websockets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, preallocated queue between one producer, normally the Netty event loop, and any
+ * number of consumer threads, in the style of the LMAX Disruptor.
+ *
+ * Messages are written into a fixed ring of slots and published by advancing a sequence
+ * number. Every {@link Handler} runs on its own thread, sees every message in order, and tracks
+ * its own sequence; it drains everything published since its last pass as one batch. The
+ * producer only waits when the slowest handler is a full ring behind.
+ *
+ * {@link #publish(Object)} must only be called by one thread at a time, between {@link #start()}
+ * and {@link #halt()}. A halted ring can't be started again.
+ *
+ * With a single handler, slots are cleared once handled, so the ring doesn't keep processed
+ * messages reachable. With several, a slot is only released when the producer overwrites it, so
+ * up to a full ring of processed messages stays referenced.
+ */
+public class BitsoRingBuffer {
+    /** Processes messages on the thread of its consumer. */
+    public interface Handler {
+        /**
+         * @param endOfBatch True for the last message currently available, a good moment to
+         * flush work buffered across the batch.
+         */
+        void onEvent(Object message, long sequence, boolean endOfBatch);
+    }
+
+    private final Object[] mMessages;
+    private final int mMask;
+    private final BitsoWaitStrategy mWaitStrategy;
+    private final AtomicLong mCursor;
+    private final List<Consumer> mConsumers;
+    private volatile boolean mRunning;
+    private long mCachedGatingSequence;
+    private final AtomicLong mFailures;
+    private volatile RuntimeException mLastFailure;
+
+    /**
+     * @param capacity Number of slots, a power of two.
+     * @param waitStrategy How consumers wait for messages and the producer for room.
+     */
+    public BitsoRingBuffer(int capacity, BitsoWaitStrategy waitStrategy) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        mMessages = new Object[capacity];
+        mMask = capacity - 1;
+        mWaitStrategy = waitStrategy;
+        mCursor = new AtomicLong(-1);
+        mConsumers = new ArrayList<Consumer>();
+        mCachedGatingSequence = -1;
+        mFailures = new AtomicLong();
+    }
+
+    /** Adds a handler with its own consumer thread. Must be called before {@link #start()}. */
+    public void addHandler(Handler handler, String threadName) {
+        if (mRunning) {
+            throw new IllegalStateException("Handlers must be added before starting");
+        }
+        mConsumers.add(new Consumer(handler, threadName));
+    }
+
+    public void start() {
+        mRunning = true;
+        for (Consumer consumer : mConsumers) {
+            consumer.mThread.start();
+        }
+    }
+
+    /**
+     * Publishes a message, waiting for room if the slowest handler is a full ring behind.
+     * @throws IllegalStateException If the ring isn't running, or stops running or loses a
+     * consumer thread while waiting for room. The message is not published.
+     */
+    public void publish(Object message) {
+        if (!mRunning) {
+            throw new IllegalStateException("Ring buffer is not running");
+        }
+        long next = mCursor.get() + 1;
+        long wrapPoint = next - mMessages.length;
+        if (wrapPoint > mCachedGatingSequence) {
+            int attempt = 0;
+            long gatingSequence;
+            while (wrapPoint > (gatingSequence = minimumSequence(next - 1))) {
+                if (!mRunning) {
+                    throw new IllegalStateException("Ring buffer halted while waiting for room");
+                }
+                if (!consumersAlive()) {
+                    throw new IllegalStateException("A ring buffer consumer died, the ring is full");
+                }
+                mWaitStrategy.idle(attempt++);
+            }
+            mCachedGatingSequence = gatingSequence;
+        }
+        mMessages[(int) (next & mMask)] = message;
+        // Ordered write, so handlers that see the new cursor also see the message
+        mCursor.lazySet(next);
+    }
+
+    /**
+     * Waits for the handlers to process everything published, then stops their threads. Called
+     * from a handler, it stops the ring without waiting for the messages after the current one,
+     * and the calling thread finishes once the handler returns.
+     */
+    public void halt() throws InterruptedException {
+        Thread current = Thread.currentThread();
+        boolean fromHandler = false;
+        for (Consumer consumer : mConsumers) {
+            fromHandler |= (consumer.mThread == current);
+        }
+        if (!fromHandler) {
+            long cursor = mCursor.get();
+            int attempt = 0;
+            while (minimumSequence(cursor) < cursor && consumersAlive()) {
+                mWaitStrategy.idle(attempt++);
+            }
+        }
+        mRunning = false;
+        for (Consumer consumer : mConsumers) {
+            if (consumer.mThread != current) {
+                consumer.mThread.join();
+            }
+        }
+    }
+
+    /** True between {@link #start()} and {@link #halt()}. */
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /** Number of messages whose handler threw. */
+    public long getFailures() {
+        return mFailures.get();
+    }
+
+    /** What the latest handler that threw threw, null if none did. */
+    public RuntimeException getLastFailure() {
+        return mLastFailure;
+    }
+
+    public int getCapacity() {
+        return mMessages.length;
+    }
+
+    /** Sequence of the last published message, -1 before the first. */
+    public long getCursor() {
+        return mCursor.get();
+    }
+
+    /** Number of messages published but not processed by the slowest handler. */
+    public long getBacklog() {
+        long cursor = mCursor.get();
+        return cursor - minimumSequence(cursor);
+    }
+
+    private long minimumSequence(long minimum) {
+        for (Consumer consumer : mConsumers) {
+            minimum = Math.min(minimum, consumer.mSequence.get());
+        }
+        return minimum;
+    }
+
+    private boolean consumersAlive() {
+        for (Consumer consumer : mConsumers) {
+            if (!consumer.mThread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private class Consumer implements Runnable {
+        private final Handler mHandler;
+        private final AtomicLong mSequence;
+        private final Thread mThread;
+
+        Consumer(Handler handler, String threadName) {
+            mHandler = handler;
+            mSequence = new AtomicLong(-1);
+            mThread = new Thread(this, threadName);
+            mThread.setDaemon(true);
+        }
+
+        public void run() {
+            long next = mSequence.get() + 1;
+            int attempt = 0;
+            // The producer only reuses a slot after every handler moved past it
+            boolean clearSlots = (mConsumers.size() == 1);
+            while (mRunning) {
+                long available = mCursor.get();
+                if (available < next) {
+                    mWaitStrategy.idle(attempt++);
+                    continue;
+                }
+                attempt = 0;
+                for (long sequence = next; sequence <= available; sequence++) {
+                    int slot = (int) (sequence & mMask);
+                    try {
+                        mHandler.onEvent(mMessages[slot], sequence, sequence == available);
+                    } catch (RuntimeException e) {
+                        // One bad message must not stop the consumer
+                        mLastFailure = e;
+                        mFailures.incrementAndGet();
+                    }
+                    if (clearSlots) {
+                        mMessages[slot] = null;
+                    }
+                }
+                mSequence.lazySet(available);
+                next = available + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.bitso.websockets;
+
+/**
+ * A {@link BitsoStreamListener} that ignores every message, so subclasses only override the
+ * callbacks they need.
+ */
+public abstract class BitsoStreamAdapter implements BitsoStreamListener {
+    public void onConnectionChanged(boolean connected) {}
+
+    public void onTrades(BitsoStreamTrades trades) {}
+
+    public void onDiffOrders(BitsoStreamDiffOrders diffOrders) {}
+
+    public void onOrders(BitsoStreamOrders orders) {}
+
+    public void onProcessedOrders(BitsoStreamProcessedOrders processedOrders) {}
+
+    public void onKeepAlive() {}
+}
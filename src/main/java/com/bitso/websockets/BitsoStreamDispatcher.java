@@ -0,0 +1,129 @@
+package com.bitso.websockets;
+
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Parses each frame of a {@link BitsoWebSocket} once and hands the typed message to every
+ * registered {@link BitsoStreamListener}, instead of having each consumer parse the same JSON.
+ *
+ * <pre>
+ * BitsoStreamDispatcher dispatcher = new BitsoStreamDispatcher();
+ * dispatcher.addListener(candles);
+ * dispatcher.addListener(stats);
+ * bitsoWebSocket.addObserver(dispatcher);
+ * </pre>
+ *
+ * Subscription acknowledgements are skipped. Already decoded {@link BitsoStreamUpdate}s are
+ * dispatched as they are.
+ */
+public class BitsoStreamDispatcher implements Observer {
+    private final CopyOnWriteArrayList<BitsoStreamListener> mListeners;
+    private volatile long mMalformedFrames;
+
+    public BitsoStreamDispatcher() {
+        mListeners = new CopyOnWriteArrayList<BitsoStreamListener>();
+    }
+
+    public void addListener(BitsoStreamListener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(BitsoStreamListener listener) {
+        mListeners.remove(listener);
+    }
+
+    public void update(Observable o, Object arg) {
+        if (arg instanceof String) {
+            dispatch((String) arg);
+        } else if (arg instanceof BitsoStreamUpdate) {
+            dispatch((BitsoStreamUpdate) arg);
+        } else if (arg instanceof Boolean) {
+            boolean connected = (Boolean) arg;
+            for (BitsoStreamListener listener : mListeners) {
+                listener.onConnectionChanged(connected);
+            }
+        }
+    }
+
+    /** Decodes a raw frame and dispatches it. */
+    public void dispatch(String frame) {
+        BitsoStreamUpdate update;
+        try {
+            JSONObject jsonObject = new JSONObject(frame);
+            if (BitsoChannels.KA.toString().equals(jsonObject.optString("type"))) {
+                for (BitsoStreamListener listener : mListeners) {
+                    listener.onKeepAlive();
+                }
+                return;
+            }
+            update = decode(jsonObject);
+        } catch (JSONException e) {
+            mMalformedFrames++;
+            return;
+        }
+        if (update != null) {
+            dispatch(update);
+        }
+    }
+
+    public void dispatch(BitsoStreamUpdate update) {
+        BitsoChannels channel = update.getBitsoChannel();
+        if (channel == null) {
+            return;
+        }
+        for (BitsoStreamListener listener : mListeners) {
+            switch (channel) {
+                case TRADES:
+                    listener.onTrades((BitsoStreamTrades) update);
+                    break;
+                case DIFF_ORDERS:
+                    listener.onDiffOrders((BitsoStreamDiffOrders) update);
+                    break;
+                case ORDERS:
+                    listener.onOrders((BitsoStreamOrders) update);
+                    break;
+                case PROCESSED_ORDERS:
+                    listener.onProcessedOrders((BitsoStreamProcessedOrders) update);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /** Number of frames that could not be parsed. */
+    public long getMalformedFrames() {
+        return mMalformedFrames;
+    }
+
+    /**
+     * Builds the typed message of a frame.
+     * @return null for subscription acknowledgements, keep-alives and unknown channels.
+     */
+    public static BitsoStreamUpdate decode(JSONObject jsonObject) {
+        if (jsonObject.has("action")) {
+            return null;
+        }
+        BitsoChannels channel = BitsoChannels.getBitsoChannel(jsonObject.optString("type"));
+        if (channel == null) {
+            return null;
+        }
+        switch (channel) {
+            case TRADES:
+                return jsonObject.has("payload") ? new BitsoStreamTrades(jsonObject) : null;
+            case DIFF_ORDERS:
+                return jsonObject.has("payload") ? new BitsoStreamDiffOrders(jsonObject) : null;
+            case ORDERS:
+                return jsonObject.has("payload") ? new BitsoStreamOrders(jsonObject) : null;
+            case PROCESSED_ORDERS:
+                return jsonObject.has("payload") ? new BitsoStreamProcessedOrders(jsonObject) : null;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.bitso.websockets;
+
+/**
+ * Receives the decoded messages of a {@link BitsoWebSocket} through a
+ * {@link BitsoStreamDispatcher}. Callbacks run on the thread that notifies the dispatcher,
+ * usually the Netty event loop, so they should return quickly.
+ */
+public interface BitsoStreamListener {
+    void onConnectionChanged(boolean connected);
+
+    void onTrades(BitsoStreamTrades trades);
+
+    void onDiffOrders(BitsoStreamDiffOrders diffOrders);
+
+    void onOrders(BitsoStreamOrders orders);
+
+    void onProcessedOrders(BitsoStreamProcessedOrders processedOrders);
+
+    void onKeepAlive();
+}
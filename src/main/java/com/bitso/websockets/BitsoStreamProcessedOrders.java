@@ -0,0 +1,175 @@
+package com.bitso.websockets;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.bitso.BitsoOrder;
+import com.bitso.helpers.Helpers;
+
+/**
+ * Orders of a book that were processed by the matching engine: filled, partially filled or
+ * cancelled. Observers of {@link BitsoWebSocket} receive frames of this channel as Strings by
+ * default; after {@link BitsoWebSocket#setTypedProcessedOrders(boolean) setTypedProcessedOrders(true)}
+ * they receive them already decoded, as instances of this class, so consumers reconciling their
+ * orders don't parse them again. {@link com.bitso.journal.BitsoJournalReplay} has the same option.
+ */
+public class BitsoStreamProcessedOrders extends BitsoStreamUpdate{
+    private ProcessedOrderPayload[] mPayload;
+    private final String mFrame;
+
+    public BitsoStreamProcessedOrders(JSONObject jsonObject) {
+        this(jsonObject, null);
+    }
+
+    /** @param frame The raw frame the object was parsed from, kept for observers of raw text. */
+    public BitsoStreamProcessedOrders(JSONObject jsonObject, String frame) {
+        super(jsonObject);
+        mFrame = frame;
+        processPayload(jsonObject.getJSONArray("payload"));
+    }
+
+    /**
+     * Decodes a raw frame of this channel, the way {@link BitsoWebSocket#setTypedProcessedOrders}
+     * delivers it.
+     * @return null if the frame is not a processed orders update.
+     */
+    public static BitsoStreamProcessedOrders fromFrame(String frame) {
+        if (!BitsoChannels.PROCESSED_ORDERS.toString().equals(BitsoFrames.stringField(frame, "type"))
+                || BitsoFrames.isAction(frame)) {
+            return null;
+        }
+        try {
+            JSONObject jsonObject = new JSONObject(frame);
+            return jsonObject.has("payload") ? new BitsoStreamProcessedOrders(jsonObject, frame) : null;
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    public ProcessedOrderPayload[] getPayload() {
+        return mPayload;
+    }
+
+    /** The raw frame, or null if the message wasn't built from one. */
+    public String getFrame() {
+        return mFrame;
+    }
+
+    private void processPayload(JSONArray jsonArray){
+        int totalElements = jsonArray.length();
+        mPayload = new ProcessedOrderPayload[totalElements];
+        for(int i=0; i<totalElements; i++){
+            mPayload[i] = new ProcessedOrderPayload(jsonArray.getJSONObject(i));
+        }
+    }
+
+    public boolean attributesNotNull(){
+        if((bitsoChannel == null) || (bitsoBook == null)){
+            return false;
+        }
+        for (ProcessedOrderPayload order : mPayload) {
+            if((order.mOrderId == null) || (order.mStatus == null)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "Processed Orders: \n" + Arrays.toString(mPayload);
+    }
+
+    public static class ProcessedOrderPayload{
+        private String mOrderId;
+        private String mStatus;
+        private BitsoOrder.SIDE mSide;
+        private BigDecimal mRate;
+        private BigDecimal mAmount;
+        private BigDecimal mValue;
+        private long mTimestamp;
+
+        public ProcessedOrderPayload(JSONObject o){
+            mOrderId = Helpers.getString(o, "o");
+            mStatus = Helpers.getString(o, "s");
+            // Everything else is optional, decimals are taken from their text as sent
+            if (o.has("t")) {
+                mSide = (o.optInt("t") == 1) ? BitsoOrder.SIDE.SELL : BitsoOrder.SIDE.BUY;
+            }
+            mRate = decimal(o, "r");
+            mAmount = decimal(o, "a");
+            mValue = decimal(o, "v");
+            mTimestamp = o.optLong("d", -1);
+        }
+
+        private static BigDecimal decimal(JSONObject o, String key) {
+            Object value = o.opt(key);
+            return (value == null || value == JSONObject.NULL) ? null : new BigDecimal(value.toString());
+        }
+
+        public String getOrderId() {
+            return mOrderId;
+        }
+
+        /** The status as sent by the exchange. */
+        public String getStatus() {
+            return mStatus;
+        }
+
+        public BitsoOrder.STATUS getOrderStatus() {
+            if (mStatus == null) {
+                return BitsoOrder.STATUS.UNKNOWN;
+            }
+            switch (mStatus) {
+                case "open":
+                    return BitsoOrder.STATUS.OPEN;
+                case "partial-fill":
+                case "partially filled":
+                    return BitsoOrder.STATUS.PARTIALLY_FILLED;
+                case "completed":
+                    return BitsoOrder.STATUS.COMPLETED;
+                case "cancelled":
+                    return BitsoOrder.STATUS.CANCELLED;
+                case "queued":
+                    return BitsoOrder.STATUS.QUEUED;
+                default:
+                    return BitsoOrder.STATUS.UNKNOWN;
+            }
+        }
+
+        /** Side of the order, or null when the stream didn't include it. */
+        public BitsoOrder.SIDE getSide() {
+            return mSide;
+        }
+
+        /** Price of the order, or null when the stream didn't include it. */
+        public BigDecimal getRate() {
+            return mRate;
+        }
+
+        /** Amount of the order, or null when the stream didn't include it. */
+        public BigDecimal getAmount() {
+            return mAmount;
+        }
+
+        /** Value of the order, or null when the stream didn't include it. */
+        public BigDecimal getValue() {
+            return mValue;
+        }
+
+        /** Time the order was processed as sent by the exchange, or -1 when not included. */
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        @Override
+        public String toString() {
+            return "Order:" + mOrderId + ", Status:" + mStatus + ", Side:" + mSide + ", Rate:" + mRate
+                    + ", Amount:" + mAmount;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import java.util.Arrays;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import com.bitso.BitsoOrder;
 import com.bitso.helpers.Helpers;
 
 public class BitsoStreamTrades extends BitsoStreamUpdate{
@@ -57,12 +58,19 @@ public class BitsoStreamTrades extends BitsoStreamUpdate{
         private BigDecimal mAmount;
         private BigDecimal mRate;
         private BigDecimal mValue;
+        private long mTimestamp;
+        private BitsoOrder.SIDE mMakerSide;
         
         public TradePayload(JSONObject o){
             mTradeId = Helpers.getInt(o, "i");
             mAmount = new BigDecimal(String.valueOf(o.getDouble("a")));
             mRate = new BigDecimal(String.valueOf(o.getDouble("r")));
             mValue = new BigDecimal(String.valueOf(o.getDouble("v")));
+            // Optional fields, not sent by every version of the stream
+            mTimestamp = o.optLong("x", -1);
+            if (o.has("t")) {
+                mMakerSide = (o.optInt("t") == 1) ? BitsoOrder.SIDE.SELL : BitsoOrder.SIDE.BUY;
+            }
         }
 
         public int getTradeId() {
@@ -81,6 +89,16 @@ public class BitsoStreamTrades extends BitsoStreamUpdate{
             return mValue;
         }
 
+        /** Execution time in epoch milliseconds, or -1 when the stream didn't include it. */
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        /** Side of the maker order, or null when the stream didn't include it. */
+        public BitsoOrder.SIDE getMakerSide() {
+            return mMakerSide;
+        }
+
         @Override
         public String toString() {
             return "Amount:" + mAmount + ", Rate:" + mRate
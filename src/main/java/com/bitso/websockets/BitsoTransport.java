@@ -0,0 +1,92 @@
+package com.bitso.websockets;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.IoHandlerFactory;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollIoHandler;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.uring.IoUring;
+import io.netty.channel.uring.IoUringIoHandler;
+import io.netty.channel.uring.IoUringSocketChannel;
+
+/**
+ * The Netty transport a {@link BitsoWebSocket} runs on. The native Linux transports read the
+ * socket with fewer copies and less garbage than NIO, cutting the time from the network to the
+ * handler, but need the native library of the platform.
+ */
+public enum BitsoTransport {
+    NIO {
+        public boolean isAvailable() {
+            return true;
+        }
+
+        IoHandlerFactory newIoHandlerFactory() {
+            return NioIoHandler.newFactory();
+        }
+
+        public Class<? extends SocketChannel> getSocketChannelClass() {
+            return NioSocketChannel.class;
+        }
+    },
+    EPOLL {
+        public boolean isAvailable() {
+            try {
+                return Epoll.isAvailable();
+            } catch (LinkageError e) {
+                return false;
+            }
+        }
+
+        IoHandlerFactory newIoHandlerFactory() {
+            return EpollIoHandler.newFactory();
+        }
+
+        public Class<? extends SocketChannel> getSocketChannelClass() {
+            return EpollSocketChannel.class;
+        }
+    },
+    IO_URING {
+        public boolean isAvailable() {
+            try {
+                return IoUring.isAvailable();
+            } catch (LinkageError e) {
+                return false;
+            }
+        }
+
+        IoHandlerFactory newIoHandlerFactory() {
+            return IoUringIoHandler.newFactory();
+        }
+
+        public Class<? extends SocketChannel> getSocketChannelClass() {
+            return IoUringSocketChannel.class;
+        }
+    };
+
+    /** Whether the transport can be used on this host. */
+    public abstract boolean isAvailable();
+
+    abstract IoHandlerFactory newIoHandlerFactory();
+
+    public abstract Class<? extends SocketChannel> getSocketChannelClass();
+
+    /**
+     * An event loop group of this transport.
+     * @param threads Number of event loops, 0 for Netty's default.
+     */
+    public EventLoopGroup newEventLoopGroup(int threads) {
+        if (!isAvailable()) {
+            throw new IllegalStateException(this + " transport is not available");
+        }
+        return new MultiThreadIoEventLoopGroup(threads, newIoHandlerFactory());
+    }
+
+    /** Epoll where available, NIO otherwise. */
+    public static BitsoTransport best() {
+        return EPOLL.isAvailable() ? EPOLL : NIO;
+    }
+}
@@ -0,0 +1,40 @@
+package com.bitso.websockets;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits on a {@link BitsoRingBuffer}, either a consumer waiting for new messages or
+ * the producer waiting for room. Lower latency costs more CPU.
+ */
+public enum BitsoWaitStrategy {
+    /** Spins on the sequence. Lowest latency, burns a core per waiting thread. */
+    BUSY_SPIN {
+        void idle(int attempt) {
+        }
+    },
+    /** Spins briefly, then yields the processor between checks. */
+    YIELD {
+        void idle(int attempt) {
+            if (attempt > SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    },
+    /** Spins briefly, then parks for a short time between checks. Cheapest on CPU. */
+    PARK {
+        void idle(int attempt) {
+            if (attempt > SPIN_TRIES) {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    };
+
+    private static final int SPIN_TRIES = 100;
+    private static final long PARK_NANOS = 50_000L;
+
+    /**
+     * Called every time a check found nothing to do.
+     * @param attempt Number of consecutive empty checks so far.
+     */
+    abstract void idle(int attempt);
+}
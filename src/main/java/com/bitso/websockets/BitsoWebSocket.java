@@ -2,6 +2,10 @@ package com.bitso.websockets;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Observable;
 
 import javax.net.ssl.SSLException;
@@ -11,15 +15,16 @@ import com.bitso.exceptions.BitsoWebSocketException;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.ChannelPromise;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpClientCodec;
@@ -29,15 +34,19 @@ import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketClientHandshaker;
 import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
 import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketClientCompressionHandler;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
 
 public class BitsoWebSocket extends Observable{
     private final String URL = "wss://ws.bitso.com";
     private final int PORT = 443;
+    private static final int DEFAULT_MAX_FRAME_SIZE = 1 << 20;
 
     private URI mUri;
     private SslContext mSslContext;
@@ -45,40 +54,225 @@ public class BitsoWebSocket extends Observable{
     private EventLoopGroup mGroup;
     private String mMessageReceived;
     private Boolean mConnected;
+    private volatile BitsoRingBuffer mRingBuffer;
+    private int mRingBufferCapacity;
+    private BitsoWaitStrategy mRingBufferWaitStrategy;
+    private final LinkedHashSet<List<String>> mSubscriptions;
+    // Not the websocket's own monitor, which Observable locks while notifying observers
+    private final Object mReconnectLock = new Object();
+    private final BitsoTransport mTransport;
+    private final boolean mOwnsGroup;
+    private boolean mTcpNoDelay;
+    private int mReceiveBufferSize;
+    private int mBusyPollMicros;
+    private int mMaxFrameSize;
+    private boolean mCompression;
+    private volatile boolean mTypedProcessedOrders;
     
+    /** Uses epoll where available and NIO otherwise, see {@link BitsoTransport#best()}. */
     public BitsoWebSocket() throws SSLException, URISyntaxException {
+        this(BitsoTransport.best());
+    }
+
+    public BitsoWebSocket(BitsoTransport transport) throws SSLException, URISyntaxException {
+        this(transport, null);
+    }
+
+    /**
+     * Runs on an event loop group shared with other connections, so several sockets don't each
+     * start their own threads. The group is not shut down by {@link #closeConnection()}; an owned
+     * group is, and is replaced by a new one if the connection is opened again.
+     * @param group A group of the same transport, null for one owned by this websocket.
+     */
+    public BitsoWebSocket(BitsoTransport transport, EventLoopGroup group) throws SSLException,
+            URISyntaxException {
         mUri = new URI(URL);
         mSslContext = SslContextBuilder.forClient().
                 trustManager(InsecureTrustManagerFactory.INSTANCE).build();
-        mGroup = new NioEventLoopGroup();
+        mTransport = transport;
+        mOwnsGroup = (group == null);
+        mGroup = mOwnsGroup ? transport.newEventLoopGroup(0) : group;
         mMessageReceived = "";
         mConnected = Boolean.FALSE;
+        mSubscriptions = new LinkedHashSet<List<String>>();
+        mTcpNoDelay = true;
+        mMaxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+        mCompression = true;
+    }
+
+    public BitsoTransport getTransport(){
+        return mTransport;
+    }
+
+    public EventLoopGroup getEventLoopGroup(){
+        return mGroup;
+    }
+
+    public boolean isConnected(){
+        return mConnected;
+    }
+
+    /**
+     * Sends small frames, like subscriptions, without waiting to coalesce them. On by default.
+     * Takes effect on the next {@link #openConnection()}.
+     */
+    public void setTcpNoDelay(boolean tcpNoDelay){
+        mTcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * Size of the socket receive buffer in bytes, 0 for the system default. A larger buffer
+     * absorbs bursts of market data while the event loop is busy. Takes effect on the next
+     * {@link #openConnection()}.
+     */
+    public void setReceiveBufferSize(int receiveBufferSize){
+        mReceiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * Largest message accepted, in bytes, whether it arrives in one frame or fragmented in
+     * several, which are reassembled. Larger messages close the connection. 1 MiB by default.
+     * Takes effect on the next {@link #openConnection()}.
+     */
+    public void setMaxFrameSize(int maxFrameSize){
+        mMaxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Offers permessage-deflate compression when connecting, used if the server accepts it. On
+     * by default. Takes effect on the next {@link #openConnection()}.
+     */
+    public void setCompression(boolean compression){
+        mCompression = compression;
+    }
+
+    /**
+     * Microseconds the kernel busy polls the device queue for data on a blocking read, 0 to
+     * disable. Trades CPU for lower latency; only supported by the epoll transport and ignored by
+     * the others. Takes effect on the next {@link #openConnection()}.
+     */
+    public void setBusyPollMicros(int busyPollMicros){
+        mBusyPollMicros = busyPollMicros;
     }
     
+    /**
+     * Moves observer notification off the Netty event loop: frames and connection changes are
+     * published into a preallocated ring buffer and observers are notified, in order and in
+     * batches, on a dedicated consumer thread. The I/O thread only waits if observers fall a full
+     * ring behind. Must be called before {@link #openConnection()}. The ring is halted by
+     * {@link #closeConnection()} and replaced by a new one if the connection is opened again.
+     * @param capacity Frames buffered between the I/O thread and observers, a power of two.
+     */
+    public void enableRingBuffer(int capacity, BitsoWaitStrategy waitStrategy){
+        if(mRingBuffer != null){
+            throw new IllegalStateException("Ring buffer already enabled");
+        }
+        mRingBufferCapacity = capacity;
+        mRingBufferWaitStrategy = waitStrategy;
+        startRingBuffer();
+    }
+
+    /** Replaces a ring buffer halted by {@link #closeConnection()} with a running one. */
+    void restartRingBufferIfHalted(){
+        BitsoRingBuffer ringBuffer = mRingBuffer;
+        if(ringBuffer != null && !ringBuffer.isRunning()){
+            startRingBuffer();
+        }
+    }
+
+    /** Replaces an owned event loop group shut down by {@link #closeConnection()} with a new one. */
+    void restartGroupIfShutDown(){
+        if(mOwnsGroup && mGroup.isShuttingDown()){
+            mGroup = mTransport.newEventLoopGroup(0);
+        }
+    }
+
+    private void startRingBuffer(){
+        BitsoRingBuffer ringBuffer = new BitsoRingBuffer(mRingBufferCapacity, mRingBufferWaitStrategy);
+        ringBuffer.addHandler(new BitsoRingBuffer.Handler() {
+            public void onEvent(Object message, long sequence, boolean endOfBatch) {
+                notifyMessage(message);
+            }
+        }, "bitso-websocket-dispatch");
+        ringBuffer.start();
+        mRingBuffer = ringBuffer;
+    }
+
+    /** The ring buffer feeding observers, null unless {@link #enableRingBuffer} was called. */
+    public BitsoRingBuffer getRingBuffer(){
+        return mRingBuffer;
+    }
+
     public void setConnected(Boolean connected){
         mConnected = connected;
-        setChanged();
-        notifyObservers(mConnected);
+        dispatch(mConnected);
     }
     
+    /**
+     * Notifies observers of processed orders decoded, as {@link BitsoStreamProcessedOrders},
+     * instead of as their text. Off by default, since plain observers expect every frame as a
+     * string. Frames are decoded on the ring buffer's consumer thread when it is enabled.
+     */
+    public void setTypedProcessedOrders(boolean typedProcessedOrders){
+        mTypedProcessedOrders = typedProcessedOrders;
+    }
+
+    /**
+     * Notifies observers of a frame as its text, or decoded for processed orders when
+     * {@link #setTypedProcessedOrders} is on.
+     */
     public void setMessageReceived(String messageReceived){
         mMessageReceived = messageReceived;
+        dispatch(mMessageReceived);
+    }
+
+    private static Object decodeTyped(String frame){
+        BitsoStreamProcessedOrders processedOrders = BitsoStreamProcessedOrders.fromFrame(frame);
+        return (processedOrders != null) ? processedOrders : frame;
+    }
+
+    private void dispatch(Object message){
+        BitsoRingBuffer ringBuffer = mRingBuffer;
+        if(ringBuffer == null){
+            notifyMessage(message);
+            return;
+        }
+        // The ring buffer has a single producer. Connection changes may come from the caller's
+        // thread, so producers are serialized; the lock is uncontended for frames.
+        synchronized(ringBuffer){
+            ringBuffer.publish(message);
+        }
+    }
+
+    private void notifyMessage(Object message){
+        if(mTypedProcessedOrders && message instanceof String){
+            message = decodeTyped((String) message);
+        }
         setChanged();
-        notifyObservers(mMessageReceived);
+        notifyObservers(message);
     }
 
     public void openConnection() throws InterruptedException{
+        restartGroupIfShutDown();
+        restartRingBufferIfHalted();
         Bootstrap bootstrap = new Bootstrap();
 
         final WebSocketClientHandler handler =
                 new WebSocketClientHandler(
                         WebSocketClientHandshakerFactory.newHandshaker(
-                                mUri, WebSocketVersion.V13, null, false,
-                                new DefaultHttpHeaders()));
+                                mUri, WebSocketVersion.V13, null, mCompression,
+                                new DefaultHttpHeaders(), mMaxFrameSize));
 
         bootstrap.group(mGroup)
-        .channel(NioSocketChannel.class)
-        .handler(new ChannelInitializer<SocketChannel>() {
+        .channel(mTransport.getSocketChannelClass())
+        .option(ChannelOption.TCP_NODELAY, mTcpNoDelay);
+        if(mReceiveBufferSize > 0){
+            bootstrap.option(ChannelOption.SO_RCVBUF, mReceiveBufferSize);
+        }
+        if(mBusyPollMicros > 0 && mTransport == BitsoTransport.EPOLL){
+            bootstrap.option(EpollChannelOption.SO_BUSY_POLL, mBusyPollMicros);
+        }
+        bootstrap.handler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     public void initChannel(SocketChannel socketChannel){
                         ChannelPipeline channelPipeline =
@@ -87,9 +281,7 @@ public class BitsoWebSocket extends Observable{
                                 socketChannel.alloc(),
                                 mUri.getHost(),
                                 PORT));
-                        channelPipeline.addLast(new HttpClientCodec(),
-                                new HttpObjectAggregator(8192),
-                                handler);
+                        addWebSocketHandlers(channelPipeline, handler);
                     }
                 });
 
@@ -98,9 +290,30 @@ public class BitsoWebSocket extends Observable{
         setConnected(Boolean.TRUE);
     }
     
+    /**
+     * HTTP codec for the handshake, permessage-deflate if enabled, and reassembly of fragmented
+     * messages, followed by the handler receiving whole frames.
+     */
+    void addWebSocketHandlers(ChannelPipeline channelPipeline, ChannelHandler handler){
+        channelPipeline.addLast(new HttpClientCodec(),
+                new HttpObjectAggregator(8192));
+        if(mCompression){
+            channelPipeline.addLast(new WebSocketClientCompressionHandler(mMaxFrameSize));
+        }
+        channelPipeline.addLast(new WebSocketFrameAggregator(mMaxFrameSize),
+                handler);
+    }
+
     public void subscribeBitsoChannel(String channel){
+        subscribeBitsoChannel("btc_mxn", channel);
+    }
+
+    public void subscribeBitsoChannel(String book, String channel){
         if(mConnected){
-            String frameMessage = "{ \"action\": \"subscribe\", \"book\": \"btc_mxn\", \"type\": \""
+            synchronized(mSubscriptions){
+                mSubscriptions.add(Arrays.asList(book, channel));
+            }
+            String frameMessage = "{ \"action\": \"subscribe\", \"book\": \"" + book + "\", \"type\": \""
                         + channel + "\" }";
             mChannel.writeAndFlush(new TextWebSocketFrame(frameMessage));
         }else{
@@ -109,10 +322,43 @@ public class BitsoWebSocket extends Observable{
         }
     }
     
+    /** Book and channel of every subscription made, in order. */
+    public List<List<String>> getSubscriptions(){
+        synchronized(mSubscriptions){
+            return new ArrayList<List<String>>(mSubscriptions);
+        }
+    }
+
+    /**
+     * Drops the current connection without a closing handshake, since it is presumed dead, opens
+     * a new one and subscribes again to every channel subscribed before. Concurrent calls are
+     * serialized; frames keep being delivered meanwhile.
+     */
+    public void reconnect() throws InterruptedException{
+        synchronized(mReconnectLock){
+            if(mChannel != null){
+                mChannel.close().sync();
+            }
+            if(mConnected){
+                setConnected(Boolean.FALSE);
+            }
+            openConnection();
+            for(List<String> subscription : getSubscriptions()){
+                subscribeBitsoChannel(subscription.get(0), subscription.get(1));
+            }
+        }
+    }
+
     public void closeConnection() throws InterruptedException{
         mChannel.writeAndFlush(new CloseWebSocketFrame());
         mChannel.closeFuture().sync();
-        mGroup.shutdownGracefully();
+        if(mOwnsGroup){
+            mGroup.shutdownGracefully();
+        }
+        BitsoRingBuffer ringBuffer = mRingBuffer;
+        if(ringBuffer != null){
+            ringBuffer.halt();
+        }
     }
 
     public class WebSocketClientHandler extends ChannelInboundHandlerAdapter {
@@ -145,26 +391,31 @@ public class BitsoWebSocket extends Observable{
                 throws Exception {
             Channel channel = ctx.channel();
 
-            if(!mHandshaker.isHandshakeComplete()) {
-                mHandshaker.finishHandshake(channel, (FullHttpResponse) msg);
-                mHandshakeFuture.setSuccess();
-                return;
-            }
+            // This is the last handler, so the message is released here once read
+            try{
+                if(!mHandshaker.isHandshakeComplete()) {
+                    mHandshaker.finishHandshake(channel, (FullHttpResponse) msg);
+                    mHandshakeFuture.setSuccess();
+                    return;
+                }
 
-            if (msg instanceof FullHttpResponse) {
-                FullHttpResponse response = (FullHttpResponse) msg;
-                throw new Exception("Unexpected FullHttpResponse (getStatus=" + response.status() + ", content="
-                        + response.content().toString(CharsetUtil.UTF_8) + ')');
-            }
+                if (msg instanceof FullHttpResponse) {
+                    FullHttpResponse response = (FullHttpResponse) msg;
+                    throw new Exception("Unexpected FullHttpResponse (getStatus=" + response.status()
+                            + ", content=" + response.content().toString(CharsetUtil.UTF_8) + ')');
+                }
 
-            WebSocketFrame frame = (WebSocketFrame) msg;
-            if (frame instanceof TextWebSocketFrame) {
-                TextWebSocketFrame textFrame = (TextWebSocketFrame) frame;
-                setMessageReceived(textFrame.text());
-            }
-            
-            if(frame instanceof CloseWebSocketFrame){
-                setConnected(Boolean.FALSE);
+                WebSocketFrame frame = (WebSocketFrame) msg;
+                if (frame instanceof TextWebSocketFrame) {
+                    TextWebSocketFrame textFrame = (TextWebSocketFrame) frame;
+                    setMessageReceived(textFrame.text());
+                }
+
+                if(frame instanceof CloseWebSocketFrame){
+                    setConnected(Boolean.FALSE);
+                }
+            }finally{
+                ReferenceCountUtil.release(msg);
             }
         }
 
@@ -1,29 +1,74 @@
 package com.bitso.websockets;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.Observable;
 import java.util.Observer;
 
+/**
+ * Keeps the text frames received by a {@link BitsoWebSocket}.
+ *
+ * The default observer prints every frame and keeps all of them, which suits tests and short
+ * sessions. Long running processes should use {@link #BitsoWebSocketObserver(int, boolean,
+ * BitsoChannels...)}, which keeps only the latest frames in a fixed ring, optionally only those
+ * of some channels, without console output.
+ */
 public class BitsoWebSocketObserver implements Observer{
     private ArrayList<String> mMessagesReceived;
     protected Boolean mWSConnected;
+    private final String[] mHistory;
+    private final boolean mPrintMessages;
+    private final EnumSet<BitsoChannels> mChannels;
+    private int mNext;
+    private long mCount;
 
     public BitsoWebSocketObserver() {        
         this.mMessagesReceived = new ArrayList<String>();
         this.mWSConnected = Boolean.FALSE;
+        this.mHistory = null;
+        this.mPrintMessages = true;
+        this.mChannels = null;
+    }
+
+    /**
+     * @param historyCapacity Number of latest frames kept.
+     * @param printMessages Whether frames and connection changes are printed to stdout.
+     * @param channels Channels whose frames are kept, all of them if none are given.
+     */
+    public BitsoWebSocketObserver(int historyCapacity, boolean printMessages, BitsoChannels... channels) {
+        if (historyCapacity <= 0) {
+            throw new IllegalArgumentException("Invalid history capacity: " + historyCapacity);
+        }
+        this.mWSConnected = Boolean.FALSE;
+        this.mHistory = new String[historyCapacity];
+        this.mPrintMessages = printMessages;
+        this.mChannels = (channels.length > 0) ? EnumSet.of(channels[0], channels) : null;
     }
 
     public void update(Observable o, Object arg) {
+        // Processed orders arrive decoded, keep their text like any other frame
+        if(arg instanceof BitsoStreamProcessedOrders){
+            arg = ((BitsoStreamProcessedOrders) arg).getFrame();
+        }
+
         // Update message
         if(arg instanceof String){
             String messageReceived = ((String) arg);
-            System.out.println(messageReceived);
-            mMessagesReceived.add(messageReceived);
+            if(!accepts(messageReceived)){
+                return;
+            }
+            if(mPrintMessages){
+                System.out.println(messageReceived);
+            }
+            addMessage(messageReceived);
         }
         
         // On connect/disconnect
         if(arg instanceof Boolean){
             mWSConnected = ((Boolean) arg);
+            if(!mPrintMessages){
+                return;
+            }
             if(mWSConnected){
                 System.out.println("Web socket is now connected");
             }else{
@@ -33,11 +78,56 @@ public class BitsoWebSocketObserver implements Observer{
         }
     }
     
-    public ArrayList<String> getMessagesReceived(){
-        return mMessagesReceived;
+    /**
+     * Frames kept, oldest first. With a bounded history this is a copy holding at most its
+     * capacity.
+     */
+    public synchronized ArrayList<String> getMessagesReceived(){
+        if(mHistory == null){
+            return mMessagesReceived;
+        }
+        int size = (int) Math.min(mCount, mHistory.length);
+        ArrayList<String> messages = new ArrayList<String>(size);
+        int start = (mCount > mHistory.length) ? mNext : 0;
+        for(int i = 0; i < size; i++){
+            messages.add(mHistory[(start + i) % mHistory.length]);
+        }
+        return messages;
+    }
+
+    /** The latest frame kept, null if there is none. */
+    public synchronized String getLastMessage(){
+        if(mHistory == null){
+            return mMessagesReceived.isEmpty() ? null : mMessagesReceived.get(mMessagesReceived.size() - 1);
+        }
+        return (mCount == 0) ? null : mHistory[(mNext + mHistory.length - 1) % mHistory.length];
+    }
+
+    /** Number of frames accepted since the start, including those no longer kept. */
+    public synchronized long getMessageCount(){
+        return (mHistory == null) ? mMessagesReceived.size() : mCount;
     }
     
     public Boolean isWSConnected(){
         return mWSConnected;
     }
-}
\ No newline at end of file
+
+    private synchronized void addMessage(String message){
+        if(mHistory == null){
+            mMessagesReceived.add(message);
+            return;
+        }
+        mHistory[mNext] = message;
+        mNext = (mNext + 1 == mHistory.length) ? 0 : mNext + 1;
+        mCount++;
+    }
+
+    private boolean accepts(String message){
+        if(mChannels == null){
+            return true;
+        }
+        String type = BitsoFrames.stringField(message, "type");
+        BitsoChannels channel = (type != null) ? BitsoChannels.getBitsoChannel(type) : null;
+        return channel != null && mChannels.contains(channel);
+    }
+}
@@ -0,0 +1,139 @@
+package com.bitso.websockets;
+
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Observer;
+
+import javax.net.ssl.SSLException;
+
+import io.netty.channel.EventLoopGroup;
+
+/**
+ * Spreads subscriptions over several {@link BitsoWebSocket} connections that share one event
+ * loop group, so market data of many books is received in parallel without a set of threads per
+ * connection.
+ *
+ * Every book is assigned to the connection with the fewest books the first time it is
+ * subscribed, and all its channels go through that connection, so the frames of a book keep
+ * their order.
+ *
+ * <pre>
+ * BitsoWebSocketPool pool = new BitsoWebSocketPool(4, BitsoTransport.best(), 2);
+ * pool.addObserver(dispatcher);
+ * pool.openConnections();
+ * for (BookInfo book : bitso.getAvailableBooks()) {
+ *     pool.subscribe(book.getBook(), BitsoChannels.DIFF_ORDERS.toString());
+ * }
+ * </pre>
+ *
+ * Observers are notified from the event loops of all connections at once, so they must be
+ * thread safe. Connection changes are notified once per connection.
+ */
+public class BitsoWebSocketPool {
+    private final EventLoopGroup mGroup;
+    private final BitsoWebSocket[] mConnections;
+    private final Map<String, Integer> mBookConnections;
+    private final int[] mBookCounts;
+
+    /**
+     * @param connections Number of websocket connections.
+     * @param threads Event loops shared by the connections, 0 for Netty's default.
+     */
+    public BitsoWebSocketPool(int connections, BitsoTransport transport, int threads) throws SSLException,
+            URISyntaxException {
+        this(connections, transport, transport.newEventLoopGroup(threads));
+    }
+
+    /**
+     * @param group Event loop group of the same transport, shut down by
+     * {@link #closeConnections()}.
+     */
+    public BitsoWebSocketPool(int connections, BitsoTransport transport, EventLoopGroup group)
+            throws SSLException, URISyntaxException {
+        if (connections <= 0) {
+            throw new IllegalArgumentException("Invalid number of connections: " + connections);
+        }
+        mGroup = group;
+        mConnections = new BitsoWebSocket[connections];
+        for (int i = 0; i < connections; i++) {
+            mConnections[i] = new BitsoWebSocket(transport, group);
+        }
+        mBookConnections = new HashMap<String, Integer>();
+        mBookCounts = new int[connections];
+    }
+
+    /** Adds an observer to every connection. */
+    public void addObserver(Observer observer) {
+        for (BitsoWebSocket connection : mConnections) {
+            connection.addObserver(observer);
+        }
+    }
+
+    public void deleteObserver(Observer observer) {
+        for (BitsoWebSocket connection : mConnections) {
+            connection.deleteObserver(observer);
+        }
+    }
+
+    public void openConnections() throws InterruptedException {
+        for (BitsoWebSocket connection : mConnections) {
+            connection.openConnection();
+        }
+    }
+
+    /** Subscribes to a channel of a book on the connection assigned to the book. */
+    public void subscribe(String book, String channel) {
+        getConnection(book).subscribeBitsoChannel(book, channel);
+    }
+
+    /** The connection carrying a book, assigning one if the book is new. */
+    public BitsoWebSocket getConnection(String book) {
+        return mConnections[getConnectionIndex(book)];
+    }
+
+    /** Index of the connection carrying a book, assigning one if the book is new. */
+    public synchronized int getConnectionIndex(String book) {
+        Integer index = mBookConnections.get(book);
+        if (index == null) {
+            int leastLoaded = 0;
+            for (int i = 1; i < mBookCounts.length; i++) {
+                if (mBookCounts[i] < mBookCounts[leastLoaded]) {
+                    leastLoaded = i;
+                }
+            }
+            index = leastLoaded;
+            mBookConnections.put(book, index);
+            mBookCounts[leastLoaded]++;
+        }
+        return index;
+    }
+
+    public List<BitsoWebSocket> getConnections() {
+        return Collections.unmodifiableList(Arrays.asList(mConnections));
+    }
+
+    public int getConnectionCount() {
+        return mConnections.length;
+    }
+
+    public EventLoopGroup getEventLoopGroup() {
+        return mGroup;
+    }
+
+    /** Closes every connection, then shuts down the shared event loop group. */
+    public void closeConnections() throws InterruptedException {
+        try {
+            for (BitsoWebSocket connection : mConnections) {
+                if (connection.isConnected()) {
+                    connection.closeConnection();
+                }
+            }
+        } finally {
+            mGroup.shutdownGracefully();
+        }
+    }
+}
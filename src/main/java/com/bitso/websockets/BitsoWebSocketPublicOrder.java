@@ -18,7 +18,7 @@ public class BitsoWebSocketPublicOrder {
     private String mStatus;
 
     public BitsoWebSocketPublicOrder(JSONObject jsonObject) {
-        mOrderDate = new java.util.Date(jsonObject.getLong("d") * 1000);
+        mOrderDate = new java.util.Date(toMillis(jsonObject.getLong("d")));
         mRate = new BigDecimal(String.valueOf(jsonObject.getDouble("r")));
         mSide = (Helpers.getInt(jsonObject, "t") == 1) ? BitsoOrder.SIDE.SELL : BitsoOrder.SIDE.BUY;
         if (jsonObject.has("a") && jsonObject.has("v")) {
@@ -34,6 +34,12 @@ public class BitsoWebSocketPublicOrder {
         mStatus = jsonObject.getString("s");
     }
 
+    /** diff-orders timestamps are in milliseconds; older orders payloads used seconds. */
+    static long toMillis(long timestamp) {
+        // 10^11 seconds is far in the future, 10^11 milliseconds is in 1973
+        return (timestamp < 100_000_000_000L) ? timestamp * 1000 : timestamp;
+    }
+
     public Date getOrderDate() {
         return mOrderDate;
     }
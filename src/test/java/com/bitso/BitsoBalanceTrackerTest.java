@@ -0,0 +1,242 @@
+package com.bitso;
+
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.bitso.exceptions.BitsoAPIException;
+import com.bitso.exceptions.BitsoPayloadException;
+import com.bitso.exceptions.BitsoServerException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BitsoBalanceTrackerTest {
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    // Server side state, the ledger is kept oldest first
+    private final List<JSONObject> ledger = new ArrayList<JSONObject>();
+    private final AtomicInteger snapshots = new AtomicInteger();
+    private BigDecimal mxnAvailable;
+    private BigDecimal mxnLocked;
+    private BigDecimal btcAvailable;
+    private Bitso bitso;
+
+    @BeforeEach
+    public void setUp() {
+        mxnAvailable = new BigDecimal("1000");
+        mxnLocked = BigDecimal.ZERO;
+        btcAvailable = BigDecimal.ZERO;
+        entry("old1", "funding", new Date(System.currentTimeMillis() - 48 * HOUR), "mxn", "1000");
+
+        bitso = new Bitso("key", "secret", false) {
+            @Override
+            public BitsoBalance getAccountBalance() {
+                snapshots.incrementAndGet();
+                JSONArray balances = new JSONArray();
+                balances.put(balance("mxn", mxnAvailable, mxnLocked));
+                balances.put(balance("btc", btcAvailable, BigDecimal.ZERO));
+                return new BitsoBalance(new JSONObject().put("balances", balances));
+            }
+
+            @Override
+            public synchronized BitsoOperation[] getLedger(String specificOperation,
+                    String... queryParameters) {
+                String marker = null;
+                boolean ascending = false;
+                int limit = 25;
+                for (String parameter : queryParameters) {
+                    if (parameter.startsWith("marker=")) {
+                        marker = parameter.substring("marker=".length());
+                    } else if (parameter.equals("sort=asc")) {
+                        ascending = true;
+                    } else if (parameter.startsWith("limit=")) {
+                        limit = Integer.parseInt(parameter.substring("limit=".length()));
+                    }
+                }
+                List<BitsoOperation> result = new ArrayList<BitsoOperation>();
+                if (ascending) {
+                    boolean afterMarker = (marker == null);
+                    for (JSONObject o : ledger) {
+                        if (afterMarker && result.size() < limit) {
+                            result.add(new BitsoOperation(o));
+                        } else if (o.getString("eid").equals(marker)) {
+                            afterMarker = true;
+                        }
+                    }
+                } else {
+                    for (int i = ledger.size() - 1; i >= 0 && result.size() < limit; i--) {
+                        result.add(new BitsoOperation(ledger.get(i)));
+                    }
+                }
+                return result.toArray(new BitsoOperation[0]);
+            }
+        };
+    }
+
+    private static JSONObject balance(String currency, BigDecimal available, BigDecimal locked) {
+        return new JSONObject().put("currency", currency)
+                .put("available", available.toPlainString())
+                .put("locked", locked.toPlainString())
+                .put("total", available.add(locked).toPlainString())
+                .put("pending_deposit", "0").put("pending_withdrawal", "0");
+    }
+
+    private void entry(String eid, String operation, Date date, String... updates) {
+        JSONArray balanceUpdates = new JSONArray();
+        for (int i = 0; i < updates.length; i += 2) {
+            balanceUpdates.put(new JSONObject().put("currency", updates[i]).put("amount", updates[i + 1]));
+        }
+        String createdAt = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(date);
+        ledger.add(new JSONObject().put("eid", eid).put("operation", operation).put("created_at", createdAt)
+                .put("balance_updates", balanceUpdates).put("details", new JSONObject()));
+    }
+
+    /** A trade settled on the server: the ledger gets the entry and the balances change. */
+    private void trade(String eid, Date date, String mxn, String btc, boolean fromLocked) {
+        entry(eid, "trade", date, "mxn", mxn, "btc", btc);
+        if (fromLocked) {
+            mxnLocked = mxnLocked.add(new BigDecimal(mxn));
+        } else {
+            mxnAvailable = mxnAvailable.add(new BigDecimal(mxn));
+        }
+        btcAvailable = btcAvailable.add(new BigDecimal(btc));
+    }
+
+    private static void assertAmount(String expected, BigDecimal actual) {
+        assertEquals(0, new BigDecimal(expected).compareTo(actual), expected + " != " + actual);
+    }
+
+    @Test
+    public void testEntryBeforeSnapshotIsNotCountedTwice()
+            throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        // Settled before the snapshot, so it's already part of the balances, though the server's
+        // clock dates it ahead of ours
+        trade("t1", new Date(System.currentTimeMillis() + HOUR), "-100", "0.01", false);
+
+        BitsoBalanceTracker tracker = new BitsoBalanceTracker(bitso, 0);
+        tracker.seed();
+        assertEquals("t1", tracker.getMarker());
+        assertAmount("900", tracker.getAvailable("mxn"));
+        assertEquals(0, tracker.poll());
+        assertAmount("900", tracker.getAvailable("mxn"));
+        assertAmount("0.01", tracker.getAvailable("btc"));
+    }
+
+    @Test
+    public void testEntryAfterSnapshotIsApplied()
+            throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        BitsoBalanceTracker tracker = new BitsoBalanceTracker(bitso, 0);
+        tracker.seed();
+        assertEquals("old1", tracker.getMarker());
+
+        // Settles after the snapshot, though the server's clock dates it behind ours
+        trade("t1", new Date(System.currentTimeMillis() - HOUR), "-100", "0.01", false);
+        assertEquals(1, tracker.poll());
+        assertEquals("t1", tracker.getMarker());
+        assertAmount("900", tracker.getAvailable("mxn"));
+        assertAmount("0.01", tracker.getAvailable("btc"));
+        assertEquals(0, tracker.poll());
+        assertAmount("900", tracker.getAvailable("mxn"));
+    }
+
+    @Test
+    public void testEntryInSnapshotSecondIsApplied()
+            throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        BitsoBalanceTracker tracker = new BitsoBalanceTracker(bitso, 0);
+        tracker.seed();
+        tracker.reconcile();
+
+        // Ledger dates have second resolution, so this one reads as taken before the snapshot
+        trade("t1", new Date(), "-100", "0.01", false);
+        assertEquals(1, tracker.poll());
+        assertAmount("900", tracker.getAvailable("mxn"));
+        assertAmount("0.01", tracker.getAvailable("btc"));
+    }
+
+    @Test
+    public void testReconcileSkipsEntriesInSnapshot()
+            throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        BitsoBalanceTracker tracker = new BitsoBalanceTracker(bitso, 0);
+        tracker.seed();
+
+        // Not polled yet when the snapshot is taken, but already in it
+        trade("t1", new Date(System.currentTimeMillis() + HOUR), "-100", "0.01", false);
+        tracker.reconcile();
+        // Settles after the snapshot
+        trade("t2", new Date(System.currentTimeMillis() - HOUR), "-50", "0.005", false);
+
+        assertEquals(1, tracker.poll());
+        assertEquals("t2", tracker.getMarker());
+        assertAmount("850", tracker.getAvailable("mxn"));
+        assertAmount("850", tracker.getTotal("mxn"));
+        assertAmount("0.015", tracker.getAvailable("btc"));
+    }
+
+    @Test
+    public void testFillOfLockedOrderOnlyReducesTotal()
+            throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        // A limit order locked 100 MXN before the snapshot
+        mxnAvailable = new BigDecimal("900");
+        mxnLocked = new BigDecimal("100");
+
+        BitsoBalanceTracker tracker = new BitsoBalanceTracker(bitso, 0);
+        tracker.seed();
+        assertAmount("900", tracker.getAvailable("mxn"));
+        assertAmount("1000", tracker.getTotal("mxn"));
+
+        trade("t1", new Date(System.currentTimeMillis() + HOUR), "-60", "0.006", true);
+        assertEquals(1, tracker.poll());
+        assertAmount("900", tracker.getAvailable("mxn"));
+        assertAmount("940", tracker.getTotal("mxn"));
+        assertAmount("40", tracker.getLocked("mxn"));
+        assertAmount("0.006", tracker.getAvailable("btc"));
+
+        // Only 40 are left locked, the rest comes out of the available balance
+        entry("t2", "trade", new Date(System.currentTimeMillis() + HOUR), "mxn", "-70", "btc", "0.007");
+        assertEquals(1, tracker.poll());
+        assertAmount("870", tracker.getAvailable("mxn"));
+        assertAmount("870", tracker.getTotal("mxn"));
+        assertAmount("0", tracker.getLocked("mxn"));
+
+        // Withdrawals always come out of the available balance
+        entry("w1", "withdrawal", new Date(System.currentTimeMillis() + HOUR), "mxn", "-20");
+        assertEquals(1, tracker.poll());
+        assertAmount("850", tracker.getAvailable("mxn"));
+    }
+
+    @Test
+    public void testConcurrentPollsReconcileOnSchedule() throws Exception {
+        final BitsoBalanceTracker tracker = new BitsoBalanceTracker(bitso, 10);
+        tracker.seed();
+        snapshots.set(0);
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 25; i++) {
+                            tracker.poll();
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(10, snapshots.get());
+        assertAmount("1000", tracker.getAvailable("mxn"));
+    }
+}
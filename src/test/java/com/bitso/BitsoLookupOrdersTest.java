@@ -0,0 +1,120 @@
+package com.bitso;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.bitso.exceptions.BitsoAPIException;
+import com.bitso.exceptions.BitsoPayloadException;
+import com.bitso.exceptions.BitsoServerException;
+import com.bitso.helpers.Helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoLookupOrdersTest {
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+    private final Set<Thread> requestThreads = Collections.synchronizedSet(new HashSet<Thread>());
+    private Bitso bitso;
+
+    @BeforeEach
+    public void setUp() {
+        final JSONObject template = Helpers.getJSONFromFile("privateLookUpOrders.json")
+                .getJSONArray("payload").getJSONObject(0);
+
+        // Answers every lookup with one order per requested id
+        bitso = new Bitso("key", "secret", false) {
+            @Override
+            public String sendBitsoGet(String requestPath) {
+                requests.add(requestPath);
+                requestThreads.add(Thread.currentThread());
+                String[] ids = requestPath.substring("/api/v3/orders/".length()).split("-");
+                JSONArray payload = new JSONArray();
+                for (String id : ids) {
+                    if (!id.startsWith("unknown")) {
+                        payload.put(new JSONObject(template.toString()).put("oid", id));
+                    }
+                }
+                return new JSONObject().put("success", true).put("payload", payload).toString();
+            }
+        };
+        bitso.setLookupChunkSize(3);
+    }
+
+    @Test
+    public void testLookupOrdersBulk() throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        String[] ids = { "a1", "a2", "a3", "a4", "a5", "a6", "a7", "unknown1", "a1", " " };
+        Map<String, BitsoOrder> orders = bitso.lookupOrdersBulk(ids);
+
+        assertEquals(3, requests.size());
+        assertEquals(7, orders.size());
+        for (int i = 1; i <= 7; i++) {
+            BitsoOrder order = orders.get("a" + i);
+            assertNotNull(order);
+            assertEquals("a" + i, order.getOid());
+        }
+        for (String request : requests) {
+            assertTrue(request.split("-").length <= bitso.getLookupChunkSize());
+        }
+        // Chunks are signed and sent in order from the calling thread
+        assertEquals("/api/v3/orders/a1-a2-a3", requests.get(0));
+        assertEquals("/api/v3/orders/a4-a5-a6", requests.get(1));
+        assertEquals("/api/v3/orders/a7-unknown1", requests.get(2));
+        assertEquals(Collections.singleton(Thread.currentThread()), requestThreads);
+    }
+
+    @Test
+    public void testSettingsPerInstance() {
+        Bitso other = new Bitso("key", "secret", false);
+        assertEquals(3, bitso.getLookupChunkSize());
+        assertEquals(20, other.getLookupChunkSize());
+        other.setLookupChunkSize(0);
+        assertEquals(1, other.getLookupChunkSize());
+        assertEquals(3, bitso.getLookupChunkSize());
+    }
+
+    @Test
+    public void testNoncesStrictlyIncreasing() throws Exception {
+        final int perThread = 2_000;
+        final long[][] nonces = new long[4][perThread];
+        Thread[] threads = new Thread[nonces.length];
+        for (int t = 0; t < threads.length; t++) {
+            final long[] mine = nonces[t];
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        mine[i] = Bitso.nextNonce();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        Set<Long> unique = new HashSet<Long>();
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+            for (int i = 0; i < perThread; i++) {
+                assertTrue(unique.add(nonces[t][i]));
+                if (i > 0) {
+                    assertTrue(nonces[t][i] > nonces[t][i - 1]);
+                }
+            }
+        }
+        assertTrue(Bitso.nextNonce() >= 2 * (System.currentTimeMillis() - 1000));
+    }
+
+    @Test
+    public void testLookupOrdersBulkEmpty() throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        assertTrue(bitso.lookupOrdersBulk().isEmpty());
+        assertTrue(bitso.lookupOrdersBulk((String[]) null).isEmpty());
+        assertTrue(requests.isEmpty());
+    }
+}
@@ -0,0 +1,194 @@
+package com.bitso;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.bitso.exceptions.BitsoAPIException;
+import com.bitso.exceptions.BitsoPayloadException;
+import com.bitso.exceptions.BitsoServerException;
+import com.bitso.exceptions.BitsoValidationException;
+import com.bitso.helpers.Helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoOrderTrackerTest {
+    private static final String BOOK = "btc_mxn";
+
+    // Server side state: open orders in the order the API pages them, and every order by id
+    private final Map<String, JSONObject> openOrders = new LinkedHashMap<String, JSONObject>();
+    private final Map<String, JSONObject> allOrders = new LinkedHashMap<String, JSONObject>();
+    private final List<List<String>> pageRequests = new ArrayList<List<String>>();
+    private final List<String> lookupRequests = new ArrayList<String>();
+    private JSONObject template;
+    private BitsoOrderTracker tracker;
+
+    @BeforeEach
+    public void setUp() {
+        template = Helpers.getJSONFromFile("privateOpenOrders.json").getJSONArray("payload").getJSONObject(0);
+
+        Bitso bitso = new Bitso("key", "secret", false) {
+            @Override
+            public JSONArray getOpenOrdersPayload(String book, String... queryParameters) {
+                pageRequests.add(Arrays.asList(queryParameters));
+                int limit = 25;
+                String marker = null;
+                for (String parameter : queryParameters) {
+                    if (parameter.startsWith("limit=")) {
+                        limit = Integer.parseInt(parameter.substring("limit=".length()));
+                    } else if (parameter.startsWith("marker=")) {
+                        marker = parameter.substring("marker=".length());
+                    }
+                }
+                JSONArray page = new JSONArray();
+                boolean afterMarker = (marker == null);
+                for (JSONObject o : openOrders.values()) {
+                    if (page.length() == limit) {
+                        break;
+                    }
+                    if (afterMarker) {
+                        page.put(new JSONObject(o.toString()));
+                    } else if (o.getString("oid").equals(marker)) {
+                        afterMarker = true;
+                    }
+                }
+                return page;
+            }
+
+            @Override
+            public String sendBitsoGet(String requestPath) {
+                lookupRequests.add(requestPath);
+                String[] ids = requestPath.substring("/api/v3/orders/".length()).split("-");
+                JSONArray payload = new JSONArray();
+                for (String id : ids) {
+                    if (allOrders.containsKey(id)) {
+                        payload.put(allOrders.get(id));
+                    }
+                }
+                return new JSONObject().put("success", true).put("payload", payload).toString();
+            }
+
+            @Override
+            public String placeOrder(String book, BitsoOrder.SIDE side, BitsoOrder.TYPE type,
+                    BigDecimal major, BigDecimal minor, BigDecimal price, BitsoOrder.TIME_IN_FORCE tif) {
+                return "placed1";
+            }
+
+            @Override
+            public String[] cancelOrder(String... ordersIds) {
+                return ordersIds;
+            }
+        };
+        tracker = new BitsoOrderTracker(bitso);
+    }
+
+    private JSONObject serverOrder(String oid, String status, String updatedAt) {
+        JSONObject o = new JSONObject(template.toString())
+                .put("oid", oid).put("status", status).put("updated_at", updatedAt);
+        allOrders.put(oid, o);
+        if (status.equals("open") || status.equals("partially filled")) {
+            openOrders.put(oid, o);
+        } else {
+            openOrders.remove(oid);
+        }
+        return o;
+    }
+
+    @Test
+    public void testReconcilePagesWithMarker()
+            throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        for (int i = 0; i < 150; i++) {
+            serverOrder(String.format("o%03d", i), "open", "2016-04-08T17:52:31+00:00");
+        }
+
+        assertEquals(150, tracker.reconcile(BOOK));
+        assertEquals(150, tracker.size());
+        assertEquals(2, pageRequests.size());
+        assertEquals(Arrays.asList("limit=100"), pageRequests.get(0));
+        assertEquals(Arrays.asList("limit=100", "marker=o099"), pageRequests.get(1));
+        // Every order was still open, so nothing needed a lookup
+        assertTrue(lookupRequests.isEmpty());
+    }
+
+    @Test
+    public void testUnchangedOrdersAreNotDecoded()
+            throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        serverOrder("o1", "open", "2016-04-08T17:52:31+00:00");
+        serverOrder("o2", "open", "2016-04-08T17:52:31+00:00");
+
+        assertEquals(2, tracker.reconcile(BOOK));
+        assertEquals(0, tracker.reconcile(BOOK));
+
+        serverOrder("o2", "partially filled", "2016-04-08T17:55:00+00:00");
+        assertEquals(1, tracker.reconcile(BOOK));
+        assertEquals(BitsoOrder.STATUS.PARTIALLY_FILLED, tracker.getOrder("o2").getStatus());
+        assertEquals(BitsoOrder.STATUS.OPEN, tracker.getOrder("o1").getStatus());
+    }
+
+    @Test
+    public void testMissingOrdersAreLookedUpInBulk()
+            throws BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        serverOrder("open1", "open", "2016-04-08T17:52:31+00:00");
+        serverOrder("filled1", "open", "2016-04-08T17:52:31+00:00");
+        serverOrder("queued1", "open", "2016-04-08T17:52:31+00:00");
+        serverOrder("gone1", "open", "2016-04-08T17:52:31+00:00");
+        assertEquals(4, tracker.reconcile(BOOK));
+
+        serverOrder("filled1", "completed", "2016-04-08T17:53:00+00:00");
+        serverOrder("queued1", "queued", "2016-04-08T17:53:00+00:00");
+        openOrders.remove("gone1");
+        allOrders.remove("gone1");
+
+        assertEquals(3, tracker.reconcile(BOOK));
+        assertEquals(1, lookupRequests.size());
+        String[] looked = lookupRequests.get(0).substring("/api/v3/orders/".length()).split("-");
+        Arrays.sort(looked);
+        assertEquals(Arrays.asList("filled1", "gone1", "queued1"), Arrays.asList(looked));
+        assertNotNull(tracker.getOrder("open1"));
+        assertNull(tracker.getOrder("filled1"));
+        assertNull(tracker.getOrder("gone1"));
+        assertEquals(BitsoOrder.STATUS.QUEUED, tracker.getOrder("queued1").getStatus());
+        assertEquals(2, tracker.size());
+    }
+
+    @Test
+    public void testPlacedOrderIsTrackedProvisionally() throws BitsoAPIException, BitsoPayloadException,
+            BitsoServerException, BitsoValidationException {
+        String oid = tracker.placeOrder(BOOK, BitsoOrder.SIDE.BUY, BitsoOrder.TYPE.LIMIT,
+                new BigDecimal("0.5"), null, new BigDecimal("5600.00"),
+                BitsoOrder.TIME_IN_FORCE.GOODTILLCANCELLED);
+
+        assertEquals("placed1", oid);
+        BitsoOrder order = tracker.getOrder(oid);
+        assertNotNull(order);
+        assertEquals(BOOK, order.getBook());
+        assertEquals(BitsoOrder.SIDE.BUY, order.getSide());
+        assertEquals(BitsoOrder.STATUS.QUEUED, order.getStatus());
+        assertEquals(new BigDecimal("0.5"), order.getOriginalAmount());
+        assertEquals(new BigDecimal("5600.00"), order.getPrice());
+        assertNotNull(order.getUpdateDate());
+        assertEquals(1, tracker.getOrders(BOOK, BitsoOrder.SIDE.BUY, BitsoOrder.STATUS.QUEUED).size());
+        assertEquals(0, tracker.getOrders(BOOK, BitsoOrder.SIDE.SELL).size());
+
+        // Once the server reports it, the provisional order is replaced
+        JSONObject placed = serverOrder(oid, "open", "2016-04-08T17:52:31+00:00");
+        placed.put("side", "buy");
+        assertEquals(1, tracker.reconcile(BOOK));
+        assertEquals(BitsoOrder.STATUS.OPEN, tracker.getOrder(oid).getStatus());
+
+        tracker.cancelOrder(oid);
+        assertNull(tracker.getOrder(oid));
+        assertEquals(0, tracker.size());
+    }
+}
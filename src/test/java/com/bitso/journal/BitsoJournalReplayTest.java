@@ -0,0 +1,126 @@
+package com.bitso.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.bitso.websockets.BitsoStreamProcessedOrders;
+import com.bitso.websockets.BitsoTransport;
+import com.bitso.websockets.BitsoWebSocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoJournalReplayTest {
+    @TempDir
+    File directory;
+
+    private static String diffFrame(int sequence) {
+        return "{\"type\":\"diff-orders\",\"book\":\"btc_mxn\",\"sequence\":" + sequence
+                + ",\"payload\":[{\"o\":\"oid" + sequence + "\",\"d\":1501372800000,\"r\":\"70000.5\","
+                + "\"t\":0,\"a\":\"0.01\",\"v\":\"700.005\",\"s\":\"open\"}]}";
+    }
+
+    @Test
+    public void testRecordAndReplay() throws IOException {
+        // Small segments so the journal rolls several times
+        BitsoJournalWriter writer = new BitsoJournalWriter(directory, 1024);
+        List<String> recorded = new ArrayList<String>();
+        long time = writer.now();
+        for (int i = 1; i <= 50; i++) {
+            String frame = diffFrame(i);
+            recorded.add(frame);
+            writer.append(frame, time + i * 1_000_000L);
+        }
+        writer.append("{\"type\":\"ka\",\"note\":\"año\"}", time + 51 * 1_000_000L);
+        recorded.add("{\"type\":\"ka\",\"note\":\"año\"}");
+        writer.close();
+        assertEquals(51, writer.getRecordsWritten());
+        assertTrue(directory.listFiles().length > 1);
+
+        final List<Object> received = new ArrayList<Object>();
+        BitsoJournalReplay replay = new BitsoJournalReplay(directory);
+        replay.addObserver(new Observer() {
+            public void update(Observable o, Object arg) {
+                received.add(arg);
+            }
+        });
+
+        long start = System.nanoTime();
+        assertEquals(51, replay.replay(10));
+        // 50 ms of recorded frames at 10x
+        assertTrue(System.nanoTime() - start >= 5_000_000L);
+
+        assertEquals(Boolean.TRUE, received.get(0));
+        assertEquals(Boolean.FALSE, received.get(received.size() - 1));
+        assertEquals(recorded, received.subList(1, received.size() - 1));
+    }
+
+    @Test
+    public void testReaderResumesAfterReopen() throws IOException {
+        BitsoJournalWriter first = new BitsoJournalWriter(directory, 4096);
+        first.append(diffFrame(1));
+        first.close();
+        BitsoJournalWriter second = new BitsoJournalWriter(directory, 4096);
+        second.append(diffFrame(2));
+        second.close();
+
+        BitsoJournalReader reader = new BitsoJournalReader(directory);
+        assertTrue(reader.next());
+        assertEquals(diffFrame(1), reader.getFrame());
+        assertTrue(reader.next());
+        assertEquals(diffFrame(2), reader.getFrame());
+        assertTrue(!reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void testRecordsTypedProcessedOrders() throws Exception {
+        String processedOrders = "{\"type\":\"processed-orders\",\"book\":\"btc_mxn\",\"payload\":["
+                + "{\"o\":\"Xx1\",\"s\":\"cancelled\"}]}";
+        BitsoWebSocket webSocket = new BitsoWebSocket(BitsoTransport.NIO);
+        webSocket.setTypedProcessedOrders(true);
+        BitsoJournalWriter writer = new BitsoJournalWriter(directory, 4096);
+        webSocket.addObserver(writer);
+        webSocket.setMessageReceived(processedOrders);
+        webSocket.setMessageReceived(diffFrame(1));
+        writer.close();
+        webSocket.getEventLoopGroup().shutdownGracefully();
+
+        final List<Object> received = new ArrayList<Object>();
+        BitsoJournalReplay replay = new BitsoJournalReplay(directory);
+        replay.addObserver(new Observer() {
+            public void update(Observable o, Object arg) {
+                received.add(arg);
+            }
+        });
+        assertEquals(2, replay.replay(BitsoJournalReplay.AS_FAST_AS_POSSIBLE));
+        assertEquals(processedOrders, received.get(1));
+        assertEquals(diffFrame(1), received.get(2));
+
+        // Decoded the same way as live
+        received.clear();
+        replay.setTypedProcessedOrders(true);
+        assertEquals(2, replay.replay(BitsoJournalReplay.AS_FAST_AS_POSSIBLE));
+        assertTrue(received.get(1) instanceof BitsoStreamProcessedOrders);
+        assertEquals(processedOrders, ((BitsoStreamProcessedOrders) received.get(1)).getFrame());
+        assertEquals(diffFrame(1), received.get(2));
+    }
+
+    @Test
+    public void testCountsFramesThatCannotBeRecorded() throws IOException {
+        BitsoJournalWriter writer = new BitsoJournalWriter(directory, 64);
+        writer.update(null, diffFrame(1));
+        writer.update(null, "{\"type\":\"ka\"}");
+        writer.close();
+        assertEquals(1, writer.getRecordsWritten());
+        assertEquals(1, writer.getFailures());
+        assertTrue(writer.getLastFailure().getMessage().contains("does not fit"));
+    }
+}
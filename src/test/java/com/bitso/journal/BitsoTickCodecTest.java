@@ -0,0 +1,198 @@
+package com.bitso.journal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.bitso.BitsoOrder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoTickCodecTest {
+    private static final long START = 1501372800000L;
+
+    @TempDir
+    File directory;
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File file = new File(directory, "btc_mxn.ticks");
+        // Small blocks so the archive holds several of them
+        BitsoTickEncoder encoder = new BitsoTickEncoder(new FileOutputStream(file), "btc_mxn", 2, 8, 16);
+        for (int i = 0; i < 100; i++) {
+            BigDecimal price = new BigDecimal("70000.50").add(new BigDecimal(i % 7).movePointLeft(2));
+            if (i % 2 == 0) {
+                encoder.encodeTrade(START + i * 10, 1000 + i, BitsoOrder.SIDE.SELL, price,
+                        new BigDecimal("0.00125"));
+            } else {
+                encoder.encodeDiff(START + i * 10, 500 + i, "oid" + i, BitsoOrder.SIDE.BUY,
+                        BitsoTick.STATUS.CANCELLED, price, BigDecimal.ZERO);
+            }
+        }
+        encoder.close();
+
+        BitsoTickDecoder decoder = new BitsoTickDecoder(file);
+        assertEquals("btc_mxn", decoder.getBook());
+        assertEquals(7, decoder.getBlockCount());
+        int i = 0;
+        while (decoder.next()) {
+            BitsoTick tick = decoder.getTick();
+            BigDecimal price = new BigDecimal("70000.50").add(new BigDecimal(i % 7).movePointLeft(2));
+            assertEquals(START + i * 10, tick.getTimestamp());
+            assertEquals(0, price.compareTo(tick.getPriceDecimal()));
+            if (i % 2 == 0) {
+                assertEquals(BitsoTick.KIND.TRADE, tick.getKind());
+                assertEquals(1000 + i, tick.getTradeId());
+                assertEquals(BitsoOrder.SIDE.SELL, tick.getSide());
+                assertEquals(125000, tick.getAmountUnits());
+                assertNull(tick.getOrderId());
+            } else {
+                assertEquals(BitsoTick.KIND.DIFF, tick.getKind());
+                assertEquals(500 + i, tick.getSequence());
+                assertEquals("oid" + i, tick.getOrderId());
+                assertEquals(BitsoTick.STATUS.CANCELLED, tick.getStatus());
+                assertEquals(0, tick.getAmountUnits());
+            }
+            i++;
+        }
+        assertEquals(100, i);
+        decoder.close();
+    }
+
+    @Test
+    public void testSeek() throws IOException {
+        File file = new File(directory, "btc_mxn.ticks");
+        BitsoTickEncoder encoder = new BitsoTickEncoder(new FileOutputStream(file), "btc_mxn", 2, 8, 10);
+        for (int i = 0; i < 50; i++) {
+            encoder.encodeDiff(START + i * 10, i, "oid" + i, BitsoOrder.SIDE.SELL, BitsoTick.STATUS.OPEN,
+                    new BigDecimal("70000"), new BigDecimal("1"));
+        }
+        encoder.close();
+
+        BitsoTickDecoder decoder = new BitsoTickDecoder(file);
+        decoder.seekTimestamp(START + 255);
+        assertTrue(decoder.next());
+        assertEquals(20, decoder.getTick().getSequence());
+
+        decoder.seekSequence(47);
+        assertTrue(decoder.next());
+        assertEquals(40, decoder.getTick().getSequence());
+
+        decoder.seekTimestamp(START - 1);
+        assertTrue(decoder.next());
+        assertEquals(0, decoder.getTick().getSequence());
+        decoder.close();
+    }
+
+    @Test
+    public void testEmptyArchive() throws IOException {
+        File file = new File(directory, "empty.ticks");
+        new BitsoTickEncoder(file, "eth_mxn", 2, 8).close();
+        BitsoTickDecoder decoder = new BitsoTickDecoder(file);
+        assertEquals("eth_mxn", decoder.getBook());
+        assertFalse(decoder.next());
+        decoder.close();
+    }
+
+    @Test
+    public void testOrderIdsAndUnknownSide() throws IOException {
+        StringBuilder longId = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            longId.append((char) ('a' + i % 26));
+        }
+        String[] ids = { longId.toString(), "orden-\u00f1\u4e2d\u0416", "oid1" };
+
+        File file = new File(directory, "btc_mxn.ticks");
+        BitsoTickEncoder encoder = new BitsoTickEncoder(new FileOutputStream(file), "btc_mxn", 2, 8, 16);
+        for (int i = 0; i < ids.length; i++) {
+            encoder.encodeDiff(START + i, i, ids[i], null, BitsoTick.STATUS.OPEN, new BigDecimal("70000"),
+                    new BigDecimal("1"));
+        }
+        encoder.encodeTrade(START + 10, 1, null, new BigDecimal("70000"), new BigDecimal("1"));
+        encoder.close();
+
+        BitsoTickDecoder decoder = new BitsoTickDecoder(file);
+        for (String id : ids) {
+            assertTrue(decoder.next());
+            assertEquals(id, decoder.getTick().getOrderId());
+            assertNull(decoder.getTick().getSide());
+        }
+        assertTrue(decoder.next());
+        assertEquals(BitsoTick.KIND.TRADE, decoder.getTick().getKind());
+        assertNull(decoder.getTick().getSide());
+        assertFalse(decoder.next());
+        decoder.close();
+    }
+
+    @Test
+    public void testMissingPriceAndAmount() throws IOException {
+        File file = new File(directory, "btc_mxn.ticks");
+        BitsoTickEncoder encoder = new BitsoTickEncoder(new FileOutputStream(file), "btc_mxn", 2, 8, 16);
+        encoder.encodeDiff(START, 1, "oid1", BitsoOrder.SIDE.BUY, BitsoTick.STATUS.OPEN,
+                new BigDecimal("70000"), new BigDecimal("1"));
+        encoder.encodeDiff(START + 1, 2, "oid1", BitsoOrder.SIDE.BUY, BitsoTick.STATUS.CANCELLED,
+                new BigDecimal("70000"), null);
+        encoder.encodeTrade(START + 2, 1, BitsoOrder.SIDE.SELL, null, null);
+        encoder.encodeDiff(START + 3, 3, "oid2", BitsoOrder.SIDE.SELL, BitsoTick.STATUS.OPEN,
+                new BigDecimal("70001"), BigDecimal.ZERO);
+        encoder.close();
+
+        BitsoTickDecoder decoder = new BitsoTickDecoder(file);
+        assertTrue(decoder.next());
+        assertTrue(decoder.getTick().hasAmount());
+        assertTrue(decoder.next());
+        assertTrue(decoder.getTick().hasPrice());
+        assertFalse(decoder.getTick().hasAmount());
+        assertNull(decoder.getTick().getAmountDecimal());
+        assertTrue(Double.isNaN(decoder.getTick().getAmount()));
+        assertTrue(decoder.next());
+        assertNull(decoder.getTick().getPriceDecimal());
+        assertNull(decoder.getTick().getAmountDecimal());
+        // A known zero amount is not confused with a missing one, and the price delta skipped the gap
+        assertTrue(decoder.next());
+        assertEquals(0, new BigDecimal("70001").compareTo(decoder.getTick().getPriceDecimal()));
+        assertEquals(0, BigDecimal.ZERO.compareTo(decoder.getTick().getAmountDecimal()));
+        assertFalse(decoder.next());
+        decoder.close();
+    }
+
+    @Test
+    public void testInexactValuesAreRejected() throws IOException {
+        File file = new File(directory, "btc_mxn.ticks");
+        final BitsoTickEncoder encoder = new BitsoTickEncoder(new FileOutputStream(file), "btc_mxn",
+                2, 8, 16);
+        // More decimals than the price scale
+        assertThrows(IllegalArgumentException.class, new Executable() {
+            public void execute() throws Throwable {
+                encoder.encodeTrade(START, 1, BitsoOrder.SIDE.BUY, new BigDecimal("70000.505"),
+                        new BigDecimal("1"));
+            }
+        });
+        // Too large for a long at the amount scale
+        assertThrows(IllegalArgumentException.class, new Executable() {
+            public void execute() throws Throwable {
+                encoder.encodeDiff(START, 1, "oid1", BitsoOrder.SIDE.BUY, BitsoTick.STATUS.OPEN,
+                        new BigDecimal("70000"), new BigDecimal("100000000000000"));
+            }
+        });
+        // Trailing zeros past the scale are still exact
+        encoder.encodeTrade(START, 1, BitsoOrder.SIDE.BUY, new BigDecimal("70000.5000"), new BigDecimal("1"));
+        encoder.close();
+
+        // The rejected ticks left nothing behind
+        BitsoTickDecoder decoder = new BitsoTickDecoder(file);
+        assertTrue(decoder.next());
+        assertEquals(7000050, decoder.getTick().getPriceTicks());
+        assertFalse(decoder.next());
+        decoder.close();
+    }
+}
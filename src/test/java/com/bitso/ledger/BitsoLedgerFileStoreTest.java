@@ -0,0 +1,74 @@
+package com.bitso.ledger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class BitsoLedgerFileStoreTest {
+    @TempDir
+    File directory;
+
+    private JSONArray entries(int from, int to) {
+        JSONArray array = new JSONArray();
+        for (int i = from; i <= to; i++) {
+            array.put(new JSONObject().put("eid", "e" + i).put("operation", "trade"));
+        }
+        return array;
+    }
+
+    private List<String> readIds(BitsoLedgerFileStore store, String stream) throws IOException {
+        final List<String> ids = new ArrayList<String>();
+        store.read(stream, new BitsoLedgerFileStore.EntryHandler() {
+            public void onEntry(JSONObject entry) {
+                ids.add(entry.getString("eid"));
+            }
+        });
+        return ids;
+    }
+
+    @Test
+    public void testAppendAndReopen() throws IOException {
+        BitsoLedgerFileStore store = new BitsoLedgerFileStore(directory);
+        assertNull(store.getMarker(null));
+
+        store.append(null, entries(1, 3));
+        store.append("trades", entries(1, 1));
+        store.append(null, entries(4, 5));
+        assertEquals("e5", store.getMarker(null));
+        assertEquals("e1", store.getMarker("trades"));
+
+        BitsoLedgerFileStore reopened = new BitsoLedgerFileStore(directory);
+        assertEquals("e5", reopened.getMarker(BitsoLedgerFileStore.ALL));
+        assertEquals("e1", reopened.getMarker("trades"));
+        assertNull(reopened.getMarker("fees"));
+        assertEquals(5, readIds(reopened, null).size());
+    }
+
+    @Test
+    public void testRecoversFromPartialWrite() throws IOException {
+        BitsoLedgerFileStore store = new BitsoLedgerFileStore(directory);
+        store.append("fees", entries(1, 2));
+
+        // Simulate a crash after a complete line and in the middle of the next one
+        FileOutputStream out = new FileOutputStream(new File(directory, "fees.jsonl"), true);
+        out.write("{\"eid\":\"e3\"}\n{\"eid\":\"e4\",\"oper".getBytes(StandardCharsets.UTF_8));
+        out.close();
+
+        BitsoLedgerFileStore reopened = new BitsoLedgerFileStore(directory);
+        assertEquals("e3", reopened.getMarker("fees"));
+        List<String> ids = readIds(reopened, "fees");
+        assertEquals(3, ids.size());
+        assertEquals("e3", ids.get(2));
+    }
+}
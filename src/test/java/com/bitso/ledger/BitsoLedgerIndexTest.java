@@ -0,0 +1,85 @@
+package com.bitso.ledger;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.bitso.BitsoOperation;
+import com.bitso.helpers.Helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoLedgerIndexTest {
+    // 2017-07-29T00:00:00Z and 2017-07-30T00:00:00Z
+    private static final long JULY_29 = 1501286400000L;
+    private static final long JULY_30 = 1501372800000L;
+
+    private BitsoLedgerIndex index;
+    private BitsoOperation[] operations;
+
+    @BeforeEach
+    public void setUp() {
+        // The ledger endpoint returns the newest entries first
+        JSONArray payload = Helpers.getJSONFromFile("privateLedger.json").getJSONArray("payload");
+        operations = new BitsoOperation[payload.length()];
+        for (int i = 0; i < operations.length; i++) {
+            operations[i] = new BitsoOperation(payload.getJSONObject(i));
+        }
+        index = new BitsoLedgerIndex();
+        assertEquals(operations.length, index.addAll(operations));
+        // The page is added oldest first, without a rebuild
+        assertTrue(index.isSorted());
+    }
+
+    @Test
+    public void testRangeQueries() {
+        assertEquals(0, index.addAll(operations));
+        assertEquals(25, index.count(null, 0, Long.MAX_VALUE));
+        assertEquals(5, index.count("trade", 0, Long.MAX_VALUE));
+        assertEquals(3, index.count(null, JULY_29, JULY_30));
+        assertEquals(0, index.count("unknown", 0, Long.MAX_VALUE));
+
+        List<BitsoOperation> trades = index.getEntries("trade", JULY_29, Long.MAX_VALUE);
+        assertEquals(4, trades.size());
+        for (int i = 1; i < trades.size(); i++) {
+            assertTrue(!trades.get(i).getOperationDate().before(trades.get(i - 1).getOperationDate()));
+        }
+        assertNotNull(index.getEntry("bb3d30fdf9033bd420c54c66a3e6871a"));
+    }
+
+    @Test
+    public void testCurrencyAggregates() {
+        assertEquals(0, new BigDecimal("4.69168995").compareTo(index.sum("eth", 0, Long.MAX_VALUE)));
+        assertEquals(0, new BigDecimal("4.69168995").compareTo(index.sum("eth", "trade", 0, Long.MAX_VALUE)));
+        assertEquals(0, new BigDecimal("0.01").compareTo(index.sum("eth", "funding", 0, Long.MAX_VALUE)));
+        assertEquals(0, new BigDecimal("-15000.00000000")
+                .compareTo(index.sum("mxn", "trade", JULY_29, JULY_30)));
+        assertEquals(0, BigDecimal.ZERO.compareTo(index.sum("ltc", 0, Long.MAX_VALUE)));
+        assertEquals(0, BigDecimal.ZERO.compareTo(index.sum("eth", "unknown", 0, Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testOlderPageAfterNewer() {
+        // Paging backwards, each page is older than the ones already added
+        BitsoLedgerIndex paged = new BitsoLedgerIndex();
+        int half = operations.length / 2;
+        paged.addAll(Arrays.copyOfRange(operations, 0, half));
+        paged.addAll(Arrays.copyOfRange(operations, half, operations.length));
+        assertTrue(!paged.isSorted());
+
+        assertEquals(index.count(null, JULY_29, JULY_30), paged.count(null, JULY_29, JULY_30));
+        assertTrue(paged.isSorted());
+        for (String currency : index.getCurrencies()) {
+            for (String operation : index.getOperations()) {
+                assertEquals(0, index.sum(currency, operation, JULY_29, Long.MAX_VALUE)
+                        .compareTo(paged.sum(currency, operation, JULY_29, Long.MAX_VALUE)));
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.bitso.ledger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.bitso.Bitso;
+import com.bitso.exceptions.BitsoAPIException;
+import com.bitso.exceptions.BitsoPayloadException;
+import com.bitso.exceptions.BitsoServerException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class BitsoLedgerSyncTest {
+    private static final String[] OPERATIONS = { "trade", "fee", "funding", "trade", "withdrawal" };
+
+    @TempDir
+    File directory;
+
+    private final List<String> requests = new ArrayList<String>();
+
+    // A ledger of 250 entries, so the whole ledger takes three pages
+    private final Bitso bitso = new Bitso("key", "secret", false) {
+        @Override
+        public JSONArray getLedgerPayload(String specificOperation, String... queryParameters) {
+            requests.add(String.valueOf(specificOperation));
+            int from = 0;
+            for (String parameter : queryParameters) {
+                if (parameter.startsWith("marker=e")) {
+                    from = Integer.parseInt(parameter.substring("marker=e".length())) + 1;
+                }
+            }
+            JSONArray page = new JSONArray();
+            for (int i = from; i < 250 && page.length() < 100; i++) {
+                page.put(new JSONObject().put("eid", "e" + i)
+                        .put("operation", OPERATIONS[i % OPERATIONS.length]));
+            }
+            return page;
+        }
+    };
+
+    @Test
+    public void testSyncAllDownloadsLedgerOnce()
+            throws IOException, BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        BitsoLedgerFileStore store = new BitsoLedgerFileStore(directory);
+        BitsoLedgerSync sync = new BitsoLedgerSync(bitso, store);
+
+        assertEquals(250, sync.syncAll());
+        assertEquals(3, requests.size());
+        for (String request : requests) {
+            assertEquals("null", request);
+        }
+        assertEquals("e249", store.getMarker(null));
+        assertEquals("e248", store.getMarker("trades"));
+        assertEquals("e247", store.getMarker("fundings"));
+        assertEquals("e249", store.getMarker("withdrawals"));
+        assertEquals(100, countEntries(store, "trades"));
+        assertEquals(50, countEntries(store, "fees"));
+
+        // Resumes from the marker of the whole ledger
+        requests.clear();
+        assertEquals(0, sync.syncAll());
+        assertEquals(1, requests.size());
+        assertEquals(100, countEntries(store, "trades"));
+    }
+
+    @Test
+    public void testSyncSingleOperation()
+            throws IOException, BitsoAPIException, BitsoPayloadException, BitsoServerException {
+        BitsoLedgerFileStore store = new BitsoLedgerFileStore(directory);
+        new BitsoLedgerSync(bitso, store).sync("fees");
+        assertEquals("fees", requests.get(0));
+        assertNull(store.getMarker(null));
+    }
+
+    private static int countEntries(BitsoLedgerFileStore store, String stream) throws IOException {
+        return store.read(stream, new BitsoLedgerFileStore.EntryHandler() {
+            public void onEntry(JSONObject entry) {
+            }
+        });
+    }
+}
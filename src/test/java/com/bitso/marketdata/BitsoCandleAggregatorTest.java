@@ -0,0 +1,85 @@
+package com.bitso.marketdata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.bitso.websockets.BitsoStreamDispatcher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoCandleAggregatorTest {
+    private static final long START = 1501372800000L;
+
+    private List<BitsoCandle> mClosed;
+    private BitsoCandleAggregator mAggregator;
+    private BitsoStreamDispatcher mDispatcher;
+
+    static String tradeFrame(String book, int id, long timestamp, String rate, String amount) {
+        return "{\"type\":\"trades\",\"book\":\"" + book + "\",\"payload\":[{\"i\":" + id + ",\"a\":\""
+                + amount + "\",\"r\":\"" + rate + "\",\"v\":\"1\",\"t\":0,\"x\":" + timestamp + "}]}";
+    }
+
+    @BeforeEach
+    public void setUp() {
+        mClosed = new ArrayList<BitsoCandle>();
+        mAggregator = new BitsoCandleAggregator(new BitsoCandleAggregator.Listener() {
+            public void onCandle(BitsoCandle candle) {
+                mClosed.add(candle);
+            }
+        }, BitsoCandleAggregator.ONE_SECOND, BitsoCandleAggregator.ONE_MINUTE);
+        mDispatcher = new BitsoStreamDispatcher();
+        mDispatcher.addListener(mAggregator);
+    }
+
+    @Test
+    public void testBars() {
+        mDispatcher.update(null, "{\"action\":\"subscribe\",\"response\":\"ok\",\"type\":\"trades\"}");
+        mDispatcher.update(null, tradeFrame("btc_mxn", 1, START + 100, "100", "1"));
+        mDispatcher.update(null, tradeFrame("btc_mxn", 2, START + 200, "110", "2"));
+        mDispatcher.update(null, tradeFrame("btc_mxn", 3, START + 300, "90", "1"));
+        mDispatcher.update(null, tradeFrame("eth_mxn", 1, START + 400, "5000", "1"));
+        assertTrue(mClosed.isEmpty());
+
+        BitsoCandle partial = mAggregator.getPartial("btc_mxn", BitsoCandleAggregator.ONE_SECOND);
+        assertFalse(partial.isClosed());
+        assertEquals(100, partial.getOpen(), 1e-9);
+        assertEquals(110, partial.getHigh(), 1e-9);
+        assertEquals(90, partial.getLow(), 1e-9);
+        assertEquals(90, partial.getClose(), 1e-9);
+        assertEquals(4, partial.getVolume(), 1e-9);
+        assertEquals(410 / 4.0, partial.getVwap(), 1e-9);
+        assertEquals(3, partial.getTradeCount());
+
+        // Next second closes the one second bar of btc_mxn only
+        mDispatcher.update(null, tradeFrame("btc_mxn", 4, START + 1500, "95", "1"));
+        assertEquals(1, mClosed.size());
+        BitsoCandle closed = mClosed.get(0);
+        assertTrue(closed.isClosed());
+        assertEquals("btc_mxn", closed.getBook());
+        assertEquals(START, closed.getOpenTime());
+        assertEquals(BitsoCandleAggregator.ONE_SECOND, closed.getInterval());
+        assertEquals(3, closed.getTradeCount());
+
+        assertEquals(4, mAggregator.getPartial("btc_mxn", BitsoCandleAggregator.ONE_MINUTE).getTradeCount());
+        assertEquals(START + 1000,
+                mAggregator.getPartial("btc_mxn", BitsoCandleAggregator.ONE_SECOND).getOpenTime());
+    }
+
+    @Test
+    public void testFlush() {
+        mAggregator.onTrade("btc_mxn", START, 100, 1);
+        mAggregator.flush(START + 999);
+        assertTrue(mClosed.isEmpty());
+
+        mAggregator.flush(START + BitsoCandleAggregator.ONE_MINUTE);
+        assertEquals(2, mClosed.size());
+        assertNull(mAggregator.getPartial("btc_mxn", BitsoCandleAggregator.ONE_SECOND));
+        assertNull(mAggregator.getPartial("btc_mxn", BitsoCandleAggregator.FIVE_MINUTES));
+    }
+}
@@ -0,0 +1,143 @@
+package com.bitso.marketdata;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.bitso.Bitso;
+import com.bitso.BitsoTicker;
+import com.bitso.exceptions.BitsoAPIException;
+import com.bitso.helpers.Helpers;
+import com.bitso.websockets.BitsoStreamDispatcher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoLiveTickerTest {
+    private static final String ORDERS_FRAME = "{\"type\":\"orders\",\"book\":\"btc_mxn\",\"payload\":{"
+            + "\"bids\":[" + order("57750", 0) + "," + order("57740", 0) + "],"
+            + "\"asks\":[" + order("57790", 1) + "," + order("57795", 1) + "]}}";
+
+    private static String order(String rate, int side) {
+        return "{\"r\":\"" + rate + "\",\"a\":\"1\",\"v\":\"" + rate + "\",\"t\":" + side
+                + ",\"d\":1502126563,\"s\":\"open\"}";
+    }
+
+    private static BitsoTicker[] tickers() {
+        JSONArray payload = Helpers.getJSONFromFile("publicTicker.json").getJSONArray("payload");
+        BitsoTicker[] tickers = new BitsoTicker[payload.length()];
+        for (int i = 0; i < tickers.length; i++) {
+            tickers[i] = new BitsoTicker(payload.getJSONObject(i));
+        }
+        return tickers;
+    }
+
+    @Test
+    public void testSeedAndStream() throws Exception {
+        Bitso bitso = Mockito.mock(Bitso.class);
+        Mockito.when(bitso.getTicker()).thenReturn(tickers());
+
+        BitsoLiveTicker liveTicker = new BitsoLiveTicker(bitso);
+        BitsoStreamDispatcher dispatcher = new BitsoStreamDispatcher();
+        dispatcher.addListener(liveTicker);
+        assertNull(liveTicker.getTicker("btc_mxn"));
+
+        liveTicker.reseed();
+        BitsoTicker ticker = liveTicker.getTicker("btc_mxn");
+        assertEquals(0, new BigDecimal("57800.00").compareTo(ticker.getLast()));
+        assertEquals(0, new BigDecimal("57700.00").compareTo(ticker.getBid()));
+
+        dispatcher.update(null, ORDERS_FRAME);
+        dispatcher.update(null, BitsoCandleAggregatorTest.tradeFrame("btc_mxn", 1, 0, "58100", "1"));
+        ticker = liveTicker.getTicker("btc_mxn");
+        assertEquals(0, new BigDecimal("57750").compareTo(ticker.getBid()));
+        assertEquals(0, new BigDecimal("57790").compareTo(ticker.getAsk()));
+        assertEquals(0, new BigDecimal("58100").compareTo(ticker.getLast()));
+        assertEquals(0, new BigDecimal("58100").compareTo(ticker.getHigh()));
+        assertEquals(0, new BigDecimal("54914.17").compareTo(ticker.getLow()));
+        assertEquals(0, new BigDecimal("254.02784379").compareTo(ticker.getVolume()));
+        double vwap = (56456.40455159 * 253.02784379 + 58100) / 254.02784379;
+        assertEquals(vwap, ticker.getVwap().doubleValue(), 1e-6);
+
+        // Untouched books keep their seed
+        assertEquals(0, new BigDecimal("4630.00").compareTo(liveTicker.getLast("eth_mxn")));
+        liveTicker.close();
+    }
+
+    @Test
+    public void testReseedKeepsNewerStreamedQuote() throws Exception {
+        final BitsoStreamDispatcher dispatcher = new BitsoStreamDispatcher();
+        Bitso bitso = Mockito.mock(Bitso.class);
+        Mockito.when(bitso.getTicker()).thenAnswer(new Answer<BitsoTicker[]>() {
+            public BitsoTicker[] answer(InvocationOnMock invocation) {
+                // Streamed while the request is in flight, so newer than the response
+                dispatcher.update(null, ORDERS_FRAME);
+                dispatcher.update(null, BitsoCandleAggregatorTest.tradeFrame("btc_mxn", 1, 0, "58100", "1"));
+                return tickers();
+            }
+        });
+
+        BitsoLiveTicker liveTicker = new BitsoLiveTicker(bitso, 0);
+        dispatcher.addListener(liveTicker);
+        liveTicker.reseed();
+
+        BitsoTicker ticker = liveTicker.getTicker("btc_mxn");
+        assertEquals(0, new BigDecimal("58100").compareTo(ticker.getLast()));
+        assertEquals(0, new BigDecimal("57750").compareTo(ticker.getBid()));
+        assertEquals(0, new BigDecimal("57790").compareTo(ticker.getAsk()));
+        assertEquals(0, new BigDecimal("58100").compareTo(ticker.getHigh()));
+        // The trade streamed during the request is added to the snapshot
+        assertEquals(0, new BigDecimal("254.02784379").compareTo(ticker.getVolume()));
+        double vwap = (56456.40455159 * 253.02784379 + 58100) / 254.02784379;
+        assertEquals(vwap, ticker.getVwap().doubleValue(), 1e-6);
+
+        // Only the trade streamed during the new request is added, the earlier one is in its snapshot
+        liveTicker.reseed();
+        ticker = liveTicker.getTicker("btc_mxn");
+        assertEquals(0, new BigDecimal("254.02784379").compareTo(ticker.getVolume()));
+        // Books with nothing streamed take the snapshot
+        assertEquals(0, new BigDecimal("4630.00").compareTo(liveTicker.getLast("eth_mxn")));
+        liveTicker.close();
+    }
+
+    @Test
+    public void testReseedsOnInterval() throws Exception {
+        final CountDownLatch reseeds = new CountDownLatch(3);
+        Bitso bitso = Mockito.mock(Bitso.class);
+        Mockito.when(bitso.getTicker()).thenAnswer(new Answer<BitsoTicker[]>() {
+            public BitsoTicker[] answer(InvocationOnMock invocation) {
+                reseeds.countDown();
+                return tickers();
+            }
+        });
+
+        BitsoLiveTicker liveTicker = new BitsoLiveTicker(bitso, 20);
+        assertTrue(reseeds.await(5, TimeUnit.SECONDS));
+        liveTicker.close();
+    }
+
+    @Test
+    public void testCountsFailedReseeds() throws Exception {
+        final CountDownLatch reseeds = new CountDownLatch(2);
+        Bitso bitso = Mockito.mock(Bitso.class);
+        Mockito.when(bitso.getTicker()).thenAnswer(new Answer<BitsoTicker[]>() {
+            public BitsoTicker[] answer(InvocationOnMock invocation) throws Exception {
+                reseeds.countDown();
+                throw new BitsoAPIException("unavailable");
+            }
+        });
+
+        BitsoLiveTicker liveTicker = new BitsoLiveTicker(bitso, 20);
+        assertTrue(reseeds.await(5, TimeUnit.SECONDS));
+        liveTicker.close();
+        assertTrue(liveTicker.getReseedFailures() >= 1);
+        assertTrue(liveTicker.getLastReseedFailure() instanceof BitsoAPIException);
+    }
+}
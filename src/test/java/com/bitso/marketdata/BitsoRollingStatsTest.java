@@ -0,0 +1,93 @@
+package com.bitso.marketdata;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.bitso.websockets.BitsoStreamDispatcher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoRollingStatsTest {
+    private static final long START = 1501372800000L;
+    private static final long MINUTE = BitsoRollingStats.ONE_MINUTE;
+    private static final long HOUR = BitsoRollingStats.ONE_HOUR;
+
+    private static String tradeFrame(String book, int id, long timestamp, String rate, String amount) {
+        return BitsoCandleAggregatorTest.tradeFrame(book, id, timestamp, rate, amount);
+    }
+
+    @Test
+    public void testWindows() {
+        BitsoRollingStats stats = new BitsoRollingStats(MINUTE, HOUR);
+        BitsoStreamDispatcher dispatcher = new BitsoStreamDispatcher();
+        dispatcher.addListener(stats);
+
+        dispatcher.update(null, tradeFrame("btc_mxn", 1, START, "100", "1"));
+        dispatcher.update(null, tradeFrame("btc_mxn", 2, START + 30_000, "120", "3"));
+        dispatcher.update(null, tradeFrame("btc_mxn", 3, START + 70_000, "110", "1"));
+
+        BitsoMarketStats minute = stats.getStats("btc_mxn", BitsoRollingStats.ONE_MINUTE, START + 70_000);
+        assertEquals(2, minute.getTradeCount());
+        assertEquals(4, minute.getVolume(), 1e-9);
+        assertEquals((360 + 110) / 4.0, minute.getVwap(), 1e-9);
+        assertEquals(120, minute.getHigh(), 1e-9);
+        assertEquals(110, minute.getLow(), 1e-9);
+        double returns = Math.pow(Math.log(1.2), 2) + Math.pow(Math.log(110 / 120.0), 2);
+        assertEquals(Math.sqrt(returns), minute.getVolatility(), 1e-9);
+
+        BitsoMarketStats hour = stats.getStats("btc_mxn", BitsoRollingStats.ONE_HOUR, START + 70_000);
+        assertEquals(3, hour.getTradeCount());
+        assertEquals(100, hour.getLow(), 1e-9);
+
+        // Quiet market: the minute window empties on read
+        minute = stats.getStats("btc_mxn", BitsoRollingStats.ONE_MINUTE, START + 200_000);
+        assertEquals(0, minute.getTradeCount());
+        assertTrue(Double.isNaN(minute.getHigh()));
+        assertEquals(110, minute.getLast(), 1e-9);
+
+        assertNull(stats.getStats("eth_mxn", BitsoRollingStats.ONE_MINUTE));
+        assertNull(stats.getStats("btc_mxn", BitsoRollingStats.ONE_DAY));
+    }
+
+    @Test
+    public void testAgainstFullScan() {
+        BitsoRollingStats stats = new BitsoRollingStats(MINUTE, HOUR);
+        Random random = new Random(7);
+        // Enough trades within the hour to grow the ring several times
+        int total = 10_000;
+        long[] times = new long[total];
+        double[] prices = new double[total];
+        double[] amounts = new double[total];
+        long time = START;
+        for (int i = 0; i < total; i++) {
+            time += random.nextInt(200);
+            times[i] = time;
+            prices[i] = 70000 + random.nextInt(1000);
+            amounts[i] = 0.001 * (1 + random.nextInt(100));
+            stats.onTrade("btc_mxn", times[i], prices[i], amounts[i]);
+
+            if (i % 997 == 0 || i == total - 1) {
+                BitsoMarketStats minute = stats.getStats("btc_mxn", BitsoRollingStats.ONE_MINUTE, time);
+                int count = 0;
+                double volume = 0;
+                double high = Double.NEGATIVE_INFINITY;
+                double low = Double.POSITIVE_INFINITY;
+                for (int j = 0; j <= i; j++) {
+                    if (times[j] > time - BitsoRollingStats.ONE_MINUTE) {
+                        count++;
+                        volume += amounts[j];
+                        high = Math.max(high, prices[j]);
+                        low = Math.min(low, prices[j]);
+                    }
+                }
+                assertEquals(count, minute.getTradeCount());
+                assertEquals(volume, minute.getVolume(), 1e-6);
+                assertEquals(high, minute.getHigh(), 1e-9);
+                assertEquals(low, minute.getLow(), 1e-9);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.bitso.orderbook;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import com.bitso.BitsoOrder;
+import com.bitso.websockets.BitsoStreamDiffOrders;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoConcurrentOrderBookTest {
+    private static final int SEQUENCE = BitsoLiveOrderBookTest.SNAPSHOT_SEQUENCE;
+
+    /** A diff that sets the best bid and the best ask to the same amount. */
+    private static BitsoStreamDiffOrders bothSides(int sequence, int amount) {
+        String order = "{\"o\":\"%s\",\"d\":1501603674,\"r\":\"%s\",\"t\":%d,\"a\":\"%d\",\"v\":\"1\","
+                + "\"s\":\"open\"}";
+        String frame = "{\"type\":\"diff-orders\",\"book\":\"btc_mxn\",\"sequence\":" + sequence
+                + ",\"payload\":["
+                + String.format(order, "bid", "46900", 0, amount) + ","
+                + String.format(order, "ask", "46950", 1, amount) + "]}";
+        return new BitsoStreamDiffOrders(new JSONObject(frame));
+    }
+
+    @Test
+    public void testConsistentReads() throws Exception {
+        final BitsoConcurrentOrderBook book = new BitsoConcurrentOrderBook(null, "btc_mxn", 10);
+        book.applySnapshot(BitsoLiveOrderBookTest.snapshot());
+        final int diffs = 20_000;
+        // Decode up front so the writer spends its time publishing
+        final BitsoStreamDiffOrders[] updates = new BitsoStreamDiffOrders[diffs];
+        for (int i = 1; i <= diffs; i++) {
+            updates[i - 1] = bothSides(SEQUENCE + i, i);
+        }
+
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicLong reads = new AtomicLong();
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        Thread[] readers = new Thread[3];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(new Runnable() {
+                public void run() {
+                    BitsoDepthSnapshot depth = new BitsoDepthSnapshot(5);
+                    while (writing.get()) {
+                        book.read(depth);
+                        reads.incrementAndGet();
+                        int applied = depth.getSequence() - SEQUENCE;
+                        if (applied <= 0) {
+                            continue;
+                        }
+                        double bid = depth.getAmount(BitsoOrder.SIDE.BUY, 0);
+                        double ask = depth.getAmount(BitsoOrder.SIDE.SELL, 0);
+                        if (bid != applied || ask != applied) {
+                            failure.set("seq " + applied + " bid " + bid + " ask " + ask);
+                        }
+                    }
+                }
+            });
+            readers[r].start();
+        }
+
+        for (BitsoStreamDiffOrders update : updates) {
+            book.onDiffOrders(update);
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+        assertTrue(reads.get() > 0);
+
+        BitsoDepthSnapshot depth = new BitsoDepthSnapshot(3);
+        book.read(depth);
+        assertEquals(SEQUENCE + diffs, depth.getSequence());
+        assertEquals(46950, depth.getBestAsk(), 1e-9);
+        assertEquals(46900, book.getBestBid(), 1e-9);
+        assertEquals(3, depth.getLevelCount(BitsoOrder.SIDE.BUY));
+
+        // Out of sync after a gap
+        book.onDiffOrders(bothSides(SEQUENCE + diffs + 2, 1));
+        book.read(depth);
+        assertEquals(-1, depth.getSequence());
+        assertEquals(0, depth.getLevelCount(BitsoOrder.SIDE.SELL));
+        assertTrue(Double.isNaN(book.getBestAsk()));
+        book.close();
+    }
+}
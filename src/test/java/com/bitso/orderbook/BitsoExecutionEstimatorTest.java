@@ -0,0 +1,114 @@
+package com.bitso.orderbook;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.bitso.BitsoOrder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoExecutionEstimatorTest {
+    private static final int SEQUENCE = BitsoLiveOrderBookTest.SNAPSHOT_SEQUENCE;
+
+    /** Value of an amount taken level by level, the way it's done by hand. */
+    private static double walk(BitsoLiveOrderBook book, BitsoOrder.SIDE levels, double amount) {
+        double remaining = amount;
+        double value = 0;
+        for (BitsoPriceLevel level : book.getLevels(levels)) {
+            double taken = Math.min(remaining, level.getAmountValue());
+            value += taken * level.getPriceValue();
+            remaining -= taken;
+            if (remaining <= 0) {
+                return value;
+            }
+        }
+        return Double.NaN;
+    }
+
+    @Test
+    public void testEstimates() throws Exception {
+        BitsoLiveOrderBook book = new BitsoLiveOrderBook("btc_mxn");
+        book.applySnapshot(BitsoLiveOrderBookTest.snapshot());
+        BitsoExecutionEstimator estimator = new BitsoExecutionEstimator(book);
+
+        // Best ask is 46990.00 x 0.1909, then 47100.00 x 0.07967229
+        assertEquals(46990.00, estimator.getAveragePrice(BitsoOrder.SIDE.BUY, 0.1), 1e-6);
+        double expected = (0.1909 * 46990.00 + 0.0091 * 47100.00) / 0.2;
+        assertEquals(expected, estimator.getAveragePrice(BitsoOrder.SIDE.BUY, 0.2), 1e-6);
+        assertEquals((expected - 46990) / 46990 * 10_000, estimator.getSlippage(BitsoOrder.SIDE.BUY, 0.2),
+                1e-6);
+        assertEquals(expected * 0.2 * 1.0065, estimator.getCostWithFee(BitsoOrder.SIDE.BUY, 0.2, 0.0065),
+                1e-6);
+
+        // Best bids are 46850.01 x 0.60271953 and 46850.00 x 2.53344718
+        assertEquals(0.60271953 + 2.53344718, estimator.getAmountWithin(BitsoOrder.SIDE.SELL, 0.01), 1e-9);
+        assertTrue(estimator.getSlippage(BitsoOrder.SIDE.SELL, 1) > 0);
+        assertTrue(Double.isNaN(estimator.getAveragePrice(BitsoOrder.SIDE.BUY, 1_000_000)));
+
+        // Diffs keep the estimates current
+        book.applyDiff(BitsoLiveOrderBookTest.diff(SEQUENCE + 1, "a", 1, "46900", "1", "open"));
+        assertEquals(46900, estimator.getAveragePrice(BitsoOrder.SIDE.BUY, 1), 1e-6);
+        book.applyDiff(BitsoLiveOrderBookTest.diff(SEQUENCE + 2, "a", 1, "46900", "0", "completed"));
+        assertEquals(46990.00, estimator.getAveragePrice(BitsoOrder.SIDE.BUY, 0.1), 1e-6);
+    }
+
+    @Test
+    public void testListenersShareBook() throws Exception {
+        BitsoLiveOrderBook book = new BitsoLiveOrderBook("btc_mxn");
+        book.applySnapshot(BitsoLiveOrderBookTest.snapshot());
+        final List<String> changes = new ArrayList<String>();
+        BitsoLiveOrderBook.LevelListener listener = new BitsoLiveOrderBook.LevelListener() {
+            public void onLevelChanged(BitsoPriceLevel level, boolean removed) {
+                changes.add(level.getPrice().toPlainString());
+            }
+        };
+        book.addLevelListener(listener);
+        BitsoExecutionEstimator first = new BitsoExecutionEstimator(book);
+        BitsoExecutionEstimator second = new BitsoExecutionEstimator(book);
+
+        // Every listener sees the change, none replaces another
+        book.applyDiff(BitsoLiveOrderBookTest.diff(SEQUENCE + 1, "a", 1, "46900", "1", "open"));
+        assertEquals(1, changes.size());
+        assertEquals(46900, first.getAveragePrice(BitsoOrder.SIDE.BUY, 1), 1e-6);
+        assertEquals(46900, second.getAveragePrice(BitsoOrder.SIDE.BUY, 1), 1e-6);
+
+        // Removed listeners stop receiving changes
+        book.removeLevelListener(listener);
+        first.close();
+        book.applyDiff(BitsoLiveOrderBookTest.diff(SEQUENCE + 2, "a", 1, "46900", "0", "completed"));
+        assertEquals(1, changes.size());
+        assertEquals(46900, first.getAveragePrice(BitsoOrder.SIDE.BUY, 1), 1e-6);
+        assertEquals(46990.00, second.getAveragePrice(BitsoOrder.SIDE.BUY, 0.1), 1e-6);
+    }
+
+    @Test
+    public void testAgainstBookWalk() throws Exception {
+        BitsoLiveOrderBook book = new BitsoLiveOrderBook("btc_mxn");
+        book.applySnapshot(BitsoLiveOrderBookTest.snapshot());
+        BitsoExecutionEstimator estimator = new BitsoExecutionEstimator(book);
+        Random random = new Random(11);
+        for (int i = 1; i <= 3000; i++) {
+            int side = random.nextInt(2);
+            int base = (side == 0) ? 45000 : 47000;
+            String price = String.valueOf(base + random.nextInt(1800));
+            String amount = (random.nextInt(4) == 0) ? "0" : "0." + (1 + random.nextInt(9));
+            String status = amount.equals("0") ? "cancelled" : "open";
+            String orderId = "o" + random.nextInt(500);
+            book.applyDiff(BitsoLiveOrderBookTest.diff(SEQUENCE + i, orderId, side, price, amount, status));
+
+            if (i % 100 == 0) {
+                double size = random.nextDouble() * 20;
+                assertEquals(walk(book, BitsoOrder.SIDE.SELL, size) / size,
+                        estimator.getAveragePrice(BitsoOrder.SIDE.BUY, size), 1e-6);
+                assertEquals(walk(book, BitsoOrder.SIDE.BUY, size) / size,
+                        estimator.getAveragePrice(BitsoOrder.SIDE.SELL, size), 1e-6);
+                assertEquals(book.getTotalAmount(BitsoOrder.SIDE.BUY).doubleValue(),
+                        estimator.getAvailableAmount(BitsoOrder.SIDE.SELL), 1e-6);
+            }
+        }
+    }
+}
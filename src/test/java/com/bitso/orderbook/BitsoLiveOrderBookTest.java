@@ -0,0 +1,196 @@
+package com.bitso.orderbook;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.bitso.BitsoOrder;
+import com.bitso.BitsoOrderBook;
+import com.bitso.helpers.Helpers;
+import com.bitso.websockets.BitsoStreamDiffOrders;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoLiveOrderBookTest {
+    static final int SNAPSHOT_SEQUENCE = 18805917;
+
+    private BitsoLiveOrderBook mBook;
+
+    static BitsoOrderBook snapshot() throws Exception {
+        return new BitsoOrderBook(Helpers.getJSONFromFile("publicOrderBook.json").getJSONObject("payload"));
+    }
+
+    static String diffFrame(int sequence, String orderId, int side, String rate, String amount,
+            String status) {
+        return "{\"type\":\"diff-orders\",\"book\":\"btc_mxn\",\"sequence\":" + sequence
+                + ",\"payload\":[{\"o\":\"" + orderId + "\",\"d\":1501603674,\"r\":\"" + rate
+                + "\",\"t\":" + side + ",\"a\":\"" + amount + "\",\"v\":\"1\",\"s\":\"" + status + "\"}]}";
+    }
+
+    static BitsoStreamDiffOrders diff(int sequence, String orderId, int side, String rate, String amount,
+            String status) {
+        String frame = diffFrame(sequence, orderId, side, rate, amount, status);
+        return new BitsoStreamDiffOrders(new JSONObject(frame));
+    }
+
+    private static void assertDecimal(String expected, BigDecimal actual) {
+        assertEquals(0, new BigDecimal(expected).compareTo(actual), expected + " != " + actual);
+    }
+
+    @BeforeEach
+    public void setUp() {
+        mBook = new BitsoLiveOrderBook("btc_mxn");
+    }
+
+    @Test
+    public void testSnapshotAndDiffs() throws Exception {
+        assertTrue(mBook.applySnapshot(snapshot()));
+        assertTrue(mBook.isSynced());
+        assertEquals(32, mBook.getLevels(BitsoOrder.SIDE.BUY).size());
+        assertEquals(34, mBook.getLevels(BitsoOrder.SIDE.SELL).size());
+        assertDecimal("46850.01", mBook.getBestBid().getPrice());
+        assertDecimal("46990.00", mBook.getBestAsk().getPrice());
+
+        // Already contained in the snapshot
+        assertTrue(mBook.applyDiff(diff(SNAPSHOT_SEQUENCE, "a", 0, "46900", "1", "open")));
+        assertDecimal("46850.01", mBook.getBestBid().getPrice());
+
+        // New best bid, then a second order at the same price
+        assertTrue(mBook.applyDiff(diff(SNAPSHOT_SEQUENCE + 1, "a", 0, "46900", "1", "open")));
+        assertTrue(mBook.applyDiff(diff(SNAPSHOT_SEQUENCE + 2, "b", 0, "46900.00", "0.5", "open")));
+        BitsoPriceLevel best = mBook.getBestBid();
+        assertDecimal("46900", best.getPrice());
+        assertDecimal("1.5", best.getAmount());
+        assertEquals(2, best.getOrderCount());
+
+        // Partial fill, then completion and cancellation
+        assertTrue(mBook.applyDiff(diff(SNAPSHOT_SEQUENCE + 3, "a", 0, "46900", "0.25", "open")));
+        assertDecimal("0.75", mBook.getBestBid().getAmount());
+        assertTrue(mBook.applyDiff(diff(SNAPSHOT_SEQUENCE + 4, "a", 0, "46900", "0", "completed")));
+        assertTrue(mBook.applyDiff(diff(SNAPSHOT_SEQUENCE + 5, "b", 0, "46900", "0.5", "cancelled")));
+        assertDecimal("46850.01", mBook.getBestBid().getPrice());
+        assertNull(mBook.getLevel(BitsoOrder.SIDE.BUY, new BigDecimal("46900")));
+
+        // Ask that moves to a new price
+        assertTrue(mBook.applyDiff(diff(SNAPSHOT_SEQUENCE + 6, "c", 1, "46950", "2", "open")));
+        assertTrue(mBook.applyDiff(diff(SNAPSHOT_SEQUENCE + 7, "c", 1, "46960", "2", "open")));
+        assertDecimal("46960", mBook.getBestAsk().getPrice());
+        assertNull(mBook.getLevel(BitsoOrder.SIDE.SELL, new BigDecimal("46950")));
+        assertEquals(SNAPSHOT_SEQUENCE + 7, mBook.getSequence());
+    }
+
+    @Test
+    public void testBufferingAndGaps() throws Exception {
+        // Diffs received before the snapshot are replayed on top of it
+        assertFalse(mBook.applyDiff(diff(SNAPSHOT_SEQUENCE, "a", 0, "46000", "1", "open")));
+        assertFalse(mBook.applyDiff(diff(SNAPSHOT_SEQUENCE + 1, "a", 0, "46900", "1", "open")));
+        assertFalse(mBook.isSynced());
+        assertTrue(mBook.applySnapshot(snapshot()));
+        assertDecimal("46900", mBook.getBestBid().getPrice());
+        assertEquals(SNAPSHOT_SEQUENCE + 1, mBook.getSequence());
+
+        // A missing sequence number drops the book out of sync
+        assertFalse(mBook.applyDiff(diff(SNAPSHOT_SEQUENCE + 3, "b", 1, "46950", "1", "open")));
+        assertFalse(mBook.isSynced());
+        assertEquals(1, mBook.getGaps());
+        assertNull(mBook.getBestBid());
+        assertEquals(0, mBook.getOrderCount());
+    }
+
+    @Test
+    public void testPendingDiffsLimit() throws Exception {
+        BitsoLiveOrderBook book = new BitsoLiveOrderBook("btc_mxn", 2);
+        assertFalse(book.applyDiff(diff(SNAPSHOT_SEQUENCE - 1, "a", 0, "46000", "1", "open")));
+        assertFalse(book.applyDiff(diff(SNAPSHOT_SEQUENCE + 1, "a", 0, "46900", "1", "open")));
+        assertFalse(book.applyDiff(diff(SNAPSHOT_SEQUENCE + 2, "b", 0, "46910", "1", "open")));
+        // Only the two newest were kept
+        assertTrue(book.applySnapshot(snapshot()));
+        assertDecimal("46910", book.getBestBid().getPrice());
+        assertEquals(SNAPSHOT_SEQUENCE + 2, book.getSequence());
+    }
+
+    @Test
+    public void testOpenUpdateWithoutAmountRemovesOrder() throws Exception {
+        assertTrue(mBook.applySnapshot(snapshot()));
+        assertTrue(mBook.applyDiff(diff(SNAPSHOT_SEQUENCE + 1, "a", 0, "46900", "1", "open")));
+        String frame = "{\"type\":\"diff-orders\",\"book\":\"btc_mxn\",\"sequence\":"
+                + (SNAPSHOT_SEQUENCE + 2) + ",\"payload\":[{\"o\":\"a\",\"d\":1501603674,"
+                + "\"r\":\"46900\",\"t\":0,\"s\":\"open\"}]}";
+        assertTrue(mBook.applyDiff(new BitsoStreamDiffOrders(new JSONObject(frame))));
+        assertDecimal("46850.01", mBook.getBestBid().getPrice());
+    }
+
+    @Test
+    public void testDepth() throws Exception {
+        final List<String> changes = new ArrayList<String>();
+        mBook.addLevelListener(new BitsoLiveOrderBook.LevelListener() {
+            public void onLevelChanged(BitsoPriceLevel level, boolean removed) {
+                changes.add(level.getPrice().toPlainString() + (removed ? " removed" : ""));
+            }
+        });
+        mBook.applySnapshot(snapshot());
+        assertEquals(66, changes.size());
+        changes.clear();
+
+        double[] prices = new double[3];
+        double[] amounts = new double[3];
+        int[] counts = new int[3];
+        assertEquals(3, mBook.getDepth(BitsoOrder.SIDE.BUY, prices, amounts, counts));
+        assertEquals(46850.01, prices[0], 1e-9);
+        assertEquals(46850.00, prices[1], 1e-9);
+        assertEquals(2.53344718, amounts[1], 1e-12);
+        assertEquals(1, counts[0]);
+
+        mBook.applyDiff(diff(SNAPSHOT_SEQUENCE + 1, "a", 0, "46850.005", "1", "open"));
+        mBook.applyDiff(diff(SNAPSHOT_SEQUENCE + 2, "b", 0, "46850.01", "1", "open"));
+        assertEquals(3, mBook.getDepth(BitsoOrder.SIDE.BUY, prices, amounts));
+        assertEquals(46850.005, prices[1], 1e-9);
+        assertEquals(1.60271953, amounts[0], 1e-12);
+        mBook.applyDiff(diff(SNAPSHOT_SEQUENCE + 3, "a", 0, "46850.005", "0", "cancelled"));
+        assertEquals(3, mBook.getDepth(BitsoOrder.SIDE.BUY, prices, amounts));
+        assertEquals(46850.00, prices[1], 1e-9);
+        assertEquals("[46850.005, 46850.01, 46850.005 removed]", changes.toString());
+
+        double[] all = new double[100];
+        assertEquals(34, mBook.getDepth(BitsoOrder.SIDE.SELL, all, new double[100]));
+    }
+
+    @Test
+    public void testDepthMatchesLevels() throws Exception {
+        mBook.applySnapshot(snapshot());
+        Random random = new Random(3);
+        double[] prices = new double[200];
+        double[] amounts = new double[200];
+        for (int i = 1; i <= 2000; i++) {
+            int side = random.nextInt(2);
+            String price = String.valueOf(46000 + random.nextInt(2000));
+            String amount = (random.nextInt(4) == 0) ? "0" : "0." + (1 + random.nextInt(9));
+            String status = amount.equals("0") ? "cancelled" : "open";
+            String orderId = "o" + random.nextInt(300);
+            mBook.applyDiff(diff(SNAPSHOT_SEQUENCE + i, orderId, side, price, amount, status));
+        }
+        for (BitsoOrder.SIDE side : BitsoOrder.SIDE.values()) {
+            int depth = mBook.getDepth(side, prices, amounts);
+            assertEquals(Math.min(200, mBook.getLevelCount(side)), depth);
+            int i = 0;
+            BigDecimal total = BigDecimal.ZERO;
+            for (BitsoPriceLevel level : mBook.getLevels(side)) {
+                if (i < depth) {
+                    assertEquals(level.getPrice().doubleValue(), prices[i], 1e-9);
+                    assertEquals(level.getAmount().doubleValue(), amounts[i], 1e-12);
+                }
+                total = total.add(level.getAmount());
+                i++;
+            }
+            assertDecimal(total.toPlainString(), mBook.getTotalAmount(side));
+        }
+    }
+}
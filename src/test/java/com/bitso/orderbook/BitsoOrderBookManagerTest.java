@@ -0,0 +1,57 @@
+package com.bitso.orderbook;
+
+import java.math.BigDecimal;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import com.bitso.websockets.BitsoStreamDiffOrders;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoOrderBookManagerTest {
+    private static final int SEQUENCE = BitsoLiveOrderBookTest.SNAPSHOT_SEQUENCE;
+
+    private static BitsoStreamDiffOrders diff(String book, int sequence, String orderId, String rate) {
+        String frame = BitsoLiveOrderBookTest.diffFrame(sequence, orderId, 0, rate, "1", "open")
+                .replace("btc_mxn", book);
+        return new BitsoStreamDiffOrders(new JSONObject(frame));
+    }
+
+    @Test
+    public void testShards() throws Exception {
+        BitsoOrderBookManager manager = new BitsoOrderBookManager(null, 4);
+        String[] books = { "btc_mxn", "eth_mxn", "xrp_mxn", "eth_btc", "bch_btc", "ltc_mxn" };
+        for (String book : books) {
+            manager.applySnapshot(book, BitsoLiveOrderBookTest.snapshot());
+        }
+        for (int i = 1; i <= 500; i++) {
+            for (String book : books) {
+                // Each diff raises the best bid, so the result depends on the order they're applied
+                manager.onDiffOrders(diff(book, SEQUENCE + i, "o" + i, String.valueOf(47000 + i)));
+            }
+        }
+
+        for (final String book : books) {
+            String[] result = manager.queryAndWait(book, new BitsoOrderBookManager.Query<String[]>() {
+                public String[] run(BitsoLiveOrderBook orderBook) {
+                    BigDecimal bestBid = orderBook.getBestBid().getPrice().stripTrailingZeros();
+                    return new String[] { bestBid.toPlainString(), String.valueOf(orderBook.getSequence()),
+                            Thread.currentThread().getName() };
+                }
+            });
+            assertEquals("47500", result[0]);
+            assertEquals(String.valueOf(SEQUENCE + 500), result[1]);
+            assertEquals("bitso-book-shard-" + manager.getShard(book), result[2]);
+
+            BitsoTopOfBook topOfBook = manager.getTopOfBook(book);
+            assertEquals(0, new BigDecimal("47500").compareTo(topOfBook.getBidPrice()));
+        }
+        assertEquals(books.length, manager.getBooks().size());
+        assertTrue(manager.getShard("btc_mxn") < manager.getShardCount());
+        assertNull(manager.getTopOfBook("mana_mxn"));
+        manager.close();
+    }
+}
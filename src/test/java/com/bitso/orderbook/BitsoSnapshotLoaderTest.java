@@ -0,0 +1,82 @@
+package com.bitso.orderbook;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.bitso.Bitso;
+import com.bitso.BitsoOrderBook;
+import com.bitso.exceptions.BitsoServerException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+public class BitsoSnapshotLoaderTest {
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger snapshots = new AtomicInteger();
+    private volatile boolean failing = true;
+
+    private final Bitso bitso = new Bitso("key", "secret", false) {
+        @Override
+        public BitsoOrderBook getOrderBook(String book, boolean... aggregate) throws BitsoServerException {
+            requests.incrementAndGet();
+            if (failing) {
+                throw new BitsoServerException("unavailable");
+            }
+            return null;
+        }
+    };
+
+    private final BitsoSnapshotLoader.FetchCallback callback = new BitsoSnapshotLoader.FetchCallback() {
+        public void onSnapshot(String book, BitsoOrderBook snapshot) {
+            snapshots.incrementAndGet();
+        }
+    };
+
+    /** Requests a snapshot on every simulated diff for the given time. */
+    private void diffsFor(BitsoSnapshotLoader loader, String book, long millis) throws InterruptedException {
+        long end = System.currentTimeMillis() + millis;
+        while (System.currentTimeMillis() < end) {
+            loader.fetch(book, callback);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testFailuresBackOffExponentially() throws InterruptedException {
+        BitsoSnapshotLoader loader = new BitsoSnapshotLoader(bitso, 200, 800);
+
+        // Fails at 0, then backs off 200, 400 and 800 ms: attempts at 0, 200, 600 and 1400 ms
+        diffsFor(loader, "btc_mxn", 1700);
+        int attempts = requests.get();
+        assertEquals(4, attempts, "attempts: " + attempts);
+        assertEquals(4, loader.getFailures());
+        assertNotNull(loader.getLastFailure());
+
+        // Another book isn't affected by the first one backing off
+        diffsFor(loader, "eth_mxn", 20);
+        assertEquals(attempts + 1, requests.get());
+        loader.close();
+    }
+
+    @Test
+    public void testSuccessResetsBackoff() throws InterruptedException {
+        BitsoSnapshotLoader loader = new BitsoSnapshotLoader(bitso, 100, 400);
+        diffsFor(loader, "btc_mxn", 50);
+        assertEquals(1, requests.get());
+
+        failing = false;
+        Thread.sleep(100);
+        loader.fetch("btc_mxn", callback);
+        Thread.sleep(50);
+        assertEquals(2, requests.get());
+        assertEquals(1, snapshots.get());
+
+        // Once a fetch succeeded, requests go through again right away
+        failing = true;
+        loader.fetch("btc_mxn", callback);
+        Thread.sleep(50);
+        assertEquals(3, requests.get());
+        loader.close();
+    }
+}
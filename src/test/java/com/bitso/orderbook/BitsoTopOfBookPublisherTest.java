@@ -0,0 +1,67 @@
+package com.bitso.orderbook;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.bitso.websockets.BitsoStreamDispatcher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoTopOfBookPublisherTest {
+    private static final int SEQUENCE = BitsoLiveOrderBookTest.SNAPSHOT_SEQUENCE;
+
+    @Test
+    public void testConflation() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<BitsoTopOfBook> received = new ArrayList<BitsoTopOfBook>();
+        BitsoTopOfBookPublisher.Listener listener = new BitsoTopOfBookPublisher.Listener() {
+            public void onTopOfBook(BitsoTopOfBook topOfBook) {
+                try {
+                    // A slow listener
+                    release.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                synchronized (received) {
+                    received.add(topOfBook);
+                }
+                if (topOfBook.getSequence() == SEQUENCE + 50) {
+                    done.countDown();
+                }
+            }
+        };
+        BitsoTopOfBookPublisher publisher = new BitsoTopOfBookPublisher(null, listener);
+        BitsoStreamDispatcher dispatcher = new BitsoStreamDispatcher();
+        dispatcher.addListener(publisher);
+
+        publisher.applySnapshot("btc_mxn", BitsoLiveOrderBookTest.snapshot());
+        assertEquals(1, publisher.getPublished());
+
+        // Deep in the book, no change at the top
+        dispatcher.update(null, BitsoLiveOrderBookTest.diffFrame(SEQUENCE + 1, "x", 0, "40000", "1", "open"));
+        assertEquals(1, publisher.getPublished());
+
+        for (int i = 2; i <= 50; i++) {
+            String amount = "0.0" + i;
+            String frame = BitsoLiveOrderBookTest.diffFrame(SEQUENCE + i, "a", 0, "46900", amount, "open");
+            dispatcher.update(null, frame);
+        }
+        assertEquals(50, publisher.getPublished());
+        BitsoTopOfBook latest = publisher.getTopOfBook("btc_mxn");
+        assertEquals(0, new BigDecimal("0.050").compareTo(latest.getBidAmount()));
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        publisher.close();
+        // At most the change being delivered when the burst started, plus the latest one
+        assertTrue(received.size() <= 2, "Delivered " + received.size());
+        assertEquals(SEQUENCE + 50, received.get(received.size() - 1).getSequence());
+    }
+}
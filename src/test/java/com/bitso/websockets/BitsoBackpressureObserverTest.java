@@ -0,0 +1,302 @@
+package com.bitso.websockets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoBackpressureObserverTest {
+    private Source mSource;
+    private CountDownLatch mRelease;
+    private List<Object> mReceived;
+    private Observer mSlowSubscriber;
+
+    /** Makes notifyObservers callable from the test. */
+    private static class Source extends Observable {
+        void send(Object message) {
+            setChanged();
+            notifyObservers(message);
+        }
+    }
+
+    private static String diffFrame(String book, int sequence) {
+        return "{\"type\":\"diff-orders\",\"book\":\"" + book + "\",\"sequence\":" + sequence
+                + ",\"payload\":[]}";
+    }
+
+    private static String ordersFrame(String book, int id) {
+        return "{\"type\":\"orders\",\"book\":\"" + book + "\",\"payload\":{\"id\":" + id + "}}";
+    }
+
+    @BeforeEach
+    public void setUp() {
+        mSource = new Source();
+        mRelease = new CountDownLatch(1);
+        mReceived = new ArrayList<Object>();
+        mSlowSubscriber = new Observer() {
+            public void update(Observable o, Object arg) {
+                try {
+                    mRelease.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                synchronized (mReceived) {
+                    mReceived.add(arg);
+                }
+            }
+        };
+    }
+
+    @AfterEach
+    public void tearDown() {
+        mRelease.countDown();
+    }
+
+    /** Waits until the subscriber is stuck on its first message. */
+    private static void awaitTaken(BitsoBackpressureObserver observer) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (observer.getDelivered() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitReceived(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            synchronized (mReceived) {
+                if (mReceived.size() >= count) {
+                    return;
+                }
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        BitsoBackpressureObserver observer = new BitsoBackpressureObserver(mSlowSubscriber,
+                BitsoBackpressurePolicy.DROP_OLDEST, 3);
+        mSource.addObserver(observer);
+        mSource.send(Boolean.TRUE);
+        awaitTaken(observer);
+        for (int i = 0; i < 10; i++) {
+            mSource.send(ordersFrame("btc_mxn", i));
+        }
+        assertEquals(3, observer.getQueued());
+        assertEquals(7, observer.getDropped());
+
+        mRelease.countDown();
+        awaitReceived(4);
+        assertEquals(Boolean.TRUE, mReceived.get(0));
+        assertEquals(ordersFrame("btc_mxn", 7), mReceived.get(1));
+        assertEquals(ordersFrame("btc_mxn", 9), mReceived.get(3));
+        observer.close();
+    }
+
+    @Test
+    public void testConnectionChangesAreKept() throws Exception {
+        BitsoBackpressureObserver observer = new BitsoBackpressureObserver(mSlowSubscriber,
+                BitsoBackpressurePolicy.DROP_OLDEST, 2);
+        mSource.addObserver(observer);
+        mSource.send("first");
+        awaitTaken(observer);
+        mSource.send(Boolean.FALSE);
+        mSource.send("a");
+        mSource.send("b");
+        mRelease.countDown();
+        awaitReceived(3);
+        assertEquals(Boolean.FALSE, mReceived.get(1));
+        assertEquals("b", mReceived.get(2));
+        assertEquals(1, observer.getDropped());
+        observer.close();
+    }
+
+    @Test
+    public void testConflateLatestPerBook() throws Exception {
+        BitsoBackpressureObserver observer = new BitsoBackpressureObserver(mSlowSubscriber,
+                BitsoBackpressurePolicy.CONFLATE_LATEST, 16);
+        mSource.addObserver(observer);
+        mSource.send("{\"type\":\"ka\"}");
+        awaitTaken(observer);
+        for (int i = 0; i < 100; i++) {
+            mSource.send(ordersFrame("btc_mxn", i));
+            mSource.send(ordersFrame("eth_mxn", i));
+        }
+        assertEquals(2, observer.getQueued());
+        assertEquals(198, observer.getConflated());
+        assertEquals(0, observer.getDropped());
+
+        mRelease.countDown();
+        awaitReceived(3);
+        assertEquals(ordersFrame("btc_mxn", 99), mReceived.get(1));
+        assertEquals(ordersFrame("eth_mxn", 99), mReceived.get(2));
+        observer.close();
+    }
+
+    @Test
+    public void testConflateOnlySnapshots() throws Exception {
+        BitsoBackpressureObserver observer = new BitsoBackpressureObserver(mSlowSubscriber,
+                BitsoBackpressurePolicy.CONFLATE_LATEST, 4);
+        mSource.addObserver(observer);
+        mSource.send("{\"type\":\"ka\"}");
+        awaitTaken(observer);
+        // Diffs are never merged, the oldest ones are dropped once the queue is full
+        for (int i = 0; i < 6; i++) {
+            mSource.send(diffFrame("btc_mxn", i));
+        }
+        assertEquals(4, observer.getQueued());
+        assertEquals(0, observer.getConflated());
+        assertEquals(2, observer.getDropped());
+
+        mRelease.countDown();
+        awaitReceived(5);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(diffFrame("btc_mxn", i + 2), mReceived.get(i + 1));
+        }
+        observer.close();
+    }
+
+    @Test
+    public void testDisconnectKeepsConnectionChanges() throws Exception {
+        BitsoBackpressureObserver observer = new BitsoBackpressureObserver(mSlowSubscriber,
+                BitsoBackpressurePolicy.DISCONNECT, 3);
+        mSource.addObserver(observer);
+        mSource.send("first");
+        awaitTaken(observer);
+        mSource.send("frame 0");
+        mSource.send(Boolean.TRUE);
+        mSource.send("frame 1");
+        mSource.send("frame 2");
+        assertTrue(observer.isDisconnected());
+        assertEquals(3, observer.getDropped());
+
+        mRelease.countDown();
+        awaitReceived(3);
+        assertEquals("first", mReceived.get(0));
+        assertEquals(Boolean.TRUE, mReceived.get(1));
+        assertEquals(Boolean.FALSE, mReceived.get(2));
+        observer.close();
+    }
+
+    @Test
+    public void testDisconnectSubscriber() throws Exception {
+        BitsoBackpressureObserver observer = new BitsoBackpressureObserver(mSlowSubscriber,
+                BitsoBackpressurePolicy.DISCONNECT, 2);
+        List<Object> fastReceived = new ArrayList<Object>();
+        mSource.addObserver(observer);
+        mSource.addObserver(new Observer() {
+            public void update(Observable o, Object arg) {
+                fastReceived.add(arg);
+            }
+        });
+        mSource.send("first");
+        awaitTaken(observer);
+        for (int i = 0; i < 5; i++) {
+            mSource.send("frame " + i);
+        }
+        assertTrue(observer.isDisconnected());
+        assertEquals(1, mSource.countObservers());
+        assertEquals(6, fastReceived.size());
+
+        mRelease.countDown();
+        awaitReceived(2);
+        assertEquals("first", mReceived.get(0));
+        assertEquals(Boolean.FALSE, mReceived.get(1));
+        observer.close();
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        final BitsoBackpressureObserver observer = new BitsoBackpressureObserver(mSlowSubscriber,
+                BitsoBackpressurePolicy.BLOCK, 2);
+        mSource.addObserver(observer);
+        mSource.send("first");
+        awaitTaken(observer);
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                for (int i = 0; i < 5; i++) {
+                    mSource.send("frame " + i);
+                }
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+        assertFalse(observer.isDisconnected());
+
+        mRelease.countDown();
+        producer.join(5000);
+        awaitReceived(6);
+        assertEquals(6, mReceived.size());
+        assertEquals(0, observer.getDropped());
+        assertEquals("frame 4", mReceived.get(5));
+        observer.close();
+    }
+
+    @Test
+    public void testCloseReleasesBlockedProducer() throws Exception {
+        final BitsoBackpressureObserver observer = new BitsoBackpressureObserver(mSlowSubscriber,
+                BitsoBackpressurePolicy.BLOCK, 1);
+        mSource.addObserver(observer);
+        mSource.send("first");
+        awaitTaken(observer);
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                for (int i = 0; i < 3; i++) {
+                    mSource.send("frame " + i);
+                }
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        observer.close();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertEquals(1, observer.getDropped());
+    }
+
+    @Test
+    public void testCountsSubscriberFailures() throws Exception {
+        final CountDownLatch delivered = new CountDownLatch(2);
+        BitsoBackpressureObserver observer = new BitsoBackpressureObserver(new Observer() {
+            public void update(Observable o, Object arg) {
+                delivered.countDown();
+                if ("bad".equals(arg)) {
+                    throw new IllegalStateException("bad frame");
+                }
+            }
+        }, BitsoBackpressurePolicy.DROP_OLDEST, 4);
+        mSource.addObserver(observer);
+        mSource.send("bad");
+        mSource.send("good");
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        observer.close();
+        assertEquals(1, observer.getFailures());
+        assertTrue(observer.getLastFailure() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testConflationKey() {
+        assertEquals("orders:btc_mxn", BitsoBackpressureObserver.conflationKey(ordersFrame("btc_mxn", 1)));
+        assertNull(BitsoBackpressureObserver.conflationKey("{\"type\":\"ka\"}"));
+        assertNull(BitsoBackpressureObserver.conflationKey(diffFrame("btc_mxn", 1)));
+        assertNull(BitsoBackpressureObserver.conflationKey(
+                "{\"type\":\"trades\",\"book\":\"btc_mxn\",\"payload\":[]}"));
+        assertNull(BitsoBackpressureObserver.conflationKey(
+                "{\"action\":\"subscribe\",\"response\":\"ok\",\"book\":\"btc_mxn\",\"type\":\"orders\"}"));
+        assertNull(BitsoBackpressureObserver.conflationKey(Boolean.TRUE));
+    }
+}
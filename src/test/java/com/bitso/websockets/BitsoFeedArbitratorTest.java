@@ -0,0 +1,190 @@
+package com.bitso.websockets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Observer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoFeedArbitratorTest {
+    private BitsoFeedArbitrator mArbitrator;
+    private List<Integer> mSequences;
+    private List<Integer> mTradeIds;
+    private List<Boolean> mConnections;
+    private int mOrders;
+
+    private static String diffFrame(String book, int sequence) {
+        return "{\"type\":\"diff-orders\",\"book\":\"" + book + "\",\"sequence\":" + sequence
+                + ",\"payload\":[{\"o\":\"o" + sequence + "\",\"d\":1501603674000,\"r\":\"47000\",\"t\":0,"
+                + "\"a\":\"0.1\",\"v\":\"4700\",\"s\":\"open\"}]}";
+    }
+
+    private static String tradeFrame(int id) {
+        return "{\"type\":\"trades\",\"book\":\"btc_mxn\",\"payload\":[{\"i\":" + id
+                + ",\"a\":\"0.1\",\"r\":\"47000\",\"v\":\"4700\",\"t\":0,\"x\":1501603674000}]}";
+    }
+
+    private static String ordersFrame(int version) {
+        return "{\"type\":\"orders\",\"book\":\"btc_mxn\",\"payload\":{\"bids\":[{\"r\":\"4700" + version
+                + "\",\"a\":\"1\",\"v\":\"4700\",\"t\":0,\"d\":1501603674000,\"s\":\"open\"}],\"asks\":[]}}";
+    }
+
+    @BeforeEach
+    public void setUp() {
+        mArbitrator = new BitsoFeedArbitrator(2);
+        mSequences = new ArrayList<Integer>();
+        mTradeIds = new ArrayList<Integer>();
+        mConnections = new ArrayList<Boolean>();
+        mArbitrator.addListener(new BitsoStreamAdapter() {
+            @Override
+            public void onDiffOrders(BitsoStreamDiffOrders diffOrders) {
+                mSequences.add(diffOrders.getSequenceNumber());
+            }
+
+            @Override
+            public void onTrades(BitsoStreamTrades trades) {
+                mTradeIds.add(trades.getPayload()[0].getTradeId());
+            }
+
+            @Override
+            public void onOrders(BitsoStreamOrders orders) {
+                mOrders++;
+            }
+
+            @Override
+            public void onConnectionChanged(boolean connected) {
+                mConnections.add(connected);
+            }
+        });
+    }
+
+    @Test
+    public void testFirstCopyWins() {
+        Observer primary = mArbitrator.getFeed(0);
+        Observer backup = mArbitrator.getFeed(1);
+        for (int sequence = 1; sequence <= 10; sequence++) {
+            // The backup is ahead on odd sequences
+            Observer first = (sequence % 2 == 1) ? backup : primary;
+            Observer second = (first == primary) ? backup : primary;
+            first.update(null, diffFrame("btc_mxn", sequence));
+            second.update(null, diffFrame("btc_mxn", sequence));
+        }
+        assertEquals(10, mSequences.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i + 1, mSequences.get(i).intValue());
+        }
+        assertEquals(5, mArbitrator.getWins(0));
+        assertEquals(5, mArbitrator.getDuplicates(0));
+        assertEquals(0.5, mArbitrator.getWinRate(1), 1e-9);
+        assertEquals(5, mArbitrator.getLag(1).getCount());
+    }
+
+    @Test
+    public void testOtherFeedFillsGap() {
+        Observer primary = mArbitrator.getFeed(0);
+        Observer backup = mArbitrator.getFeed(1);
+        primary.update(null, diffFrame("btc_mxn", 1));
+        // The primary loses 2 and 3
+        primary.update(null, diffFrame("btc_mxn", 4));
+        primary.update(null, diffFrame("btc_mxn", 5));
+        assertEquals(1, mSequences.size());
+
+        backup.update(null, diffFrame("btc_mxn", 1));
+        backup.update(null, diffFrame("btc_mxn", 2));
+        backup.update(null, diffFrame("btc_mxn", 3));
+        backup.update(null, diffFrame("btc_mxn", 4));
+        backup.update(null, diffFrame("btc_mxn", 5));
+        backup.update(null, diffFrame("btc_mxn", 6));
+
+        assertEquals(6, mSequences.size());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i + 1, mSequences.get(i).intValue());
+        }
+        assertEquals(0, mArbitrator.getSkippedGaps());
+        assertEquals(3, mArbitrator.getWins(0));
+        assertEquals(3, mArbitrator.getWins(1));
+    }
+
+    @Test
+    public void testUnfilledGapIsSkipped() {
+        mArbitrator.setGapTolerance(2, 60_000);
+        Observer primary = mArbitrator.getFeed(0);
+        primary.update(null, diffFrame("btc_mxn", 1));
+        primary.update(null, diffFrame("btc_mxn", 3));
+        primary.update(null, diffFrame("btc_mxn", 4));
+        assertEquals(1, mSequences.size());
+        primary.update(null, diffFrame("btc_mxn", 5));
+        assertEquals(4, mSequences.size());
+        assertEquals(5, mSequences.get(3).intValue());
+        assertEquals(1, mArbitrator.getSkippedGaps());
+
+        // Books are independent
+        primary.update(null, diffFrame("eth_mxn", 100));
+        assertEquals(5, mSequences.size());
+    }
+
+    @Test
+    public void testTradesAndOrdersDeduplicated() {
+        String orders = "{\"type\":\"orders\",\"book\":\"btc_mxn\",\"payload\":{\"bids\":[],\"asks\":[]}}";
+        for (int i = 0; i < 2; i++) {
+            Observer feed = mArbitrator.getFeed(i);
+            feed.update(null, "{\"action\":\"subscribe\",\"response\":\"ok\",\"type\":\"trades\"}");
+            feed.update(null, tradeFrame(100));
+            feed.update(null, tradeFrame(101));
+            feed.update(null, "{\"type\":\"ka\"}");
+            feed.update(null, orders);
+        }
+        assertEquals(2, mTradeIds.size());
+        assertEquals(101, mTradeIds.get(1).intValue());
+        assertEquals(1, mOrders);
+        assertEquals(3, mArbitrator.getDuplicates(1));
+    }
+
+    @Test
+    public void testLaggingOrdersFeedDeduplicated() {
+        Observer primary = mArbitrator.getFeed(0);
+        Observer backup = mArbitrator.getFeed(1);
+        // The backup trails the primary by two snapshots
+        primary.update(null, ordersFrame(1));
+        primary.update(null, ordersFrame(2));
+        backup.update(null, ordersFrame(1));
+        primary.update(null, ordersFrame(3));
+        backup.update(null, ordersFrame(2));
+        backup.update(null, ordersFrame(3));
+        assertEquals(3, mOrders);
+        assertEquals(3, mArbitrator.getDuplicates(1));
+        assertEquals(0, mArbitrator.getWins(1));
+
+        // The book going back to an earlier state is a new snapshot
+        primary.update(null, ordersFrame(1));
+        backup.update(null, ordersFrame(1));
+        assertEquals(4, mOrders);
+        assertEquals(4, mArbitrator.getDuplicates(1));
+    }
+
+    @Test
+    public void testTradesWithoutIdAreNotDeduplicated() {
+        String trade = "{\"type\":\"trades\",\"book\":\"btc_mxn\",\"payload\":[{"
+                + "\"a\":\"0.1\",\"r\":\"47000\",\"v\":\"4700\",\"t\":0}]}";
+        mArbitrator.getFeed(0).update(null, trade);
+        mArbitrator.getFeed(0).update(null, trade);
+        assertEquals(2, mTradeIds.size());
+        assertEquals(0, mArbitrator.getDuplicates(0));
+    }
+
+    @Test
+    public void testConnectionReportedOnce() {
+        mArbitrator.getFeed(0).update(null, Boolean.TRUE);
+        mArbitrator.getFeed(1).update(null, Boolean.TRUE);
+        mArbitrator.getFeed(0).update(null, Boolean.FALSE);
+        assertEquals(1, mConnections.size());
+        mArbitrator.getFeed(1).update(null, Boolean.FALSE);
+        assertEquals(2, mConnections.size());
+        assertTrue(mConnections.get(0));
+        assertEquals(Boolean.FALSE, mConnections.get(1));
+    }
+}
@@ -0,0 +1,168 @@
+package com.bitso.websockets;
+
+import java.net.ConnectException;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoHeartbeatMonitorTest {
+    private static String tradeFrame(int id, long timestamp) {
+        return "{\"type\":\"trades\",\"book\":\"btc_mxn\",\"payload\":[{\"i\":" + id
+                + ",\"a\":\"0.1\",\"r\":\"47000\",\"v\":\"4700\",\"t\":0,\"x\":" + timestamp + "}]}";
+    }
+
+    private static String diffFrame(int sequence, long timestamp) {
+        return "{\"type\":\"diff-orders\",\"book\":\"btc_mxn\",\"sequence\":" + sequence
+                + ",\"payload\":[{\"o\":\"oid" + sequence + "\",\"d\":" + timestamp
+                + ",\"r\":\"47000\",\"t\":0,\"a\":\"0.1\",\"v\":\"4700\",\"s\":\"open\"}]}";
+    }
+
+    @Test
+    public void testStaleReconnects() throws Exception {
+        final CountDownLatch reconnected = new CountDownLatch(1);
+        final AtomicLong silence = new AtomicLong();
+        BitsoHeartbeatMonitor monitor = new BitsoHeartbeatMonitor(null, 100,
+                new BitsoHeartbeatMonitor.Listener() {
+                    public void onStale(long silenceMillis) {
+                        silence.set(silenceMillis);
+                    }
+                }) {
+            @Override
+            void reconnect() {
+                reconnected.countDown();
+            }
+        };
+        BitsoStreamDispatcher dispatcher = new BitsoStreamDispatcher();
+        dispatcher.addListener(monitor);
+        dispatcher.update(null, Boolean.TRUE);
+
+        assertTrue(reconnected.await(5, TimeUnit.SECONDS));
+        monitor.close();
+        assertTrue(silence.get() >= 100);
+        assertTrue(monitor.getStaleEvents() >= 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Exception> void sneakyThrow(Exception e) throws E {
+        throw (E) e;
+    }
+
+    @Test
+    public void testFailedReconnectKeepsChecking() throws Exception {
+        final CountDownLatch retried = new CountDownLatch(2);
+        BitsoHeartbeatMonitor monitor = new BitsoHeartbeatMonitor(null, 50, null) {
+            @Override
+            void reconnect() {
+                retried.countDown();
+                // What Channel.sync() does with a refused connection
+                BitsoHeartbeatMonitorTest.<RuntimeException>sneakyThrow(
+                        new ConnectException("Connection refused"));
+            }
+        };
+        BitsoStreamDispatcher dispatcher = new BitsoStreamDispatcher();
+        dispatcher.addListener(monitor);
+        dispatcher.update(null, Boolean.TRUE);
+
+        assertTrue(retried.await(5, TimeUnit.SECONDS));
+        monitor.close();
+        assertTrue(monitor.getReconnectFailures() >= 1);
+        assertTrue(monitor.getLastReconnectFailure() instanceof ConnectException);
+    }
+
+    @Test
+    public void testFramesKeepConnectionAlive() throws Exception {
+        BitsoHeartbeatMonitor monitor = new BitsoHeartbeatMonitor(null, 60_000, null);
+        monitor.close();
+        BitsoStreamDispatcher dispatcher = new BitsoStreamDispatcher();
+        dispatcher.addListener(monitor);
+
+        assertFalse(monitor.checkStale());
+        dispatcher.update(null, Boolean.TRUE);
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(5);
+            dispatcher.update(null, "{\"type\":\"ka\"}");
+        }
+        long now = System.currentTimeMillis();
+        dispatcher.update(null, tradeFrame(1, now - 250));
+        dispatcher.update(null, tradeFrame(2, now - 40));
+        // Orders created long ago say nothing about the feed's lag
+        dispatcher.update(null, diffFrame(1, now - 3_600_000));
+        dispatcher.update(null, diffFrame(2, now - 120));
+
+        assertFalse(monitor.checkStale());
+        // The first gap is measured from the connection
+        assertEquals(9, monitor.getGaps().getCount());
+        assertTrue(monitor.getGaps().getMax() >= 5);
+        // Only trades are measured
+        assertEquals(2, monitor.getLag().getCount());
+        assertTrue(monitor.getLag().getMax() >= 250);
+        assertTrue(monitor.getLag().getMax() < 3_600_000);
+        assertTrue(monitor.getSilenceMillis() < 60_000);
+    }
+
+    @Test
+    public void testHistogram() {
+        BitsoLatencyHistogram histogram = new BitsoLatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(-5);
+        assertEquals(101, histogram.getCount());
+        assertEquals(100, histogram.getMax());
+        assertEquals(1, histogram.getBucketCount(0));
+        assertEquals(1, histogram.getBucketCount(1));
+        assertEquals(2, histogram.getBucketCount(2));
+        // 50 falls in the bucket from 32 to 63
+        assertEquals(63, histogram.getPercentile(50));
+        assertEquals(100, histogram.getPercentile(100));
+        assertEquals(5050 / 101.0, histogram.getMean(), 1e-9);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    public void testFramesDeliveredDuringReconnect() throws Exception {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final AtomicLong waited = new AtomicLong(-1);
+        final BitsoWebSocket webSocket = new BitsoWebSocket(BitsoTransport.NIO) {
+            @Override
+            public void openConnection() throws InterruptedException {
+                // A frame arrives on the I/O thread while the new connection is being opened
+                Thread io = new Thread(new Runnable() {
+                    public void run() {
+                        setMessageReceived("{\"type\":\"ka\"}");
+                    }
+                });
+                long start = System.nanoTime();
+                io.start();
+                if (delivered.await(5, TimeUnit.SECONDS)) {
+                    waited.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+                setConnected(Boolean.TRUE);
+            }
+        };
+        webSocket.addObserver(new Observer() {
+            public void update(Observable o, Object arg) {
+                if ("{\"type\":\"ka\"}".equals(arg)) {
+                    delivered.countDown();
+                }
+            }
+        });
+        webSocket.setConnected(Boolean.TRUE);
+
+        webSocket.reconnect();
+        webSocket.getEventLoopGroup().shutdownGracefully();
+        assertTrue(waited.get() >= 0, "frame blocked by the reconnect");
+        assertTrue(webSocket.isConnected());
+    }
+}
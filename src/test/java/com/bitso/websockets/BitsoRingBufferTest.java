@@ -0,0 +1,291 @@
+package com.bitso.websockets;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import io.netty.channel.EventLoopGroup;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+public class BitsoRingBufferTest {
+    private static final int MESSAGES = 200_000;
+
+    @Test
+    public void testOrderedDeliveryToEveryHandler() throws Exception {
+        for (BitsoWaitStrategy strategy : BitsoWaitStrategy.values()) {
+            BitsoRingBuffer ring = new BitsoRingBuffer(256, strategy);
+            final AtomicReference<String> failure = new AtomicReference<String>();
+            final AtomicLong[] received = new AtomicLong[3];
+            final AtomicLong batches = new AtomicLong();
+            for (int h = 0; h < received.length; h++) {
+                final AtomicLong count = new AtomicLong();
+                received[h] = count;
+                ring.addHandler(new BitsoRingBuffer.Handler() {
+                    public void onEvent(Object message, long sequence, boolean endOfBatch) {
+                        long expected = count.getAndIncrement();
+                        if (((Integer) message).intValue() != expected || sequence != expected) {
+                            failure.compareAndSet(null, "expected " + expected + " got " + message);
+                        }
+                        if (endOfBatch) {
+                            batches.incrementAndGet();
+                        }
+                    }
+                }, "test-consumer-" + h);
+            }
+            ring.start();
+            for (int i = 0; i < MESSAGES; i++) {
+                ring.publish(Integer.valueOf(i));
+            }
+            ring.halt();
+
+            assertNull(failure.get(), strategy + ": " + failure.get());
+            for (AtomicLong count : received) {
+                assertEquals(MESSAGES, count.get());
+            }
+            assertEquals(MESSAGES - 1, ring.getCursor());
+            assertEquals(0, ring.getBacklog());
+            assertTrue(batches.get() <= MESSAGES * received.length);
+        }
+    }
+
+    @Test
+    public void testProducerWaitsForSlowHandler() throws Exception {
+        final BitsoRingBuffer ring = new BitsoRingBuffer(4, BitsoWaitStrategy.PARK);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Object> received = new ArrayList<Object>();
+        ring.addHandler(new BitsoRingBuffer.Handler() {
+            public void onEvent(Object message, long sequence, boolean endOfBatch) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                received.add(message);
+            }
+        }, "test-slow-consumer");
+        ring.start();
+        for (int i = 0; i < 4; i++) {
+            ring.publish(Integer.valueOf(i));
+        }
+        // The handler is stuck on the first message, so the ring is full
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                ring.publish("overflow");
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+        assertEquals(3, ring.getCursor());
+
+        release.countDown();
+        producer.join(5000);
+        ring.halt();
+        assertEquals(5, received.size());
+        assertEquals("overflow", received.get(4));
+    }
+
+    @Test
+    public void testPublishAfterHaltFails() throws Exception {
+        BitsoRingBuffer ring = new BitsoRingBuffer(4, BitsoWaitStrategy.YIELD);
+        final List<Object> received = new ArrayList<Object>();
+        ring.addHandler(new BitsoRingBuffer.Handler() {
+            public void onEvent(Object message, long sequence, boolean endOfBatch) {
+                received.add(message);
+            }
+        }, "test-consumer");
+        ring.start();
+        ring.publish("first");
+        ring.halt();
+        assertFalse(ring.isRunning());
+
+        // Would otherwise overwrite slots nobody consumes anymore
+        try {
+            ring.publish("lost");
+            fail("Publishing to a halted ring must fail");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertEquals(0, ring.getCursor());
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    public void testProducerStopsWaitingForDeadConsumer() throws Exception {
+        final BitsoRingBuffer ring = new BitsoRingBuffer(4, BitsoWaitStrategy.PARK);
+        ring.addHandler(new BitsoRingBuffer.Handler() {
+            public void onEvent(Object message, long sequence, boolean endOfBatch) {
+                throw new AssertionError("consumer killed");
+            }
+        }, "test-dying-consumer");
+        ring.start();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    for (int i = 0; i < 100; i++) {
+                        ring.publish(Integer.valueOf(i));
+                    }
+                } catch (IllegalStateException e) {
+                    failure.set(e);
+                }
+            }
+        });
+        producer.start();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertTrue(failure.get() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testWebSocketRestartsHaltedRing() throws Exception {
+        BitsoWebSocket webSocket = new BitsoWebSocket(BitsoTransport.NIO);
+        webSocket.enableRingBuffer(16, BitsoWaitStrategy.YIELD);
+        final CountDownLatch done = new CountDownLatch(1);
+        webSocket.addObserver(new Observer() {
+            public void update(Observable o, Object arg) {
+                done.countDown();
+            }
+        });
+        BitsoRingBuffer first = webSocket.getRingBuffer();
+        // What closeConnection leaves behind
+        first.halt();
+
+        webSocket.restartRingBufferIfHalted();
+        assertNotSame(first, webSocket.getRingBuffer());
+        assertTrue(webSocket.getRingBuffer().isRunning());
+        webSocket.setMessageReceived("{\"type\":\"ka\"}");
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        webSocket.getRingBuffer().halt();
+        webSocket.getEventLoopGroup().shutdownGracefully();
+    }
+
+    @Test
+    public void testWebSocketReplacesShutDownGroup() throws Exception {
+        BitsoWebSocket webSocket = new BitsoWebSocket(BitsoTransport.NIO);
+        EventLoopGroup first = webSocket.getEventLoopGroup();
+        // What closeConnection leaves behind
+        first.shutdownGracefully();
+
+        webSocket.restartGroupIfShutDown();
+        assertNotSame(first, webSocket.getEventLoopGroup());
+        assertFalse(webSocket.getEventLoopGroup().isShuttingDown());
+        webSocket.getEventLoopGroup().shutdownGracefully();
+    }
+
+    @Test
+    public void testHaltFromHandler() throws Exception {
+        final BitsoRingBuffer ring = new BitsoRingBuffer(16, BitsoWaitStrategy.YIELD);
+        final CountDownLatch halted = new CountDownLatch(1);
+        ring.addHandler(new BitsoRingBuffer.Handler() {
+            public void onEvent(Object message, long sequence, boolean endOfBatch) {
+                if ("stop".equals(message)) {
+                    try {
+                        ring.halt();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    halted.countDown();
+                }
+            }
+        }, "test-consumer");
+        ring.start();
+        ring.publish("stop");
+        assertTrue(halted.await(5, TimeUnit.SECONDS));
+        assertFalse(ring.isRunning());
+    }
+
+    @Test
+    public void testHandlerFailuresAreCounted() throws Exception {
+        BitsoRingBuffer ring = new BitsoRingBuffer(16, BitsoWaitStrategy.YIELD);
+        final List<Object> received = new ArrayList<Object>();
+        ring.addHandler(new BitsoRingBuffer.Handler() {
+            public void onEvent(Object message, long sequence, boolean endOfBatch) {
+                if ("bad".equals(message)) {
+                    throw new IllegalArgumentException("bad message");
+                }
+                received.add(message);
+            }
+        }, "test-consumer");
+        ring.start();
+        ring.publish("bad");
+        ring.publish("good");
+        ring.halt();
+        assertEquals(1, ring.getFailures());
+        assertTrue(ring.getLastFailure() instanceof IllegalArgumentException);
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    public void testHandledMessagesAreReleased() throws Exception {
+        BitsoRingBuffer ring = new BitsoRingBuffer(16, BitsoWaitStrategy.YIELD);
+        final CountDownLatch handled = new CountDownLatch(1);
+        ring.addHandler(new BitsoRingBuffer.Handler() {
+            public void onEvent(Object message, long sequence, boolean endOfBatch) {
+                handled.countDown();
+            }
+        }, "test-consumer");
+        ring.start();
+        Object message = new byte[1 << 20];
+        WeakReference<Object> reference = new WeakReference<Object>(message);
+        ring.publish(message);
+        message = null;
+        assertTrue(handled.await(5, TimeUnit.SECONDS));
+        ring.halt();
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+    }
+
+    @Test
+    public void testInvalidCapacity() {
+        try {
+            new BitsoRingBuffer(100, BitsoWaitStrategy.YIELD);
+            fail("Capacity must be a power of two");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testWebSocketNotifiesOffCallerThread() throws Exception {
+        BitsoWebSocket webSocket = new BitsoWebSocket();
+        webSocket.enableRingBuffer(64, BitsoWaitStrategy.YIELD);
+        final List<Object> received = new ArrayList<Object>();
+        final CountDownLatch done = new CountDownLatch(3);
+        final AtomicReference<Thread> observerThread = new AtomicReference<Thread>();
+        webSocket.addObserver(new Observer() {
+            public void update(Observable o, Object arg) {
+                observerThread.set(Thread.currentThread());
+                received.add(arg);
+                done.countDown();
+            }
+        });
+        webSocket.setConnected(Boolean.TRUE);
+        webSocket.setMessageReceived("{\"type\":\"ka\"}");
+        webSocket.setConnected(Boolean.FALSE);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        webSocket.getRingBuffer().halt();
+        assertEquals(Boolean.TRUE, received.get(0));
+        assertEquals("{\"type\":\"ka\"}", received.get(1));
+        assertEquals(Boolean.FALSE, received.get(2));
+        assertTrue(observerThread.get() != Thread.currentThread());
+    }
+}
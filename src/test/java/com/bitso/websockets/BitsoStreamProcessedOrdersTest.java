@@ -0,0 +1,135 @@
+package com.bitso.websockets;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import com.bitso.BitsoOrder;
+import com.bitso.websockets.BitsoStreamProcessedOrders.ProcessedOrderPayload;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoStreamProcessedOrdersTest {
+    private static final String FRAME = "{\"type\":\"processed-orders\",\"book\":\"btc_mxn\",\"payload\":["
+            + "{\"o\":\"Xx1\",\"s\":\"completed\",\"t\":1,\"r\":\"47000.50\",\"a\":\"0.01250000\","
+            + "\"v\":\"587.50625\",\"d\":1501603674123},"
+            + "{\"o\":\"Yy2\",\"s\":\"cancelled\"}]}";
+
+    @Test
+    public void testDecode() {
+        BitsoStreamProcessedOrders processedOrders = new BitsoStreamProcessedOrders(new JSONObject(FRAME),
+                FRAME);
+        assertEquals(BitsoChannels.PROCESSED_ORDERS, processedOrders.getBitsoChannel());
+        assertEquals("btc_mxn", processedOrders.getBitsoBook());
+        assertTrue(processedOrders.attributesNotNull());
+        assertSame(FRAME, processedOrders.getFrame());
+
+        ProcessedOrderPayload filled = processedOrders.getPayload()[0];
+        assertEquals("Xx1", filled.getOrderId());
+        assertEquals(BitsoOrder.STATUS.COMPLETED, filled.getOrderStatus());
+        assertEquals(BitsoOrder.SIDE.SELL, filled.getSide());
+        // Decimals keep the precision and scale sent
+        assertEquals(new BigDecimal("47000.50"), filled.getRate());
+        assertEquals(new BigDecimal("0.01250000"), filled.getAmount());
+        assertEquals(new BigDecimal("587.50625"), filled.getValue());
+        assertEquals(1501603674123L, filled.getTimestamp());
+
+        ProcessedOrderPayload cancelled = processedOrders.getPayload()[1];
+        assertEquals(BitsoOrder.STATUS.CANCELLED, cancelled.getOrderStatus());
+        assertNull(cancelled.getSide());
+        assertNull(cancelled.getRate());
+        assertEquals(-1, cancelled.getTimestamp());
+    }
+
+    @Test
+    public void testWebSocketDeliversTextByDefault() throws Exception {
+        BitsoWebSocket webSocket = new BitsoWebSocket(BitsoTransport.NIO);
+        final List<Object> received = new ArrayList<Object>();
+        webSocket.addObserver(new Observer() {
+            public void update(Observable o, Object arg) {
+                received.add(arg);
+            }
+        });
+        webSocket.setMessageReceived(FRAME);
+        assertEquals(FRAME, received.get(0));
+        webSocket.getEventLoopGroup().shutdownGracefully();
+    }
+
+    @Test
+    public void testWebSocketDeliversTypedObject() throws Exception {
+        BitsoWebSocket webSocket = new BitsoWebSocket(BitsoTransport.NIO);
+        webSocket.setTypedProcessedOrders(true);
+        final List<Object> received = new ArrayList<Object>();
+        webSocket.addObserver(new Observer() {
+            public void update(Observable o, Object arg) {
+                received.add(arg);
+            }
+        });
+        BitsoWebSocketObserver history = new BitsoWebSocketObserver(8, false);
+        webSocket.addObserver(history);
+        final List<BitsoStreamProcessedOrders> dispatched = new ArrayList<BitsoStreamProcessedOrders>();
+        BitsoStreamDispatcher dispatcher = new BitsoStreamDispatcher();
+        dispatcher.addListener(new BitsoStreamAdapter() {
+            @Override
+            public void onProcessedOrders(BitsoStreamProcessedOrders processedOrders) {
+                dispatched.add(processedOrders);
+            }
+        });
+        webSocket.addObserver(dispatcher);
+
+        webSocket.setMessageReceived(FRAME);
+        webSocket.setMessageReceived(
+                "{\"action\":\"subscribe\",\"response\":\"ok\",\"type\":\"processed-orders\"}");
+        webSocket.setMessageReceived("{\"type\":\"ka\"}");
+
+        assertEquals(3, received.size());
+        assertTrue(received.get(0) instanceof BitsoStreamProcessedOrders);
+        assertTrue(received.get(1) instanceof String);
+        assertTrue(received.get(2) instanceof String);
+        assertEquals(1, dispatched.size());
+        assertSame(received.get(0), dispatched.get(0));
+        assertEquals(FRAME, history.getMessagesReceived().get(0));
+    }
+
+    @Test
+    public void testDispatcherDecodesRawFrame() {
+        final List<BitsoStreamProcessedOrders> dispatched = new ArrayList<BitsoStreamProcessedOrders>();
+        BitsoStreamDispatcher dispatcher = new BitsoStreamDispatcher();
+        dispatcher.addListener(new BitsoStreamAdapter() {
+            @Override
+            public void onProcessedOrders(BitsoStreamProcessedOrders processedOrders) {
+                dispatched.add(processedOrders);
+            }
+        });
+        dispatcher.dispatch(FRAME);
+        assertEquals(1, dispatched.size());
+        assertEquals(2, dispatched.get(0).getPayload().length);
+    }
+
+    @Test
+    public void testArbitratorDeduplicates() {
+        BitsoFeedArbitrator arbitrator = new BitsoFeedArbitrator(2);
+        final List<BitsoStreamProcessedOrders> dispatched = new ArrayList<BitsoStreamProcessedOrders>();
+        arbitrator.addListener(new BitsoStreamAdapter() {
+            @Override
+            public void onProcessedOrders(BitsoStreamProcessedOrders processedOrders) {
+                dispatched.add(processedOrders);
+            }
+        });
+        BitsoStreamProcessedOrders first = new BitsoStreamProcessedOrders(new JSONObject(FRAME), FRAME);
+        arbitrator.getFeed(1).update(null, first);
+        arbitrator.getFeed(0).update(null, new BitsoStreamProcessedOrders(new JSONObject(FRAME), FRAME));
+        assertEquals(1, dispatched.size());
+        assertSame(first, dispatched.get(0));
+        assertEquals(1, arbitrator.getWins(1));
+        assertEquals(1, arbitrator.getDuplicates(0));
+    }
+}
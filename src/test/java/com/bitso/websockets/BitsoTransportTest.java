@@ -0,0 +1,45 @@
+package com.bitso.websockets;
+
+import org.junit.jupiter.api.Test;
+
+import io.netty.channel.EventLoopGroup;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoTransportTest {
+    @Test
+    public void testBestFallsBackToNio() {
+        assertTrue(BitsoTransport.NIO.isAvailable());
+        BitsoTransport best = BitsoTransport.best();
+        assertEquals(BitsoTransport.EPOLL.isAvailable() ? BitsoTransport.EPOLL : BitsoTransport.NIO, best);
+    }
+
+    @Test
+    public void testAvailableTransportsCreateGroups() throws Exception {
+        for (BitsoTransport transport : BitsoTransport.values()) {
+            if (!transport.isAvailable()) {
+                try {
+                    transport.newEventLoopGroup(1);
+                    throw new AssertionError(transport + " should not create a group");
+                } catch (IllegalStateException e) {
+                    // Expected
+                    continue;
+                }
+            }
+            EventLoopGroup group = transport.newEventLoopGroup(1);
+            assertTrue(group.submit(new Runnable() {
+                public void run() {
+                }
+            }).await(5000));
+            group.shutdownGracefully().sync();
+        }
+    }
+
+    @Test
+    public void testWebSocketUsesTransport() throws Exception {
+        BitsoWebSocket webSocket = new BitsoWebSocket(BitsoTransport.NIO);
+        assertEquals(BitsoTransport.NIO, webSocket.getTransport());
+        assertEquals(BitsoTransport.best(), new BitsoWebSocket().getTransport());
+    }
+}
@@ -0,0 +1,68 @@
+package com.bitso.websockets;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoWebSocketObserverTest {
+    private static String frame(String type, int id) {
+        return "{\"type\":\"" + type + "\",\"book\":\"btc_mxn\",\"payload\":[" + id + "]}";
+    }
+
+    @Test
+    public void testBoundedHistory() {
+        BitsoWebSocketObserver observer = new BitsoWebSocketObserver(4, false);
+        assertNull(observer.getLastMessage());
+        assertTrue(observer.getMessagesReceived().isEmpty());
+
+        observer.update(null, Boolean.TRUE);
+        for (int i = 0; i < 3; i++) {
+            observer.update(null, frame("trades", i));
+        }
+        assertEquals(3, observer.getMessagesReceived().size());
+        assertEquals(frame("trades", 0), observer.getMessagesReceived().get(0));
+
+        for (int i = 3; i < 10_000; i++) {
+            observer.update(null, frame("trades", i));
+        }
+        ArrayList<String> messages = observer.getMessagesReceived();
+        assertEquals(4, messages.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(frame("trades", 9_996 + i), messages.get(i));
+        }
+        assertEquals(frame("trades", 9_999), observer.getLastMessage());
+        assertEquals(10_000, observer.getMessageCount());
+        assertTrue(observer.isWSConnected());
+    }
+
+    @Test
+    public void testChannelFilter() {
+        BitsoWebSocketObserver observer = new BitsoWebSocketObserver(16, false, BitsoChannels.TRADES,
+                BitsoChannels.ORDERS);
+        observer.update(null, frame("trades", 1));
+        observer.update(null, frame("diff-orders", 2));
+        observer.update(null, "{\"type\":\"ka\"}");
+        observer.update(null, frame("orders", 3));
+        observer.update(null, "not json");
+
+        ArrayList<String> messages = observer.getMessagesReceived();
+        assertEquals(2, messages.size());
+        assertEquals(frame("trades", 1), messages.get(0));
+        assertEquals(frame("orders", 3), messages.get(1));
+    }
+
+    @Test
+    public void testDefaultKeepsEverything() {
+        BitsoWebSocketObserver observer = new BitsoWebSocketObserver();
+        for (int i = 0; i < 100; i++) {
+            observer.update(null, frame("diff-orders", i));
+        }
+        assertEquals(100, observer.getMessagesReceived().size());
+        assertEquals(100, observer.getMessageCount());
+        assertEquals(frame("diff-orders", 99), observer.getLastMessage());
+    }
+}
@@ -0,0 +1,95 @@
+package com.bitso.websockets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketClientHandshaker;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
+import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketClientCompressionHandler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsoWebSocketPipelineTest {
+    private static EmbeddedChannel channel(BitsoWebSocket webSocket) {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        // Frames reaching the end of the pipeline are kept as inbound messages
+        webSocket.addWebSocketHandlers(channel.pipeline(), new ChannelInboundHandlerAdapter());
+        return channel;
+    }
+
+    @Test
+    public void testFragmentedMessageReassembled() throws Exception {
+        BitsoWebSocket webSocket = new BitsoWebSocket(BitsoTransport.NIO);
+        EmbeddedChannel channel = channel(webSocket);
+        assertNotNull(channel.pipeline().get(WebSocketFrameAggregator.class));
+        assertNotNull(channel.pipeline().get(WebSocketClientCompressionHandler.class));
+
+        channel.writeInbound(new TextWebSocketFrame(false, 0, "{\"type\":\"orders\","));
+        channel.writeInbound(new ContinuationWebSocketFrame(false, 0, "\"book\":\"btc_mxn\","));
+        assertNull(channel.readInbound());
+        channel.writeInbound(new ContinuationWebSocketFrame(true, 0, "\"payload\":{}}"));
+
+        TextWebSocketFrame frame = channel.readInbound();
+        assertEquals("{\"type\":\"orders\",\"book\":\"btc_mxn\",\"payload\":{}}", frame.text());
+        frame.release();
+        channel.finish();
+    }
+
+    @Test
+    public void testMaxFrameSize() throws Exception {
+        BitsoWebSocket webSocket = new BitsoWebSocket(BitsoTransport.NIO);
+        webSocket.setMaxFrameSize(16);
+        webSocket.setCompression(false);
+        EmbeddedChannel channel = channel(webSocket);
+        assertNull(channel.pipeline().get(WebSocketClientCompressionHandler.class));
+
+        channel.writeInbound(new TextWebSocketFrame(false, 0, "0123456789"));
+        try {
+            channel.writeInbound(new ContinuationWebSocketFrame(true, 0, "0123456789"));
+            channel.checkException();
+            throw new AssertionError("Message over the maximum size was accepted");
+        } catch (TooLongFrameException e) {
+            assertTrue(e.getMessage().contains("16"));
+        }
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testHandlerReleasesFrames() throws Exception {
+        BitsoWebSocket webSocket = new BitsoWebSocket(BitsoTransport.NIO);
+        final List<Object> received = new ArrayList<Object>();
+        webSocket.addObserver(new Observer() {
+            public void update(Observable o, Object arg) {
+                received.add(arg);
+            }
+        });
+        WebSocketClientHandshaker handshaker = Mockito.mock(WebSocketClientHandshaker.class);
+        Mockito.when(handshaker.isHandshakeComplete()).thenReturn(true);
+        EmbeddedChannel channel = new EmbeddedChannel(webSocket.new WebSocketClientHandler(handshaker));
+
+        TextWebSocketFrame text = new TextWebSocketFrame("{\"type\":\"ka\"}");
+        PingWebSocketFrame ping = new PingWebSocketFrame();
+        channel.writeInbound(text);
+        channel.writeInbound(ping);
+        assertEquals(0, text.refCnt());
+        assertEquals(0, ping.refCnt());
+        assertEquals(1, received.size());
+        assertEquals("{\"type\":\"ka\"}", received.get(0));
+        channel.finish();
+        webSocket.getEventLoopGroup().shutdownGracefully();
+    }
+}
@@ -0,0 +1,50 @@
+package com.bitso.websockets;
+
+import java.util.Observable;
+import java.util.Observer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class BitsoWebSocketPoolTest {
+    @Test
+    public void testBooksSpreadAcrossConnections() throws Exception {
+        BitsoWebSocketPool pool = new BitsoWebSocketPool(3, BitsoTransport.NIO, 1);
+        String[] books = { "btc_mxn", "eth_mxn", "xrp_mxn", "ltc_mxn", "bch_btc", "eth_btc", "xrp_btc" };
+        int[] counts = new int[3];
+        for (String book : books) {
+            counts[pool.getConnectionIndex(book)]++;
+        }
+        assertEquals(3, counts[0]);
+        assertEquals(2, counts[1]);
+        assertEquals(2, counts[2]);
+        // A book stays on its connection
+        assertEquals(0, pool.getConnectionIndex("btc_mxn"));
+        assertEquals(1, pool.getConnectionIndex("eth_mxn"));
+        assertSame(pool.getConnections().get(2), pool.getConnection("xrp_mxn"));
+        pool.closeConnections();
+    }
+
+    @Test
+    public void testConnectionsShareEventLoopGroup() throws Exception {
+        BitsoWebSocketPool pool = new BitsoWebSocketPool(4, BitsoTransport.NIO, 2);
+        Observer observer = new Observer() {
+            public void update(Observable o, Object arg) {
+            }
+        };
+        pool.addObserver(observer);
+        for (BitsoWebSocket connection : pool.getConnections()) {
+            assertSame(pool.getEventLoopGroup(), connection.getEventLoopGroup());
+            assertEquals(1, connection.countObservers());
+            assertFalse(connection.isConnected());
+        }
+        pool.deleteObserver(observer);
+        assertEquals(0, pool.getConnections().get(0).countObservers());
+
+        pool.closeConnections();
+        assertSame(Boolean.TRUE, pool.getEventLoopGroup().isShuttingDown());
+    }
+}